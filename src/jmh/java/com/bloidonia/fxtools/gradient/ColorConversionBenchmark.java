@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.TimeUnit;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of turning a line's worth of colors into {@link RGB}s, from JavaFX
+ * {@link Color}s as the original per pixel {@code PixelReader.getColor}
+ * path did, and from packed ARGB.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ColorConversionBenchmark {
+    @Param( { "100", "1000", "5000", "20000" } )
+    int length ;
+
+    @Param( { "RAMP", "NOISY" } )
+    SyntheticImages content ;
+
+    private int[] argb ;
+    private Color[] colors ;
+
+    @Setup
+    public void setup() {
+        argb = content.line( length ) ;
+        colors = new Color[ length ] ;
+        for( int i = 0 ; i < length ; i++ ) {
+            int c = argb[ i ] ;
+            colors[ i ] = Color.rgb( ( c >> 16 ) & 0xFF, ( c >> 8 ) & 0xFF, c & 0xFF ) ;
+        }
+    }
+
+    @Benchmark
+    public void fromFX( Blackhole bh ) {
+        for( Color color : colors ) {
+            bh.consume( RGB.fromFX( color ) ) ;
+        }
+    }
+
+    @Benchmark
+    public void fromArgb( Blackhole bh ) {
+        for( int c : argb ) {
+            bh.consume( RGB.fromArgb( c ) ) ;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning the peaks into CSS and {@code Stop[]} code, as
+ * {@code buildCss} and {@code buildCode} do on every drag.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EmitBenchmark {
+    @Param( { "100", "1000", "5000", "20000" } )
+    int length ;
+
+    @Param( { "2", "10", "50" } )
+    float threshold ;
+
+    @Param( { "RAMP", "BANDED", "NOISY" } )
+    SyntheticImages content ;
+
+    private final GradientStops stops = new GradientStops() ;
+    private final StringBuilder text = new StringBuilder() ;
+
+    @Setup
+    public void setup() {
+        int[] samples = content.line( length ) ;
+        stops.setPeaks( samples, samples.length, PeakDetector.findPeaks( samples, samples.length, threshold ) ) ;
+    }
+
+    @Benchmark
+    public int buildCss() {
+        text.setLength( 0 ) ;
+        GradientFormat.CSS.write( stops, text ) ;
+        return text.length() ;
+    }
+
+    @Benchmark
+    public int buildCode() {
+        text.setLength( 0 ) ;
+        GradientFormat.JAVA.write( stops, text ) ;
+        return text.length() ;
+    }
+}
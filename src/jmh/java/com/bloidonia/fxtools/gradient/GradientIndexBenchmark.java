@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a similarity search, and of reading the index and building its
+ * tree, over random gradients of two to six stops.  Random stops spread
+ * the signatures out more than real gradients do, so this is the slow end.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class GradientIndexBenchmark {
+    @Param( { "1000", "10000", "100000" } )
+    int size ;
+
+    @Param( { "1", "10" } )
+    int k ;
+
+    private Path file ;
+    private GradientIndex index ;
+    private GradientStops[] queries ;
+    private int next ;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile( "gradients", ".idx" ) ;
+        Files.delete( file ) ;
+        index = GradientIndex.open( file ) ;
+        Random random = new Random( 42 ) ;
+        for( int i = 0 ; i < size ; i++ ) {
+            index.add( "gradient " + i, randomGradient( random ) ) ;
+        }
+        index = GradientIndex.open( file ) ;
+        queries = new GradientStops[ 256 ] ;
+        for( int i = 0 ; i < queries.length ; i++ ) {
+            queries[ i ] = randomGradient( random ) ;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( file ) ;
+    }
+
+    private static GradientStops randomGradient( Random random ) {
+        GradientStops stops = new GradientStops() ;
+        int count = 2 + random.nextInt( 5 ) ;
+        double offset = 0 ;
+        for( int i = 0 ; i < count ; i++ ) {
+            offset = i == 0 ? 0 : i == count - 1 ? 1 : offset + random.nextDouble() * ( 1 - offset ) / 2 ;
+            stops.add( offset, 0xFF000000 | random.nextInt( 0x1000000 ) ) ;
+        }
+        return stops ;
+    }
+
+    @Benchmark
+    public List<GradientIndex.Match> nearest() {
+        return index.nearest( queries[ next++ & ( queries.length - 1 ) ], k ) ;
+    }
+
+    @Benchmark
+    public GradientIndex open() throws IOException {
+        return GradientIndex.open( file ) ;
+    }
+}
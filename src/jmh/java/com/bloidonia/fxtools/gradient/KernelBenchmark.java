@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The channel at a time peak tests and band averages against their
+ * {@link PackedKernels} versions, over long lines.  That they give the
+ * same answers is checked by {@code PackedKernelsTest}.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class KernelBenchmark {
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    int length ;
+
+    @Param( { "2", "10", "50" } )
+    float threshold ;
+
+    @Param( { "RAMP", "BANDED", "NOISY" } )
+    SyntheticImages content ;
+
+    // Rows of the averaging band, as LineSampler takes them with a width of 5
+    private static final int BAND = 5 ;
+
+    private int[] samples ;
+    private int[] band ;
+    private int[] out ;
+
+    @Setup
+    public void setup() {
+        samples = content.line( length ) ;
+        band = new int[ length * BAND ] ;
+        for( int k = 0 ; k < BAND ; k++ ) {
+            // Each row a few pixels along, so the rows differ
+            for( int i = 0 ; i < length ; i++ ) {
+                band[ i * BAND + k ] = samples[ Math.min( i + k * 3, length - 1 ) ] ;
+            }
+        }
+        out = new int[ length ] ;
+    }
+
+    @Benchmark
+    public int[] scalarPeaks() {
+        return PeakDetector.findPeaksScalar( samples, samples.length, threshold ) ;
+    }
+
+    @Benchmark
+    public int[] packedPeaks() {
+        return PackedKernels.findPeaks( samples, samples.length, threshold ) ;
+    }
+
+    @Benchmark
+    public int scalarCount() {
+        return PeakDetector.countPeaksScalar( samples, 0, 1, samples.length, threshold ) ;
+    }
+
+    @Benchmark
+    public int packedCount() {
+        return PackedKernels.countPeaks( samples, 0, 1, samples.length, threshold ) ;
+    }
+
+    @Benchmark
+    public int[] scalarBand() {
+        for( int i = 0 ; i < length ; i++ ) {
+            int a = 0, r = 0, g = 0, b = 0 ;
+            for( int k = i * BAND ; k < i * BAND + BAND ; k++ ) {
+                int c = band[ k ] ;
+                a += ( c >>> 24 ) ;
+                r += ( c >> 16 ) & 0xFF ;
+                g += ( c >> 8  ) & 0xFF ;
+                b += ( c       ) & 0xFF ;
+            }
+            out[ i ] = LineSampler.average( a, r, g, b, BAND ) ;
+        }
+        return out ;
+    }
+
+    @Benchmark
+    public int[] packedBand() {
+        for( int i = 0 ; i < length ; i++ ) {
+            long sum = 0 ;
+            for( int k = i * BAND ; k < i * BAND + BAND ; k++ ) {
+                sum += PackedKernels.spread( band[ k ] ) ;
+            }
+            out[ i ] = PackedKernels.average( sum, BAND ) ;
+        }
+        return out ;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@code findPeaks} over one line of samples in each detection
+ * mode, of answering the same query from a prebuilt {@link DeviationIndex}
+ * (and building it), and of fitting a fixed number of stops instead.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PeakDetectionBenchmark {
+    @Param( { "100", "1000", "5000", "20000" } )
+    int length ;
+
+    @Param( { "2", "10", "50" } )
+    float threshold ;
+
+    @Param( { "RAMP", "BANDED", "NOISY" } )
+    SyntheticImages content ;
+
+    @Param( { "RGB", "CIELAB", "OKLAB" } )
+    DetectionMode detection ;
+
+    private int[] samples ;
+    private DeviationIndex index ;
+
+    @Setup
+    public void setup() {
+        samples = content.line( length ) ;
+        index = DeviationIndex.build( samples, samples.length, detection ) ;
+    }
+
+    @Benchmark
+    public int[] findPeaks() {
+        return PeakDetector.findPeaks( samples, samples.length, threshold, detection ) ;
+    }
+
+    @Benchmark
+    public int[] indexedPeaks() {
+        return index.peaks( threshold ) ;
+    }
+
+    @Benchmark
+    public DeviationIndex buildIndex() {
+        return DeviationIndex.build( samples, samples.length, detection ) ;
+    }
+
+    @Benchmark
+    public int[] indexedTo12Stops() {
+        return index.peaksForCount( 12 ) ;
+    }
+
+    @Benchmark
+    public int[] reduceTo12Stops() {
+        return StopReducer.reduce( samples, samples.length, 12, ErrorMetric.MAX ) ;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of sampling one drag line, as {@code pixelsInLine} does through
+ * {@link LineSampler}, for each sampling mode.  {@code PIXEL} is the
+ * original Bresenham walk.
+ *
+ * @author Tim Yates
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SamplingBenchmark {
+    @Param( { "100", "1000", "5000", "20000" } )
+    int length ;
+
+    @Param( { "RAMP", "BANDED", "NOISY" } )
+    SyntheticImages content ;
+
+    @Param( { "PIXEL", "NEAREST", "BILINEAR", "BICUBIC" } )
+    SampleMode mode ;
+
+    @Param( { "1", "5" } )
+    int width ;
+
+    private ImageBuffer image ;
+    private LineSampler sampler ;
+    private final SampleBuffer samples = new SampleBuffer() ;
+
+    @Setup
+    public void setup() {
+        image = content.create( length, 64 ) ;
+        sampler = new LineSampler( mode, 1.0, width ) ;
+    }
+
+    @Benchmark
+    public int diagonal() {
+        sampler.sample( image, 0.5, 0.5, length - 0.5, 63.5, samples ) ;
+        return samples.size() ;
+    }
+}
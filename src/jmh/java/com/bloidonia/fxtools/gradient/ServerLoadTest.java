@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Drives an {@link ExtractionServer} with concurrent clients and reports
+ * throughput and latency percentiles.
+ *
+ * By default a server is started in this process, on a synthetic image
+ * written to a temporary file.  Each client sends requests back to back
+ * for the duration, each with {@code --lines} lines picked from a pool of
+ * {@code --distinct} ones, so the size of the pool sets how often the
+ * result cache is hit.
+ *
+ * <pre>
+ *   ServerLoadTest [options]
+ * </pre>
+ *
+ * @author Tim Yates
+ */
+public final class ServerLoadTest {
+    private static final String USAGE =
+        "Usage: ServerLoadTest [options]\n" +
+        "Options:\n" +
+        "  --clients n      concurrent clients (default 16)\n" +
+        "  --duration s     seconds to measure (default 10)\n" +
+        "  --warmup s       seconds to run before measuring (default 3)\n" +
+        "  --lines n        lines per request (default 4)\n" +
+        "  --distinct n     different lines to pick from (default 1000)\n" +
+        "  --endpoint e     samples, peaks or gradient (default gradient)\n" +
+        "  --upload         post the image with every request instead of naming it\n" +
+        "  --size WxH       synthetic image size (default 1920x1080)\n" +
+        "  --threads n      server request threads (default: 4 per processor)\n" +
+        "  --url u          test a running server instead, eg http://localhost:8077/\n" ;
+
+    private final String base ;
+    private final Path image ;
+    private final byte[] upload ;
+    private final String endpoint ;
+    private final String[] lines ;
+    private final int linesPerRequest ;
+
+    private final Histogram latency = new Histogram() ;
+    private final LongAccumulator max = new LongAccumulator( Math::max, 0 ) ;
+    private final LongAdder errors = new LongAdder() ;
+    private volatile boolean measuring ;
+
+    ServerLoadTest( String base, Path image, boolean upload, String endpoint, String[] lines, int linesPerRequest ) throws IOException {
+        this.base = base.endsWith( "/" ) ? base : base + "/" ;
+        this.image = image ;
+        this.upload = upload ? Files.readAllBytes( image ) : null ;
+        this.endpoint = endpoint ;
+        this.lines = lines ;
+        this.linesPerRequest = linesPerRequest ;
+    }
+
+    private void client( int id, long warmupEnd, long end, CountDownLatch done ) {
+        Random random = new Random( id ) ;
+        byte[] buffer = new byte[ 1 << 16 ] ;
+        try {
+            for( long now = System.nanoTime() ; now < end ; now = System.nanoTime() ) {
+                if( !measuring && now >= warmupEnd ) {
+                    measuring = true ;
+                }
+                StringBuilder query = new StringBuilder( base ).append( endpoint ).append( '?' ) ;
+                if( upload == null ) {
+                    query.append( "image=" ).append( URLEncoder.encode( image.toString(), "UTF-8" ) ).append( '&' ) ;
+                }
+                for( int i = 0 ; i < linesPerRequest ; i++ ) {
+                    query.append( i == 0 ? "line=" : "&line=" ).append( lines[ random.nextInt( lines.length ) ] ) ;
+                }
+                long start = System.nanoTime() ;
+                int status = send( new URL( query.toString() ), buffer ) ;
+                long elapsed = System.nanoTime() - start ;
+                if( measuring ) {
+                    latency.record( elapsed ) ;
+                    max.accumulate( elapsed ) ;
+                    if( status != 200 ) {
+                        errors.increment() ;
+                    }
+                }
+            }
+        }
+        catch( IOException ex ) {
+            ex.printStackTrace() ;
+            errors.increment() ;
+        }
+        finally {
+            done.countDown() ;
+        }
+    }
+
+    private int send( URL url, byte[] buffer ) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection() ;
+        if( upload != null ) {
+            connection.setRequestMethod( "POST" ) ;
+            connection.setDoOutput( true ) ;
+            connection.setFixedLengthStreamingMode( upload.length ) ;
+            try( OutputStream out = connection.getOutputStream() ) {
+                out.write( upload ) ;
+            }
+        }
+        int status = connection.getResponseCode() ;
+        // Read the whole body so the connection is kept alive for the next request
+        try( InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream() ) {
+            while( in != null && in.read( buffer ) > 0 ) {
+            }
+        }
+        return status ;
+    }
+
+    private static String fetch( String url ) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL( url ).openConnection() ;
+        ByteArrayOutputStream out = new ByteArrayOutputStream() ;
+        try( InputStream in = connection.getInputStream() ) {
+            byte[] buffer = new byte[ 4096 ] ;
+            int n ;
+            while( ( n = in.read( buffer ) ) > 0 ) {
+                out.write( buffer, 0, n ) ;
+            }
+        }
+        return new String( out.toByteArray(), StandardCharsets.UTF_8 ) ;
+    }
+
+    // Random lines that stay inside the image
+    private static String[] lines( int count, int width, int height ) {
+        Random random = new Random( 42 ) ;
+        String[] lines = new String[ count ] ;
+        for( int i = 0 ; i < count ; i++ ) {
+            lines[ i ] = random.nextInt( width ) + "," + random.nextInt( height ) + "," + random.nextInt( width ) + "," + random.nextInt( height ) ;
+        }
+        return lines ;
+    }
+
+    private static double millis( long nanos ) {
+        return nanos / 1e6 ;
+    }
+
+    public static void main( String[] args ) throws Exception {
+        int clients = 16 ;
+        int duration = 10 ;
+        int warmup = 3 ;
+        int linesPerRequest = 4 ;
+        int distinct = 1000 ;
+        String endpoint = "gradient" ;
+        boolean upload = false ;
+        int width = 1920, height = 1080 ;
+        int threads = Runtime.getRuntime().availableProcessors() * 4 ;
+        String url = null ;
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--clients"  : clients = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--duration" : duration = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--warmup"   : warmup = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--lines"    : linesPerRequest = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--distinct" : distinct = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--endpoint" : endpoint = args[ ++i ].toLowerCase( Locale.ROOT ) ; break ;
+                    case "--upload"   : upload = true ; break ;
+                    case "--threads"  : threads = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--url"      : url = args[ ++i ] ; break ;
+                    case "--size" :
+                        String[] size = args[ ++i ].split( "x" ) ;
+                        width = Integer.parseInt( size[ 0 ] ) ;
+                        height = Integer.parseInt( size[ 1 ] ) ;
+                        break ;
+                    default : throw new IllegalArgumentException( "Unknown option " + args[ i ] ) ;
+                }
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        Path image = Files.createTempFile( "load-test", ".png" ) ;
+        image.toFile().deleteOnExit() ;
+        ImageBuffer pixels = SyntheticImages.NOISY.create( width, height ) ;
+        BufferedImage png = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB ) ;
+        png.setRGB( 0, 0, width, height, pixels.getPixels(), 0, width ) ;
+        ImageIO.write( png, "png", image.toFile() ) ;
+
+        ExtractionServer server = null ;
+        if( url == null ) {
+            server = new ExtractionServer( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), threads,
+                                           new ImageStore( null, 512L << 20 ), new ResultCache( 4096 ) ) ;
+            server.start() ;
+            url = "http://localhost:" + server.getPort() + "/" ;
+        }
+        // The JDK client keeps this many idle connections per host
+        System.setProperty( "http.maxConnections", String.valueOf( clients ) ) ;
+
+        ServerLoadTest test = new ServerLoadTest( url, image, upload, endpoint, lines( distinct, width, height ), linesPerRequest ) ;
+        long start = System.nanoTime() ;
+        long warmupEnd = start + warmup * 1_000_000_000L ;
+        long end = warmupEnd + duration * 1_000_000_000L ;
+        CountDownLatch done = new CountDownLatch( clients ) ;
+        for( int i = 0 ; i < clients ; i++ ) {
+            final int id = i ;
+            new Thread( () -> test.client( id, warmupEnd, end, done ), "load-client-" + i ).start() ;
+        }
+        done.await() ;
+
+        Histogram latency = test.latency ;
+        long requests = latency.getCount() ;
+        System.out.printf( "%d clients  %d lines per request  %s %s  %dx%d image%n",
+                           clients, linesPerRequest, upload ? "POST" : "GET", "/" + endpoint, width, height ) ;
+        System.out.printf( "requests %d  errors %d  throughput %.1f req/s  %.1f lines/s%n",
+                           requests, test.errors.sum(), requests / (double)duration, requests * linesPerRequest / (double)duration ) ;
+        System.out.printf( "latency p50 %.2fms  p90 %.2fms  p99 %.2fms  p99.9 %.2fms  max %.2fms%n",
+                           millis( Math.min( latency.getValueAtPercentile( 50 ), test.max.get() ) ),
+                           millis( Math.min( latency.getValueAtPercentile( 90 ), test.max.get() ) ),
+                           millis( Math.min( latency.getValueAtPercentile( 99 ), test.max.get() ) ),
+                           millis( Math.min( latency.getValueAtPercentile( 99.9 ), test.max.get() ) ),
+                           millis( test.max.get() ) ) ;
+        System.out.println( fetch( url + "stats" ) ) ;
+        if( server != null ) {
+            server.stop() ;
+        }
+    }
+}
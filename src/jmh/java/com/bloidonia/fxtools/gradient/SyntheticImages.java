@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Random;
+
+/**
+ * Generated images for the benchmarks, so no assets are needed.
+ *
+ * @author Tim Yates
+ */
+public enum SyntheticImages {
+    /** A smooth three channel ramp, with few peaks */
+    RAMP {
+        @Override
+        int pixel( int x, int y, int width, int height, Random random ) {
+            int r = x * 255 / Math.max( width - 1, 1 ) ;
+            int g = y * 255 / Math.max( height - 1, 1 ) ;
+            return 0xFF000000 | ( r << 16 ) | ( g << 8 ) | ( 255 - r ) ;
+        }
+    },
+    /** Flat bands of color 32 pixels wide, giving a peak at every edge */
+    BANDED {
+        @Override
+        int pixel( int x, int y, int width, int height, Random random ) {
+            int band = x / 32 ;
+            return 0xFF000000 | ( ( band * 97 ) & 0xFF ) << 16 | ( ( band * 53 ) & 0xFF ) << 8 | ( ( band * 29 ) & 0xFF ) ;
+        }
+    },
+    /** A ramp with per pixel noise, standing in for a photo or dithered image */
+    NOISY {
+        @Override
+        int pixel( int x, int y, int width, int height, Random random ) {
+            int base = RAMP.pixel( x, y, width, height, random ) ;
+            int r = clamp( ( ( base >> 16 ) & 0xFF ) + random.nextInt( 25 ) - 12 ) ;
+            int g = clamp( ( ( base >> 8  ) & 0xFF ) + random.nextInt( 25 ) - 12 ) ;
+            int b = clamp( ( ( base       ) & 0xFF ) + random.nextInt( 25 ) - 12 ) ;
+            return 0xFF000000 | ( r << 16 ) | ( g << 8 ) | b ;
+        }
+    } ;
+
+    abstract int pixel( int x, int y, int width, int height, Random random ) ;
+
+    public ImageBuffer create( int width, int height ) {
+        Random random = new Random( 42 ) ;
+        int[] pixels = new int[ width * height ] ;
+        for( int y = 0 ; y < height ; y++ ) {
+            for( int x = 0 ; x < width ; x++ ) {
+                pixels[ y * width + x ] = pixel( x, y, width, height, random ) ;
+            }
+        }
+        return new ImageBuffer( width, height, pixels ) ;
+    }
+
+    /**
+     * @return {@code length} samples along the image's middle row
+     */
+    public int[] line( int length ) {
+        ImageBuffer image = create( length, 3 ) ;
+        int[] samples = new int[ length ] ;
+        System.arraycopy( image.getPixels(), length, samples, 0, length ) ;
+        return samples ;
+    }
+
+    private static int clamp( int c ) {
+        return c < 0 ? 0 : c > 255 ? 255 : c ;
+    }
+}
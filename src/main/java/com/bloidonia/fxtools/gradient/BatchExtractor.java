@@ -0,0 +1,345 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.imageio.ImageIO;
+
+/**
+ * Extracts gradients from image files without starting the JavaFX toolkit.
+ *
+ * Each job is an image and a line across it, given either on the command
+ * line or one per line in a manifest file:
+ *
+ * <pre>
+ *   BatchExtractor [options] image x1 y1 x2 y2 [image x1 y1 x2 y2 ...]
+ *   BatchExtractor [options] --manifest jobs.txt
+ * </pre>
+ *
+ * A manifest line is {@code image x1 y1 x2 y2 [threshold]}; blank lines and
+ * lines starting with {@code #} are ignored, and relative image paths are
+ * resolved against the manifest's directory.  With {@code --shape radial},
+ * each (x1, y1) is the centre of a radial gradient and (x2, y2) a point on
+ * its edge.
+ *
+ * Images are processed in parallel on a fork-join pool, each one decoded
+ * once for all of its jobs.  One JSON record is written per job, in the
+ * order the jobs complete, carrying the same CSS and {@code Stop[]} code as
+ * the UI.  With {@code --index}, each gradient is also added to a
+ * {@link GradientIndex}.
+ *
+ * @author Tim Yates
+ */
+public final class BatchExtractor {
+    private static final String USAGE =
+        "Usage: BatchExtractor [options] (image x1 y1 x2 y2)... | --manifest file\n" +
+        "Options:\n" +
+        "  --threshold t   peak threshold (default 10)\n" +
+        "  --mode m        pixel, nearest, bilinear or bicubic (default pixel)\n" +
+        "  --shape s       line or radial (default line)\n" +
+        "  --threads n     worker threads (default: available processors)\n" +
+        "  --output file   write records to file instead of standard out\n" +
+        "  --index file    also add each gradient to this gradient index\n" ;
+
+    private final LineSampler sampler ;
+    private final float defaultThreshold ;
+    private GradientIndex index ;
+
+    public BatchExtractor( LineSampler sampler, float defaultThreshold ) {
+        this.sampler = sampler ;
+        this.defaultThreshold = finite( defaultThreshold ) ;
+    }
+
+    /**
+     * Adds every gradient extracted from now on to {@code index}
+     */
+    public BatchExtractor setIndex( GradientIndex index ) {
+        this.index = index ;
+        return this ;
+    }
+
+    /**
+     * A path to extract, numbered in the order it was given
+     */
+    public static final class Job {
+        final int index ;
+        final Path image ;
+        final ExtractionPath path ;
+        final Float threshold ;
+
+        public Job( int index, Path image, double x1, double y1, double x2, double y2, Float threshold ) {
+            this( index, image, ExtractionPath.line( x1, y1, x2, y2 ), threshold ) ;
+        }
+
+        public Job( int index, Path image, ExtractionPath path, Float threshold ) {
+            this.index = index ;
+            this.image = image ;
+            this.path = path ;
+            this.threshold = threshold == null ? null : finite( threshold ) ;
+        }
+    }
+
+    /**
+     * The JSON record written for a job, and whether the job failed
+     */
+    private static final class Record {
+        final String json ;
+        final boolean failed ;
+
+        Record( String json, boolean failed ) {
+            this.json = json ;
+            this.failed = failed ;
+        }
+    }
+
+    /**
+     * Runs all the jobs on {@code pool}, writing one record per job to {@code out}.
+     *
+     * @return the number of jobs that failed
+     */
+    public int run( List<Job> jobs, ForkJoinPool pool, Writer out ) {
+        Map<Path,List<Job>> byImage = new LinkedHashMap<>() ;
+        for( Job job : jobs ) {
+            byImage.computeIfAbsent( job.image, k -> new ArrayList<>() ).add( job ) ;
+        }
+        int[] failures = new int[ 1 ] ;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>() ;
+        for( Map.Entry<Path,List<Job>> entry : byImage.entrySet() ) {
+            tasks.add( ForkJoinTask.adapt( () -> {
+                for( Record record : extract( entry.getKey(), entry.getValue() ) ) {
+                    synchronized( out ) {
+                        try {
+                            out.write( record.json ) ;
+                            out.write( '\n' ) ;
+                        }
+                        catch( IOException ex ) {
+                            throw new IllegalStateException( ex ) ;
+                        }
+                        if( record.failed ) {
+                            failures[ 0 ]++ ;
+                        }
+                    }
+                }
+            } ) ) ;
+        }
+        pool.submit( () -> ForkJoinTask.invokeAll( tasks ) ).join() ;
+        return failures[ 0 ] ;
+    }
+
+    private List<Record> extract( Path path, List<Job> jobs ) {
+        List<Record> records = new ArrayList<>( jobs.size() ) ;
+        ImageBuffer image ;
+        try {
+            BufferedImage decoded = ImageIO.read( path.toFile() ) ;
+            if( decoded == null ) {
+                throw new IOException( "Unsupported image format" ) ;
+            }
+            image = ImageBuffer.fromBufferedImage( decoded ) ;
+        }
+        catch( IOException ex ) {
+            for( Job job : jobs ) {
+                records.add( error( job, ex.toString() ) ) ;
+            }
+            return records ;
+        }
+        SampleBuffer samples = new SampleBuffer() ;
+        GradientStops stops = new GradientStops() ;
+        for( Job job : jobs ) {
+            if( !job.path.isInside( image ) ) {
+                records.add( error( job, "Line is outside the " + image.getWidth() + "x" + image.getHeight() + " image" ) ) ;
+                continue ;
+            }
+            float threshold = job.threshold == null ? defaultThreshold : job.threshold ;
+            job.path.sample( sampler, image, samples ) ;
+            int[] colors = samples.toArray() ;
+            int[] peaks = PeakDetector.findPeaks( colors, colors.length, threshold ) ;
+            StringBuilder sb = start( job ) ;
+            sb.append( ",\"threshold\":" ).append( threshold ) ;
+            sb.append( ",\"samples\":" ).append( colors.length ) ;
+            sb.append( ",\"peaks\":[" ) ;
+            for( int i = 0 ; i < peaks.length ; i++ ) {
+                sb.append( i == 0 ? "" : "," ).append( peaks[ i ] ) ;
+            }
+            stops.setPeaks( colors, colors.length, peaks ).setRadial( job.path.getShape() == ExtractionPath.Shape.RADIAL ) ;
+            if( index != null ) {
+                try {
+                    index.add( GradientIndex.label( job.image.toString(), job.path ), stops ) ;
+                }
+                catch( IOException ex ) {
+                    records.add( error( job, "Could not index: " + ex ) ) ;
+                    continue ;
+                }
+            }
+            sb.append( "],\"css\":" ) ;
+            Json.quote( sb, GradientFormat.CSS.format( stops ) ) ;
+            sb.append( ",\"code\":" ) ;
+            Json.quote( sb, GradientFormat.JAVA.format( stops ) ) ;
+            records.add( new Record( sb.append( '}' ).toString(), false ) ) ;
+        }
+        return records ;
+    }
+
+    private StringBuilder start( Job job ) {
+        StringBuilder sb = new StringBuilder( "{\"job\":" ).append( job.index ).append( ",\"image\":" ) ;
+        Json.quote( sb, job.image.toString() ) ;
+        sb.append( ",\"shape\":\"" ).append( job.path.getShape().name().toLowerCase( Locale.ROOT ) ).append( "\",\"line\":[" ) ;
+        for( int i = 0 ; i < job.path.pointCount() ; i++ ) {
+            sb.append( i == 0 ? "" : "," ).append( job.path.getX( i ) ).append( ',' ).append( job.path.getY( i ) ) ;
+        }
+        return sb.append( ']' )
+                 .append( ",\"mode\":" ).append( '"' ).append( sampler.getMode().name().toLowerCase( Locale.ROOT ) ).append( '"' ) ;
+    }
+
+    private Record error( Job job, String message ) {
+        StringBuilder sb = start( job ).append( ",\"error\":" ) ;
+        return new Record( Json.quote( sb, message ).append( '}' ).toString(), true ) ;
+    }
+
+    // JSON has no NaN or Infinity, and neither makes sense as a threshold
+    private static float finite( float threshold ) {
+        if( Float.isNaN( threshold ) || Float.isInfinite( threshold ) ) {
+            throw new IllegalArgumentException( "Threshold must be a finite number, not " + threshold ) ;
+        }
+        return threshold ;
+    }
+
+    static List<Job> readManifest( Path manifest, ExtractionPath.Shape shape ) throws IOException {
+        List<Job> jobs = new ArrayList<>() ;
+        Path dir = manifest.toAbsolutePath().getParent() ;
+        int lineNo = 0 ;
+        for( String line : Files.readAllLines( manifest, StandardCharsets.UTF_8 ) ) {
+            lineNo++ ;
+            line = line.trim() ;
+            if( line.isEmpty() || line.startsWith( "#" ) ) continue ;
+            String[] parts = line.split( "\\s+" ) ;
+            if( parts.length != 5 && parts.length != 6 ) {
+                throw new IllegalArgumentException( manifest + ":" + lineNo + ": expected 'image x1 y1 x2 y2 [threshold]'" ) ;
+            }
+            try {
+                jobs.add( new Job( jobs.size(),
+                                   dir.resolve( parts[ 0 ] ),
+                                   path( shape, parts, 1 ),
+                                   parts.length == 6 ? finite( Float.parseFloat( parts[ 5 ] ) ) : null ) ) ;
+            }
+            catch( IllegalArgumentException ex ) {
+                throw new IllegalArgumentException( manifest + ":" + lineNo + ": " + ex.getMessage(), ex ) ;
+            }
+        }
+        return jobs ;
+    }
+
+    private static ExtractionPath path( ExtractionPath.Shape shape, List<String> values, int from ) {
+        return path( shape, values.subList( from, from + 4 ).toArray( new String[ 4 ] ), 0 ) ;
+    }
+
+    private static ExtractionPath path( ExtractionPath.Shape shape, String[] values, int from ) {
+        double x1 = coordinate( values[ from ] ) ;
+        double y1 = coordinate( values[ from + 1 ] ) ;
+        double x2 = coordinate( values[ from + 2 ] ) ;
+        double y2 = coordinate( values[ from + 3 ] ) ;
+        return shape == ExtractionPath.Shape.RADIAL ? ExtractionPath.radial( x1, y1, x2, y2 ) : ExtractionPath.line( x1, y1, x2, y2 ) ;
+    }
+
+    // Written back into every record, so it has to be a number JSON can hold
+    private static double coordinate( String value ) {
+        double d = Double.parseDouble( value ) ;
+        if( Double.isNaN( d ) || Double.isInfinite( d ) ) {
+            throw new IllegalArgumentException( "Coordinates must be finite numbers, not " + value ) ;
+        }
+        return d ;
+    }
+
+    public static void main( String[] args ) throws IOException {
+        float threshold = 10 ;
+        SampleMode mode = SampleMode.PIXEL ;
+        int threads = Runtime.getRuntime().availableProcessors() ;
+        ExtractionPath.Shape shape = ExtractionPath.Shape.LINE ;
+        Path output = null ;
+        Path indexFile = null ;
+        List<Path> manifests = new ArrayList<>() ;
+        List<Job> jobs = new ArrayList<>() ;
+        List<String> positional = new ArrayList<>() ;
+
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--threshold" : threshold = finite( Float.parseFloat( args[ ++i ] ) ) ; break ;
+                    case "--mode"      : mode = SampleMode.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--threads"   : threads = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--output"    : output = Paths.get( args[ ++i ] ) ; break ;
+                    case "--shape"     : shape = ExtractionPath.Shape.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--manifest"  : manifests.add( Paths.get( args[ ++i ] ) ) ; break ;
+                    case "--index"     : indexFile = Paths.get( args[ ++i ] ) ; break ;
+                    default            : positional.add( args[ i ] ) ;
+                }
+            }
+            if( shape == ExtractionPath.Shape.POLYLINE ) {
+                throw new IllegalArgumentException( "Polylines are not supported in batch mode" ) ;
+            }
+            for( Path manifest : manifests ) {
+                jobs.addAll( readManifest( manifest, shape ) ) ;
+            }
+            if( positional.size() % 5 != 0 ) {
+                throw new IllegalArgumentException( "Each image needs four coordinates" ) ;
+            }
+            for( int i = 0 ; i < positional.size() ; i += 5 ) {
+                jobs.add( new Job( jobs.size(),
+                                   Paths.get( positional.get( i ) ),
+                                   path( shape, positional, i + 1 ),
+                                   null ) ) ;
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+        if( jobs.isEmpty() ) {
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        BatchExtractor extractor = new BatchExtractor( new LineSampler( mode ), threshold ) ;
+        if( indexFile != null ) {
+            extractor.setIndex( GradientIndex.open( indexFile ) ) ;
+        }
+        ForkJoinPool pool = new ForkJoinPool( threads ) ;
+        int failures ;
+        try( Writer out = output == null ? new BufferedWriter( new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ) )
+                                         : Files.newBufferedWriter( output, StandardCharsets.UTF_8 ) ) {
+            failures = extractor.run( jobs, pool, out ) ;
+        }
+        finally {
+            pool.shutdown() ;
+        }
+        System.exit( failures == 0 ? 0 : 1 ) ;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * An immutable snapshot of one extraction: the sampled colors as packed
+ * ARGB (in the layout of {@link RGB#getColor()}) and the peak indices.
+ *
+ * The arrays are taken over, not copied, and must not be changed after
+ * construction.  Strips made with {@link #withPeaks(int[])} share their
+ * colors, which lets listeners tell a peaks-only change apart.
+ *
+ * @author Tim Yates
+ */
+public final class ColorStrip {
+    public static final ColorStrip EMPTY = new ColorStrip( new int[ 0 ], new int[ 0 ] ) ;
+
+    private final int[] argb ;
+    private final int[] peaks ;
+
+    public ColorStrip( int[] argb, int[] peaks ) {
+        this.argb = argb ;
+        this.peaks = peaks ;
+    }
+
+    public ColorStrip withPeaks( int[] peaks ) {
+        return new ColorStrip( argb, peaks ) ;
+    }
+
+    public int size() {
+        return argb.length ;
+    }
+
+    public boolean isEmpty() {
+        return argb.length == 0 ;
+    }
+
+    public int getArgb( int i ) {
+        return argb[ i ] ;
+    }
+
+    public int peakCount() {
+        return peaks.length ;
+    }
+
+    public int getPeak( int i ) {
+        return peaks[ i ] ;
+    }
+
+    /**
+     * @return true if {@code other} holds the very same colors, as after {@link #withPeaks(int[])}
+     */
+    public boolean sameColors( ColorStrip other ) {
+        return other != null && other.argb == argb ;
+    }
+
+    /**
+     * @return a read only view of the colors
+     */
+    public List<RGB> getColors() {
+        return new AbstractList<RGB>() {
+            @Override
+            public RGB get( int index ) {
+                return RGB.fromArgb( argb[ index ] ) ;
+            }
+
+            @Override
+            public int size() {
+                return argb.length ;
+            }
+        } ;
+    }
+
+    /**
+     * @return a read only view of the peaks
+     */
+    public List<Integer> getPeaks() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get( int index ) {
+                return peaks[ index ] ;
+            }
+
+            @Override
+            public int size() {
+                return peaks.length ;
+            }
+        } ;
+    }
+
+    // Direct access for the panes and emitters; callers must not modify these
+    int[] argb() {
+        return argb ;
+    }
+
+    int[] peaks() {
+        return peaks ;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * The color space in which {@link PeakDetector} compares a sample with the
+ * midpoint of its neighbours.
+ *
+ * @author Tim Yates
+ */
+public enum DetectionMode {
+    /** Any one sRGB channel deviating by more than the threshold */
+    RGB( "RGB" ),
+    /** CIE 1976 color difference (delta E*ab) against the threshold */
+    CIELAB( "CIELAB \u0394E" ),
+    /** Euclidean distance in OKLab, with L scaled to 0-100, against the threshold */
+    OKLAB( "OKLab \u0394E" ) ;
+
+    private final String label ;
+
+    DetectionMode( String label ) {
+        this.label = label ;
+    }
+
+    @Override
+    public String toString() {
+        return label ;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * The peaks of one line of samples at every threshold at once.
+ *
+ * How far each sample deviates from its neighbours' midpoint does not
+ * depend on the threshold, so it is worked out once (as the largest
+ * channel deviation, or the squared color difference in the Lab spaces)
+ * and the windows are sorted by it.  The peaks for any threshold are then
+ * the windows before a cut in that order, found by binary search, and give
+ * the same result as {@link PeakDetector#findPeaks(int[], int, float, DetectionMode)}.
+ *
+ * @author Tim Yates
+ */
+public final class DeviationIndex {
+    private final DetectionMode mode ;
+    // Window indices, largest deviation first, and their deviations
+    private final int[] order ;
+    private final float[] sorted ;
+
+    private DeviationIndex( DetectionMode mode, int[] order, float[] sorted ) {
+        this.mode = mode ;
+        this.order = order ;
+        this.sorted = sorted ;
+    }
+
+    public static DeviationIndex build( int[] argb, int length, DetectionMode mode ) {
+        int n = Math.max( length - 2, 0 ) ;
+        float[] deviations = new float[ n ] ;
+        if( mode == DetectionMode.RGB ) {
+            for( int i = 0 ; i < n ; i++ ) {
+                int c0 = argb[ i ], c1 = argb[ i + 1 ], c2 = argb[ i + 2 ] ;
+                deviations[ i ] = Math.max( deviation( ( c0 >> 16 ) & 0xFF, ( c1 >> 16 ) & 0xFF, ( c2 >> 16 ) & 0xFF ),
+                                  Math.max( deviation( ( c0 >> 8  ) & 0xFF, ( c1 >> 8  ) & 0xFF, ( c2 >> 8  ) & 0xFF ),
+                                            deviation( ( c0       ) & 0xFF, ( c1       ) & 0xFF, ( c2       ) & 0xFF ) ) ) ;
+            }
+        }
+        else {
+            float[] lab = LabConverter.forThread( mode ).convert( argb, length ) ;
+            for( int i = 0 ; i < n ; i++ ) {
+                int o = i * 3 ;
+                float dl = lab[ o + 3 ] - ( lab[ o     ] + lab[ o + 6 ] ) * 0.5f ;
+                float da = lab[ o + 4 ] - ( lab[ o + 1 ] + lab[ o + 7 ] ) * 0.5f ;
+                float db = lab[ o + 5 ] - ( lab[ o + 2 ] + lab[ o + 8 ] ) * 0.5f ;
+                deviations[ i ] = dl * dl + da * da + db * db ;
+            }
+        }
+        // Deviations are never negative, so their bits sort in the same order as their values
+        long[] keys = new long[ n ] ;
+        for( int i = 0 ; i < n ; i++ ) {
+            keys[ i ] = ( (long)Float.floatToIntBits( deviations[ i ] ) << 32 ) | i ;
+        }
+        Arrays.sort( keys ) ;
+        int[] order = new int[ n ] ;
+        float[] sorted = new float[ n ] ;
+        for( int i = 0 ; i < n ; i++ ) {
+            int index = (int)keys[ n - 1 - i ] ;
+            order[ i ] = index ;
+            sorted[ i ] = deviations[ index ] ;
+        }
+        return new DeviationIndex( mode, order, sorted ) ;
+    }
+
+    public DetectionMode getMode() {
+        return mode ;
+    }
+
+    /**
+     * @return the number of windows, two less than the number of samples
+     */
+    public int size() {
+        return order.length ;
+    }
+
+    /**
+     * @return the same peaks as {@link PeakDetector#findPeaks(int[], int, float, DetectionMode)} with this threshold
+     */
+    public int[] peaks( float threshold ) {
+        return first( countAbove( limit( threshold ) ) ) ;
+    }
+
+    /**
+     * @return the peaks, starting at 0, for the highest threshold that gives no more than {@code count} of them
+     */
+    public int[] peaksForCount( int count ) {
+        return first( cutForCount( count ) ) ;
+    }
+
+    /**
+     * @return the threshold {@link #peaksForCount(int)} works out to, or -1 when every window is a peak
+     */
+    public float thresholdForCount( int count ) {
+        int k = count - 1 ;
+        if( k >= sorted.length ) {
+            return -1 ;
+        }
+        float value = sorted[ Math.max( k, 0 ) ] ;
+        if( mode == DetectionMode.RGB ) {
+            return value ;
+        }
+        // The rounded root may square to just under the value, which would let one more peak through
+        float threshold = (float)Math.sqrt( value ) ;
+        while( threshold * threshold < value ) {
+            threshold = Math.nextUp( threshold ) ;
+        }
+        return threshold ;
+    }
+
+    // The number of windows to take so that there are at most count peaks, including the one at 0
+    private int cutForCount( int count ) {
+        int k = count - 1 ;
+        if( k >= sorted.length ) {
+            return sorted.length ;
+        }
+        return k <= 0 ? 0 : countAbove( sorted[ k ] ) ;
+    }
+
+    // The threshold as compared with the stored deviations
+    private float limit( float threshold ) {
+        if( mode == DetectionMode.RGB ) {
+            return threshold ;
+        }
+        return threshold < 0 ? Float.NEGATIVE_INFINITY : threshold * threshold ;
+    }
+
+    // The number of windows deviating by more than limit, by binary search of the descending deviations
+    private int countAbove( float limit ) {
+        int lo = 0, hi = sorted.length ;
+        while( lo < hi ) {
+            int mid = ( lo + hi ) >>> 1 ;
+            if( sorted[ mid ] > limit ) {
+                lo = mid + 1 ;
+            }
+            else {
+                hi = mid ;
+            }
+        }
+        return lo ;
+    }
+
+    // Index 0 followed by the first k windows in ascending order, as PeakDetector reports them
+    private int[] first( int k ) {
+        int[] peaks = new int[ k + 1 ] ;
+        System.arraycopy( order, 0, peaks, 1, k ) ;
+        Arrays.sort( peaks, 1, k + 1 ) ;
+        return peaks ;
+    }
+
+    // Kept in float, as PeakDetector compares it
+    private static float deviation( int c0, int c1, int c2 ) {
+        float mid = c0 + ( ( c2 - c0 ) * 0.5f ) ;
+        return Math.abs( c1 - mid ) ;
+    }
+}
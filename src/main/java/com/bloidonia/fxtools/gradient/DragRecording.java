@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A text log of the images loaded and the mouse presses, drags and
+ * releases on them, which {@link ReplayTool} can play back without the UI.
+ *
+ * Each line is either {@code image <path>} or
+ * {@code <press|drag|release> <millis> <x> <y>}, with the time counted from
+ * when the recording started and the point in image pixels.
+ *
+ * @author Tim Yates
+ */
+public final class DragRecording implements Closeable {
+    public static final String PROPERTY = "gradient.recordDrags" ;
+
+    private final Writer out ;
+    private final long start = System.nanoTime() ;
+
+    public DragRecording( Path file ) throws IOException {
+        out = Files.newBufferedWriter( file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND ) ;
+    }
+
+    /**
+     * @return a recording to the file named by the {@value #PROPERTY} system property, or null if it is not set
+     */
+    public static DragRecording fromProperty() {
+        String file = System.getProperty( PROPERTY ) ;
+        if( file == null || file.isEmpty() ) {
+            return null ;
+        }
+        try {
+            return new DragRecording( Paths.get( file ) ) ;
+        }
+        catch( IOException ex ) {
+            Logger.getLogger( DragRecording.class.getName() ).log( Level.WARNING, "Cannot record drags to " + file, ex ) ;
+            return null ;
+        }
+    }
+
+    public void image( Path image ) {
+        write( "image " + image.toAbsolutePath() ) ;
+    }
+
+    public void event( String type, double x, double y ) {
+        write( String.format( Locale.ROOT, "%s %d %.2f %.2f", type, ( System.nanoTime() - start ) / 1_000_000L, x, y ) ) ;
+    }
+
+    private synchronized void write( String line ) {
+        try {
+            out.write( line ) ;
+            out.write( '\n' ) ;
+            out.flush() ;
+        }
+        catch( IOException ex ) {
+            Logger.getLogger( DragRecording.class.getName() ).log( Level.WARNING, "Cannot record drag", ex ) ;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close() ;
+    }
+
+    /**
+     * @return the lines of a recording, blank and {@code #} lines left out
+     */
+    public static List<Event> read( Path file ) throws IOException {
+        List<Event> events = new ArrayList<>() ;
+        int lineNo = 0 ;
+        for( String line : Files.readAllLines( file, StandardCharsets.UTF_8 ) ) {
+            lineNo++ ;
+            line = line.trim() ;
+            if( line.isEmpty() || line.startsWith( "#" ) ) continue ;
+            if( line.startsWith( "image " ) ) {
+                events.add( new Event( "image", 0, 0, 0, Paths.get( line.substring( 6 ).trim() ) ) ) ;
+                continue ;
+            }
+            String[] parts = line.split( "\\s+" ) ;
+            if( parts.length != 4 ) {
+                throw new IllegalArgumentException( file + ":" + lineNo + ": expected 'type millis x y'" ) ;
+            }
+            events.add( new Event( parts[ 0 ], Long.parseLong( parts[ 1 ] ),
+                                   Double.parseDouble( parts[ 2 ] ), Double.parseDouble( parts[ 3 ] ), null ) ) ;
+        }
+        return events ;
+    }
+
+    public static final class Event {
+        private final String type ;
+        private final long millis ;
+        private final double x, y ;
+        private final Path image ;
+
+        Event( String type, long millis, double x, double y, Path image ) {
+            this.type = type ;
+            this.millis = millis ;
+            this.x = x ;
+            this.y = y ;
+            this.image = image ;
+        }
+
+        /** One of image, press, drag or release */
+        public String getType() { return type ; }
+        public long getMillis() { return millis ; }
+        public double getX() { return x ; }
+        public double getY() { return y ; }
+        /** The image loaded, for an image event */
+        public Path getImage() { return image ; }
+    }
+}
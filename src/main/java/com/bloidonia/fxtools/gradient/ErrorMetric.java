@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * How far a set of stops is from the samples it was chosen from, measured
+ * as the RGB distance between each sample and the piecewise linear
+ * gradient through the stops.
+ *
+ * @author Tim Yates
+ */
+public enum ErrorMetric {
+    /** The largest distance at any sample */
+    MAX( "Max error" ),
+    /** The root mean square distance over all samples */
+    RMS( "RMS error" ) ;
+
+    private final String label ;
+
+    ErrorMetric( String label ) {
+        this.label = label ;
+    }
+
+    @Override
+    public String toString() {
+        return label ;
+    }
+
+    /**
+     * @param stops ascending sample indices, starting at 0; the last sample is always treated as a stop
+     * @return the error of the gradient through {@code stops}, in RGB units
+     */
+    public double measure( int[] samples, int length, int[] stops ) {
+        double max = 0, sum = 0 ;
+        for( int s = 0 ; s < stops.length ; s++ ) {
+            int from = stops[ s ] ;
+            int to = s + 1 < stops.length ? stops[ s + 1 ] : length - 1 ;
+            for( int i = from + 1 ; i < to ; i++ ) {
+                double e = StopReducer.squaredError( samples, from, to, i ) ;
+                sum += e ;
+                if( e > max ) max = e ;
+            }
+        }
+        return this == MAX ? Math.sqrt( max ) : Math.sqrt( sum / Math.max( length, 1 ) ) ;
+    }
+}
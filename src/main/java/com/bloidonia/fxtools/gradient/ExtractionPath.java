@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * Where to sample an image: a straight line, a polyline, or the radii of a
+ * circle.
+ *
+ * Points are held as x, y pairs.  A radial path is its centre followed by a
+ * point on its circumference, and is sampled by averaging {@code rays}
+ * evenly spaced radii.  Instances are immutable.
+ *
+ * @author Tim Yates
+ */
+public final class ExtractionPath {
+    public static final int DEFAULT_RAYS = 360 ;
+
+    public enum Shape {
+        LINE( "Line" ),
+        POLYLINE( "Polyline" ),
+        RADIAL( "Radial" ) ;
+
+        private final String label ;
+
+        Shape( String label ) {
+            this.label = label ;
+        }
+
+        @Override
+        public String toString() {
+            return label ;
+        }
+    }
+
+    private final Shape shape ;
+    private final double[] points ;
+    private final int rays ;
+
+    private ExtractionPath( Shape shape, double[] points, int rays ) {
+        this.shape = shape ;
+        this.points = points ;
+        this.rays = rays ;
+    }
+
+    public static ExtractionPath line( double x1, double y1, double x2, double y2 ) {
+        return new ExtractionPath( Shape.LINE, new double[] { x1, y1, x2, y2 }, 0 ) ;
+    }
+
+    /**
+     * @param points x, y pairs; at least one point
+     */
+    public static ExtractionPath polyline( double... points ) {
+        if( points.length < 2 || points.length % 2 != 0 ) {
+            throw new IllegalArgumentException( "Expected x, y pairs, got " + points.length + " values" ) ;
+        }
+        return new ExtractionPath( Shape.POLYLINE, points.clone(), 0 ) ;
+    }
+
+    public static ExtractionPath radial( double cx, double cy, double edgeX, double edgeY ) {
+        return radial( cx, cy, edgeX, edgeY, DEFAULT_RAYS ) ;
+    }
+
+    public static ExtractionPath radial( double cx, double cy, double edgeX, double edgeY, int rays ) {
+        if( rays < 1 ) {
+            throw new IllegalArgumentException( "rays must be at least 1: " + rays ) ;
+        }
+        return new ExtractionPath( Shape.RADIAL, new double[] { cx, cy, edgeX, edgeY }, rays ) ;
+    }
+
+    public Shape getShape() {
+        return shape ;
+    }
+
+    public int pointCount() {
+        return points.length / 2 ;
+    }
+
+    public double getX( int i ) {
+        return points[ i * 2 ] ;
+    }
+
+    public double getY( int i ) {
+        return points[ i * 2 + 1 ] ;
+    }
+
+    public int getRays() {
+        return rays ;
+    }
+
+    public double getRadius() {
+        return shape == Shape.RADIAL ? Math.hypot( points[ 2 ] - points[ 0 ], points[ 3 ] - points[ 1 ] ) : 0 ;
+    }
+
+    /**
+     * @return this path with every coordinate multiplied by {@code scale}
+     */
+    public ExtractionPath scaled( double scale ) {
+        if( scale == 1 ) {
+            return this ;
+        }
+        double[] p = points.clone() ;
+        for( int i = 0 ; i < p.length ; i++ ) {
+            p[ i ] *= scale ;
+        }
+        return new ExtractionPath( shape, p, rays ) ;
+    }
+
+    /**
+     * @return whether this path can be sampled from {@code image}; a line or polyline needs all
+     *         its points inside, and a radial path its centre
+     */
+    public boolean isInside( PixelSource image ) {
+        switch( shape ) {
+            case RADIAL :
+                return image.contains( points[ 0 ], points[ 1 ] ) ;
+            default :
+                for( int i = 0 ; i < points.length ; i += 2 ) {
+                    if( !image.contains( points[ i ], points[ i + 1 ] ) ) {
+                        return false ;
+                    }
+                }
+                return true ;
+        }
+    }
+
+    /**
+     * Clears {@code out} and fills it with the colors along this path.
+     */
+    public void sample( LineSampler sampler, PixelSource image, SampleBuffer out ) {
+        switch( shape ) {
+            case LINE :
+                sampler.sample( image, points[ 0 ], points[ 1 ], points[ 2 ], points[ 3 ], out ) ;
+                break ;
+            case RADIAL :
+                sampler.sampleRadial( image, points[ 0 ], points[ 1 ], getRadius(), rays, out ) ;
+                break ;
+            default :
+                sampler.samplePolyline( image, points, out ) ;
+        }
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( !( obj instanceof ExtractionPath ) ) {
+            return false ;
+        }
+        ExtractionPath other = (ExtractionPath)obj ;
+        return shape == other.shape && rays == other.rays && Arrays.equals( points, other.points ) ;
+    }
+
+    @Override
+    public int hashCode() {
+        return ( shape.hashCode() * 31 + rays ) * 31 + Arrays.hashCode( points ) ;
+    }
+
+    @Override
+    public String toString() {
+        return shape + Arrays.toString( points ) ;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs line sampling and peak detection on a background thread.
+ *
+ * Only the most recent request matters: a request submitted while another
+ * is waiting replaces it, and a result that is superseded before the
+ * publisher gets to it is discarded.  Results are handed to the consumer
+ * through {@code publishExecutor} (for the UI, {@code Platform::runLater}),
+ * at most one hand-off being outstanding at a time.
+ *
+ * @author Tim Yates
+ */
+public final class ExtractionPipeline {
+    private final ExecutorService worker = Executors.newSingleThreadExecutor( r -> {
+        Thread t = new Thread( r, "gradient-extraction" ) ;
+        t.setDaemon( true ) ;
+        return t ;
+    } ) ;
+    private final Executor publishExecutor ;
+    private final Consumer<Result> consumer ;
+    private final ExtractionStats stats ;
+    private final ResultCache cache ;
+
+    private final AtomicReference<Request> pending = new AtomicReference<>() ;
+    private final AtomicBoolean scheduled = new AtomicBoolean() ;
+    private final AtomicReference<Result> unpublished = new AtomicReference<>() ;
+    // Superseded since the last extraction started, and since the last result was shown
+    private final AtomicInteger coalescedRun = new AtomicInteger() ;
+    private final AtomicInteger droppedRun = new AtomicInteger() ;
+
+    // Only touched by the worker thread
+    private final SampleBuffer samples = new SampleBuffer() ;
+    // The last request sampled, its colors, and an index of them once the same colors are asked for again
+    private Request sampled ;
+    private int[] colors ;
+    private DeviationIndex index ;
+
+    public ExtractionPipeline( Executor publishExecutor, Consumer<Result> consumer, ExtractionStats stats ) {
+        this( publishExecutor, consumer, stats, null ) ;
+    }
+
+    /**
+     * @param cache earlier results to reuse, or null to always extract
+     */
+    public ExtractionPipeline( Executor publishExecutor, Consumer<Result> consumer, ExtractionStats stats, ResultCache cache ) {
+        this.publishExecutor = publishExecutor ;
+        this.consumer = consumer ;
+        this.stats = stats ;
+        this.cache = cache ;
+    }
+
+    public ExtractionStats getStats() {
+        return stats ;
+    }
+
+    public void submit( Request request ) {
+        if( pending.getAndSet( request ) != null ) {
+            stats.coalesced() ;
+            coalescedRun.incrementAndGet() ;
+        }
+        if( scheduled.compareAndSet( false, true ) ) {
+            worker.execute( this::drain ) ;
+        }
+    }
+
+    public void shutdown() {
+        worker.shutdownNow() ;
+    }
+
+    private void drain() {
+        try {
+            Request request ;
+            while( ( request = pending.getAndSet( null ) ) != null ) {
+                stats.recordCoalesced( coalescedRun.getAndSet( 0 ) ) ;
+                try {
+                    long allocatedBefore = ExtractionStats.allocatedBytes() ;
+                    Result result = process( request ) ;
+                    if( allocatedBefore >= 0 ) {
+                        stats.recordAllocation( ExtractionStats.allocatedBytes() - allocatedBefore ) ;
+                    }
+                    publish( result ) ;
+                }
+                catch( RuntimeException ex ) {
+                    // eg: the image was replaced and closed underneath this request
+                    Logger.getLogger( ExtractionPipeline.class.getName() ).log( Level.WARNING, "Extraction failed", ex ) ;
+                }
+            }
+        }
+        finally {
+            scheduled.set( false ) ;
+            // A request may have slipped in after the last poll
+            if( pending.get() != null && scheduled.compareAndSet( false, true ) ) {
+                worker.execute( this::drain ) ;
+            }
+        }
+    }
+
+    private Result process( Request request ) {
+        if( cache != null ) {
+            Result cached = cache.get( request ) ;
+            if( cached != null ) {
+                return cached ;
+            }
+        }
+        long start = System.nanoTime() ;
+        // Only the stop settings changed (say the threshold slider moved), so the samples still hold
+        boolean reuse = sampled != null && request.samplesMatch( sampled ) ;
+        if( !reuse ) {
+            request.path.sample( request.sampler, request.image, samples ) ;
+            colors = samples.toArray() ;
+            sampled = request ;
+            index = null ;
+        }
+        long sampledAt = System.nanoTime() ;
+        PeakFinder finder = request.finder ;
+        if( finder.getMode() != StopMode.SIMPLIFY && ( reuse || finder.getMode() == StopMode.TARGET_COUNT ) &&
+            ( index == null || index.getMode() != finder.getDetection() ) ) {
+            index = DeviationIndex.build( colors, colors.length, finder.getDetection() ) ;
+        }
+        int[] peaks = finder.find( colors, colors.length, index ) ;
+        float threshold = finder.getMode() == StopMode.TARGET_COUNT ? index.thresholdForCount( finder.getMaxStops() - 1 ) : Float.NaN ;
+        long detected = System.nanoTime() ;
+        if( !reuse ) {
+            stats.record( ExtractionStats.Stage.SAMPLE, sampledAt - start ) ;
+        }
+        stats.record( ExtractionStats.Stage.DETECT, detected - sampledAt ) ;
+        Result result = new Result( request, new ColorStrip( colors, peaks ), new Fit( finder, colors, peaks ), threshold ) ;
+        if( cache != null ) {
+            cache.put( result ) ;
+        }
+        return result ;
+    }
+
+    private void publish( Result result ) {
+        if( unpublished.getAndSet( result ) != null ) {
+            stats.dropped() ;
+            droppedRun.incrementAndGet() ;
+            return ;
+        }
+        publishExecutor.execute( () -> {
+            Result latest = unpublished.getAndSet( null ) ;
+            stats.recordDropped( droppedRun.getAndSet( 0 ) ) ;
+            long start = System.nanoTime() ;
+            consumer.accept( latest ) ;
+            long end = System.nanoTime() ;
+            stats.record( ExtractionStats.Stage.PUBLISH, end - start ) ;
+            stats.record( ExtractionStats.Stage.TOTAL, end - latest.getRequest().getSubmitted() ) ;
+        } ) ;
+    }
+
+    /**
+     * An immutable snapshot of everything needed to run one extraction
+     */
+    public static final class Request {
+        private final PixelSource image ;
+        private final LineSampler sampler ;
+        private final ExtractionPath path ;
+        private final PeakFinder finder ;
+        private final long submitted = System.nanoTime() ;
+
+        public Request( PixelSource image, LineSampler sampler, double x1, double y1, double x2, double y2, PeakFinder finder ) {
+            this( image, sampler, ExtractionPath.line( x1, y1, x2, y2 ), finder ) ;
+        }
+
+        public Request( PixelSource image, LineSampler sampler, ExtractionPath path, PeakFinder finder ) {
+            this.image = image ;
+            this.sampler = sampler ;
+            this.path = path ;
+            this.finder = finder ;
+        }
+
+        // Whether the two requests sample the same colors
+        boolean samplesMatch( Request other ) {
+            return image == other.image && path.equals( other.path ) && sampler.equals( other.sampler ) ;
+        }
+
+        public PixelSource getImage() { return image ; }
+        public LineSampler getSampler() { return sampler ; }
+        public ExtractionPath getPath() { return path ; }
+        public PeakFinder getFinder() { return finder ; }
+        public long getSubmitted() { return submitted ; }
+    }
+
+    /**
+     * The finder's error metric for some peaks, only measured when first asked for, as a
+     * threshold change on the same samples otherwise costs little more than finding the peaks
+     */
+    static final class Fit {
+        private final PeakFinder finder ;
+        private final int[] colors ;
+        private final int[] peaks ;
+        private boolean measured ;
+        private double error ;
+
+        Fit( PeakFinder finder, int[] colors, int[] peaks ) {
+            this.finder = finder ;
+            this.colors = colors ;
+            this.peaks = peaks ;
+        }
+
+        /**
+         * @return the fit of the same peaks by {@code other}'s metric
+         */
+        Fit with( PeakFinder other ) {
+            return other.getMetric() == finder.getMetric() ? this : new Fit( other, colors, peaks ) ;
+        }
+
+        synchronized double get() {
+            if( !measured ) {
+                error = finder.error( colors, colors.length, peaks ) ;
+                measured = true ;
+            }
+            return error ;
+        }
+    }
+
+    public static final class Result {
+        private final Request request ;
+        private final ColorStrip strip ;
+        private final Fit fit ;
+        private final float threshold ;
+
+        Result( Request request, ColorStrip strip, Fit fit, float threshold ) {
+            this.request = request ;
+            this.strip = strip ;
+            this.fit = fit ;
+            this.threshold = threshold ;
+        }
+
+        public Request getRequest() { return request ; }
+        public ColorStrip getStrip() { return strip ; }
+        /** The finder's error metric for these peaks, measured on the first call */
+        public double getError() { return fit.get() ; }
+        Fit getFit() { return fit ; }
+        /** The threshold a target stop count works out to, -1 when every sample is a stop, or NaN in the other modes */
+        public float getThreshold() { return threshold ; }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves gradient extraction over HTTP on the loopback interface, for build
+ * tools that cannot start the UI.
+ *
+ * <pre>
+ *   GET  /gradient?image=/path/to/image.png&amp;line=0,10,300,10&amp;line=...
+ *   POST /gradient?line=0,10,300,10     (with the image file as the body)
+ * </pre>
+ *
+ * {@code /samples} answers with the colors along each line, {@code /peaks}
+ * adds the peaks, and {@code /gradient} the CSS and {@code Stop[]} code as
+ * well.  Each {@code line} is {@code x1,y1,x2,y2}, or more points with
+ * {@code shape=polyline}; {@code threshold}, {@code mode} and {@code shape}
+ * work as in {@link BatchExtractor}.  {@code /stats} reports the caches.
+ *
+ * Requests are handled on a fixed pool of threads, and all of them share
+ * one {@link ImageStore} of decoded images and one {@link ResultCache}.
+ *
+ * @author Tim Yates
+ */
+public final class ExtractionServer {
+    public static final int DEFAULT_PORT = 8077 ;
+    // Uploads larger than this are refused
+    private static final int MAX_UPLOAD_BYTES = 64 << 20 ;
+
+    private static final String USAGE =
+        "Usage: ExtractionServer [options]\n" +
+        "Options:\n" +
+        "  --port p          port to listen on, on the loopback interface (default " + DEFAULT_PORT + ")\n" +
+        "  --threads n       request threads (default: 4 per processor)\n" +
+        "  --imageBytes n    decoded images held in memory (default 512MB)\n" +
+        "  --results n       extraction results cached (default 4096)\n" +
+        "  --cacheDir dir    on-disk cache of decoded files, shared with the UI (default: none)\n" ;
+
+    private enum Endpoint {
+        SAMPLES, PEAKS, GRADIENT
+    }
+
+    private final HttpServer server ;
+    private final ExecutorService executor ;
+    private final ImageStore images ;
+    private final ResultCache results ;
+
+    public ExtractionServer( InetSocketAddress address, int threads, ImageStore images, ResultCache results ) throws IOException {
+        this.images = images ;
+        this.results = results ;
+        AtomicInteger count = new AtomicInteger() ;
+        this.executor = Executors.newFixedThreadPool( threads, r -> {
+            Thread t = new Thread( r, "extraction-http-" + count.incrementAndGet() ) ;
+            t.setDaemon( true ) ;
+            return t ;
+        } ) ;
+        this.server = HttpServer.create( address, 0 ) ;
+        server.setExecutor( executor ) ;
+        for( Endpoint endpoint : Endpoint.values() ) {
+            server.createContext( "/" + endpoint.name().toLowerCase( Locale.ROOT ), exchange -> handle( exchange, endpoint ) ) ;
+        }
+        server.createContext( "/stats", exchange -> {
+            StringBuilder sb = new StringBuilder( "{\"images\":" ) ;
+            Json.quote( sb, images.summary() ).append( ",\"results\":" ) ;
+            Json.quote( sb, results.summary() ).append( '}' ) ;
+            respond( exchange, 200, sb.toString() ) ;
+        } ) ;
+    }
+
+    public void start() {
+        server.start() ;
+    }
+
+    public void stop() {
+        server.stop( 0 ) ;
+        executor.shutdown() ;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort() ;
+    }
+
+    private void handle( HttpExchange exchange, Endpoint endpoint ) throws IOException {
+        try {
+            String method = exchange.getRequestMethod() ;
+            if( !"GET".equals( method ) && !"POST".equals( method ) ) {
+                respond( exchange, 405, error( "Use GET or POST" ) ) ;
+                return ;
+            }
+            Map<String,List<String>> query = parseQuery( exchange.getRequestURI().getRawQuery() ) ;
+            byte[] upload = "POST".equals( method ) ? readBody( exchange.getRequestBody() ) : new byte[ 0 ] ;
+            String name = first( query, "image", null ) ;
+            PixelSource image ;
+            if( upload.length > 0 ) {
+                image = images.load( upload ) ;
+            }
+            else if( name != null ) {
+                image = images.load( Paths.get( name ) ) ;
+            }
+            else {
+                respond( exchange, 400, error( "Give an image path, or post the image" ) ) ;
+                return ;
+            }
+
+            ExtractionPath.Shape shape = ExtractionPath.Shape.valueOf( first( query, "shape", "line" ).toUpperCase( Locale.ROOT ) ) ;
+            LineSampler sampler = new LineSampler( SampleMode.valueOf( first( query, "mode", "pixel" ).toUpperCase( Locale.ROOT ) ) ) ;
+            PeakFinder finder = new PeakFinder( Float.parseFloat( first( query, "threshold", "10" ) ) ) ;
+            List<String> lines = query.get( "line" ) ;
+            if( lines == null ) {
+                respond( exchange, 400, error( "Give at least one line=x1,y1,x2,y2" ) ) ;
+                return ;
+            }
+
+            StringBuilder sb = new StringBuilder( "{\"image\":" ) ;
+            Json.quote( sb, name == null ? "upload" : name ) ;
+            sb.append( ",\"width\":" ).append( image.getWidth() ).append( ",\"height\":" ).append( image.getHeight() ) ;
+            sb.append( ",\"results\":[" ) ;
+            for( int i = 0 ; i < lines.size() ; i++ ) {
+                sb.append( i == 0 ? "" : "," ) ;
+                extract( sb, endpoint, new ExtractionPipeline.Request( image, sampler, path( shape, lines.get( i ) ), finder ) ) ;
+            }
+            respond( exchange, 200, sb.append( "]}" ).toString() ) ;
+        }
+        catch( NoSuchFileException ex ) {
+            respond( exchange, 404, error( "No such image: " + ex.getFile() ) ) ;
+        }
+        catch( IllegalArgumentException ex ) {
+            respond( exchange, 400, error( ex.getMessage() ) ) ;
+        }
+        catch( IOException | RuntimeException ex ) {
+            Logger.getLogger( ExtractionServer.class.getName() ).log( Level.WARNING, "Request failed: " + exchange.getRequestURI(), ex ) ;
+            respond( exchange, 500, error( ex.toString() ) ) ;
+        }
+    }
+
+    private void extract( StringBuilder sb, Endpoint endpoint, ExtractionPipeline.Request request ) {
+        ExtractionPath path = request.getPath() ;
+        sb.append( "{\"line\":[" ) ;
+        for( int i = 0 ; i < path.pointCount() ; i++ ) {
+            sb.append( i == 0 ? "" : "," ).append( path.getX( i ) ).append( ',' ).append( path.getY( i ) ) ;
+        }
+        sb.append( ']' ) ;
+        if( !path.isInside( request.getImage() ) ) {
+            sb.append( ",\"error\":" ) ;
+            Json.quote( sb, "Line is outside the " + request.getImage().getWidth() + "x" + request.getImage().getHeight() + " image" ) ;
+            sb.append( '}' ) ;
+            return ;
+        }
+        ColorStrip strip = extract( request ) ;
+        sb.append( ",\"samples\":" ).append( strip.size() ) ;
+        if( endpoint == Endpoint.SAMPLES ) {
+            sb.append( ",\"colors\":[" ) ;
+            for( int i = 0 ; i < strip.size() ; i++ ) {
+                GradientFormat.appendHex( sb.append( i == 0 ? "\"#" : ",\"#" ), strip.getArgb( i ) ).append( '"' ) ;
+            }
+            sb.append( "]}" ) ;
+            return ;
+        }
+        sb.append( ",\"peaks\":[" ) ;
+        for( int i = 0 ; i < strip.peakCount() ; i++ ) {
+            sb.append( i == 0 ? "" : "," ).append( strip.getPeak( i ) ) ;
+        }
+        sb.append( ']' ) ;
+        if( endpoint == Endpoint.GRADIENT ) {
+            int[] colors = new int[ strip.size() ] ;
+            for( int i = 0 ; i < colors.length ; i++ ) {
+                colors[ i ] = strip.getArgb( i ) ;
+            }
+            int[] peaks = new int[ strip.peakCount() ] ;
+            for( int i = 0 ; i < peaks.length ; i++ ) {
+                peaks[ i ] = strip.getPeak( i ) ;
+            }
+            GradientStops stops = GradientStops.fromPeaks( colors, colors.length, peaks )
+                                               .setRadial( path.getShape() == ExtractionPath.Shape.RADIAL ) ;
+            sb.append( ",\"css\":" ) ;
+            Json.quote( sb, GradientFormat.CSS.format( stops ) ) ;
+            sb.append( ",\"code\":" ) ;
+            Json.quote( sb, GradientFormat.JAVA.format( stops ) ) ;
+        }
+        sb.append( '}' ) ;
+    }
+
+    private ColorStrip extract( ExtractionPipeline.Request request ) {
+        ExtractionPipeline.Result cached = results.get( request ) ;
+        if( cached != null ) {
+            return cached.getStrip() ;
+        }
+        SampleBuffer samples = new SampleBuffer() ;
+        request.getPath().sample( request.getSampler(), request.getImage(), samples ) ;
+        int[] colors = samples.toArray() ;
+        PeakFinder finder = request.getFinder() ;
+        int[] peaks = finder.find( colors, colors.length ) ;
+        ColorStrip strip = new ColorStrip( colors, peaks ) ;
+        results.put( new ExtractionPipeline.Result( request, strip, new ExtractionPipeline.Fit( finder, colors, peaks ), Float.NaN ) ) ;
+        return strip ;
+    }
+
+    private static ExtractionPath path( ExtractionPath.Shape shape, String line ) {
+        String[] parts = line.split( "," ) ;
+        double[] points = new double[ parts.length ] ;
+        for( int i = 0 ; i < parts.length ; i++ ) {
+            points[ i ] = Double.parseDouble( parts[ i ].trim() ) ;
+            // Echoed in the "line" of the response, which JSON cannot do for these
+            if( Double.isNaN( points[ i ] ) || Double.isInfinite( points[ i ] ) ) {
+                throw new IllegalArgumentException( "Coordinates must be finite numbers: " + line ) ;
+            }
+        }
+        if( shape == ExtractionPath.Shape.POLYLINE ) {
+            if( points.length < 4 || points.length % 2 != 0 ) {
+                throw new IllegalArgumentException( "A polyline needs pairs of coordinates: " + line ) ;
+            }
+            return ExtractionPath.polyline( points ) ;
+        }
+        if( points.length != 4 ) {
+            throw new IllegalArgumentException( "Expected x1,y1,x2,y2: " + line ) ;
+        }
+        return shape == ExtractionPath.Shape.RADIAL ? ExtractionPath.radial( points[ 0 ], points[ 1 ], points[ 2 ], points[ 3 ] )
+                                                    : ExtractionPath.line( points[ 0 ], points[ 1 ], points[ 2 ], points[ 3 ] ) ;
+    }
+
+    static Map<String,List<String>> parseQuery( String query ) throws UnsupportedEncodingException {
+        Map<String,List<String>> params = new LinkedHashMap<>() ;
+        if( query == null || query.isEmpty() ) {
+            return params ;
+        }
+        for( String pair : query.split( "&" ) ) {
+            int eq = pair.indexOf( '=' ) ;
+            String key = URLDecoder.decode( eq < 0 ? pair : pair.substring( 0, eq ), "UTF-8" ) ;
+            String value = eq < 0 ? "" : URLDecoder.decode( pair.substring( eq + 1 ), "UTF-8" ) ;
+            params.computeIfAbsent( key, k -> new ArrayList<>() ).add( value ) ;
+        }
+        return params ;
+    }
+
+    private static String first( Map<String,List<String>> query, String key, String otherwise ) {
+        List<String> values = query.get( key ) ;
+        return values == null || values.isEmpty() ? otherwise : values.get( 0 ) ;
+    }
+
+    private static byte[] readBody( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() ;
+        byte[] buffer = new byte[ 1 << 16 ] ;
+        int n ;
+        while( ( n = in.read( buffer ) ) > 0 ) {
+            out.write( buffer, 0, n ) ;
+            if( out.size() > MAX_UPLOAD_BYTES ) {
+                throw new IllegalArgumentException( "Uploads are limited to " + ( MAX_UPLOAD_BYTES >> 20 ) + "MB" ) ;
+            }
+        }
+        return out.toByteArray() ;
+    }
+
+    private static String error( String message ) {
+        return Json.quote( new StringBuilder( "{\"error\":" ), String.valueOf( message ) ).append( '}' ).toString() ;
+    }
+
+    private static void respond( HttpExchange exchange, int status, String body ) throws IOException {
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 ) ;
+        exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" ) ;
+        exchange.sendResponseHeaders( status, bytes.length ) ;
+        try( OutputStream out = exchange.getResponseBody() ) {
+            out.write( bytes ) ;
+        }
+    }
+
+    public static void main( String[] args ) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT ;
+        int threads = Runtime.getRuntime().availableProcessors() * 4 ;
+        long imageBytes = 512L << 20 ;
+        int resultEntries = 4096 ;
+        Path cacheDir = null ;
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--port"       : port = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--threads"    : threads = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--imageBytes" : imageBytes = Long.parseLong( args[ ++i ] ) ; break ;
+                    case "--results"    : resultEntries = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--cacheDir"   : cacheDir = Paths.get( args[ ++i ] ) ; break ;
+                    default             : throw new IllegalArgumentException( "Unknown option " + args[ i ] ) ;
+                }
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+        PixelCache disk = cacheDir == null ? null : new PixelCache( cacheDir, Long.getLong( "gradient.cacheBytes", 512L << 20 ) ) ;
+        ExtractionServer server = new ExtractionServer( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), threads,
+                                                        new ImageStore( disk, imageBytes ), new ResultCache( resultEntries ) ) ;
+        server.start() ;
+        System.err.println( "Listening on http://localhost:" + server.getPort() + "/" ) ;
+        Runtime.getRuntime().addShutdownHook( new Thread( server::stop ) ) ;
+        Thread.currentThread().join() ;
+    }
+}
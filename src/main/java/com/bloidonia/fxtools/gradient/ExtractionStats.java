@@ -0,0 +1,347 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency counters and histograms for each stage of an extraction, the
+ * bytes allocated per extraction, and counts of the drag requests that
+ * were superseded before they were processed or shown.
+ *
+ * Safe to update from any thread.  {@link #register()} publishes the
+ * stats as an MXBean for JConsole and the like.
+ *
+ * @author Tim Yates
+ */
+public final class ExtractionStats implements ExtractionStatsMXBean {
+    public enum Stage {
+        /** Reading the colors along the line */
+        SAMPLE,
+        /** Finding the peaks in the samples */
+        DETECT,
+        /** Writing the CSS and code text, part of publishing */
+        EMIT,
+        /** Drawing the channel graph, part of publishing */
+        GRAPH,
+        /** Drawing the strip of pixels, part of publishing */
+        STRIP,
+        /** Updating the output text and panes on the FX thread */
+        PUBLISH,
+        /** From the request being submitted to its result being shown */
+        TOTAL
+    }
+
+    private final Map<Stage,Counter> counters = new EnumMap<>( Stage.class ) ;
+    private final LongAdder coalesced = new LongAdder() ;
+    private final LongAdder dropped = new LongAdder() ;
+    private final LongAdder overBudget = new LongAdder() ;
+    private final Histogram allocated = new Histogram() ;
+    // How many requests were coalesced into each one processed, and results dropped before each one shown
+    private final Histogram coalescedPerExtraction = new Histogram() ;
+    private final Histogram droppedPerPublish = new Histogram() ;
+    private volatile long budgetNanos = 16_000_000L ;
+
+    private static final AtomicInteger REGISTERED = new AtomicInteger() ;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean() ;
+    private static final boolean ALLOCATION_SUPPORTED = allocationSupported() ;
+
+    public ExtractionStats() {
+        for( Stage stage : Stage.values() ) {
+            counters.put( stage, new Counter() ) ;
+        }
+    }
+
+    public void record( Stage stage, long nanos ) {
+        counters.get( stage ).record( nanos ) ;
+        if( stage == Stage.TOTAL && nanos > budgetNanos ) {
+            overBudget.increment() ;
+        }
+    }
+
+    /**
+     * Sets the latency a drag should be shown within, from submission to display; one 60Hz frame by default
+     */
+    @Override
+    public void setBudgetNanos( long budgetNanos ) {
+        this.budgetNanos = budgetNanos ;
+    }
+
+    @Override
+    public long getBudgetNanos() {
+        return budgetNanos ;
+    }
+
+    /** The number of results that took longer than the budget to be shown */
+    @Override
+    public long getOverBudget() {
+        return overBudget.sum() ;
+    }
+
+    /** A request was replaced by a newer one before it was started */
+    public void coalesced() {
+        coalesced.increment() ;
+    }
+
+    /** A result was computed, but a newer one replaced it before it was shown */
+    public void dropped() {
+        dropped.increment() ;
+    }
+
+    public long getCount( Stage stage ) {
+        return counters.get( stage ).count.sum() ;
+    }
+
+    public long getTotalNanos( Stage stage ) {
+        return counters.get( stage ).total.sum() ;
+    }
+
+    public long getMaxNanos( Stage stage ) {
+        return counters.get( stage ).max.get() ;
+    }
+
+    public long getLastNanos( Stage stage ) {
+        return counters.get( stage ).last.get() ;
+    }
+
+    public double getMeanMillis( Stage stage ) {
+        long count = getCount( stage ) ;
+        return count == 0 ? 0 : getTotalNanos( stage ) / ( count * 1e6 ) ;
+    }
+
+    @Override
+    public long getCoalesced() {
+        return coalesced.sum() ;
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum() ;
+    }
+
+    public Histogram getHistogram( Stage stage ) {
+        return counters.get( stage ).histogram ;
+    }
+
+    /**
+     * @return the latency at the given percentile, to within the histogram's resolution but never over the maximum
+     */
+    public double getPercentileMillis( Stage stage, double percentile ) {
+        return Math.min( getHistogram( stage ).getValueAtPercentile( percentile ), getMaxNanos( stage ) ) / 1e6 ;
+    }
+
+    /**
+     * Records how many bytes one extraction allocated, as measured with {@link #allocatedBytes()}
+     */
+    public void recordAllocation( long bytes ) {
+        allocated.record( bytes ) ;
+    }
+
+    public Histogram getAllocationHistogram() {
+        return allocated ;
+    }
+
+    /** Records how many newer requests replaced the one before an extraction started */
+    public void recordCoalesced( int count ) {
+        coalescedPerExtraction.record( count ) ;
+    }
+
+    public Histogram getCoalescedHistogram() {
+        return coalescedPerExtraction ;
+    }
+
+    /** Records how many results were dropped before one was shown */
+    public void recordDropped( int count ) {
+        droppedPerPublish.record( count ) ;
+    }
+
+    public Histogram getDroppedHistogram() {
+        return droppedPerPublish ;
+    }
+
+    /**
+     * @return the bytes allocated so far by the calling thread, or -1 where the JVM cannot tell
+     */
+    public static long allocatedBytes() {
+        if( !ALLOCATION_SUPPORTED ) {
+            return -1 ;
+        }
+        return ( (com.sun.management.ThreadMXBean)THREADS ).getThreadAllocatedBytes( Thread.currentThread().getId() ) ;
+    }
+
+    private static boolean allocationSupported() {
+        try {
+            return THREADS instanceof com.sun.management.ThreadMXBean &&
+                   ( (com.sun.management.ThreadMXBean)THREADS ).isThreadAllocatedMemorySupported() &&
+                   ( (com.sun.management.ThreadMXBean)THREADS ).isThreadAllocatedMemoryEnabled() ;
+        }
+        catch( LinkageError ex ) {
+            return false ;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for( Counter counter : counters.values() ) {
+            counter.reset() ;
+        }
+        coalesced.reset() ;
+        dropped.reset() ;
+        overBudget.reset() ;
+        allocated.reset() ;
+        coalescedPerExtraction.reset() ;
+        droppedPerPublish.reset() ;
+    }
+
+    @Override
+    public Map<String,Long> getStageCounts() {
+        Map<String,Long> values = new LinkedHashMap<>() ;
+        for( Stage stage : Stage.values() ) {
+            values.put( stage.name().toLowerCase( Locale.ROOT ), getCount( stage ) ) ;
+        }
+        return values ;
+    }
+
+    @Override
+    public Map<String,Double> getStageMeanMillis() {
+        return perStage( this::getMeanMillis ) ;
+    }
+
+    @Override
+    public Map<String,Double> getStageP50Millis() {
+        return perStage( stage -> getPercentileMillis( stage, 50 ) ) ;
+    }
+
+    @Override
+    public Map<String,Double> getStageP99Millis() {
+        return perStage( stage -> getPercentileMillis( stage, 99 ) ) ;
+    }
+
+    @Override
+    public Map<String,Double> getStageMaxMillis() {
+        return perStage( stage -> getMaxNanos( stage ) / 1e6 ) ;
+    }
+
+    @Override
+    public long getAllocatedBytesP50() {
+        return allocated.getValueAtPercentile( 50 ) ;
+    }
+
+    @Override
+    public long getAllocatedBytesP99() {
+        return allocated.getValueAtPercentile( 99 ) ;
+    }
+
+    private Map<String,Double> perStage( ToDoubleFunction<Stage> value ) {
+        Map<String,Double> values = new LinkedHashMap<>() ;
+        for( Stage stage : Stage.values() ) {
+            values.put( stage.name().toLowerCase( Locale.ROOT ), value.applyAsDouble( stage ) ) ;
+        }
+        return values ;
+    }
+
+    /**
+     * Registers these stats with the platform MBean server, logging rather than failing if it cannot
+     *
+     * @return the name registered under, or null
+     */
+    public ObjectName register() {
+        try {
+            int n = REGISTERED.incrementAndGet() ;
+            ObjectName name = new ObjectName( "com.bloidonia.fxtools.gradient:type=ExtractionStats" + ( n == 1 ? "" : ",id=" + n ) ) ;
+            ManagementFactory.getPlatformMBeanServer().registerMBean( this, name ) ;
+            return name ;
+        }
+        catch( JMException ex ) {
+            Logger.getLogger( ExtractionStats.class.getName() ).log( Level.WARNING, "Could not register stats MBean", ex ) ;
+            return null ;
+        }
+    }
+
+    /**
+     * A multi line report of the distribution of each stage, the allocation per extraction,
+     * and the requests that were coalesced or dropped
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder() ;
+        for( Stage stage : Stage.values() ) {
+            if( getCount( stage ) == 0 ) continue ;
+            sb.append( String.format( Locale.ROOT, "%-8s n %-7d p50 %8.3fms  p99 %8.3fms  max %8.3fms%n",
+                                      stage.name().toLowerCase( Locale.ROOT ), getCount( stage ),
+                                      getPercentileMillis( stage, 50 ), getPercentileMillis( stage, 99 ), getMaxNanos( stage ) / 1e6 ) ) ;
+        }
+        if( allocated.getCount() > 0 ) {
+            sb.append( String.format( Locale.ROOT, "alloc    n %-7d p50 %8.1fKB  p99 %8.1fKB%n",
+                                      allocated.getCount(), allocated.getValueAtPercentile( 50 ) / 1024.0, allocated.getValueAtPercentile( 99 ) / 1024.0 ) ) ;
+        }
+        return sb.append( String.format( Locale.ROOT, "coalesced %d (p99 %d per extraction)  dropped %d (p99 %d per frame)  over budget %d",
+                                         getCoalesced(), coalescedPerExtraction.getValueAtPercentile( 99 ),
+                                         getDropped(), droppedPerPublish.getValueAtPercentile( 99 ), getOverBudget() ) ).toString() ;
+    }
+
+    /**
+     * One line summary of the most recent latency of each stage
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder() ;
+        for( Stage stage : Stage.values() ) {
+            sb.append( stage.name().toLowerCase( Locale.ROOT ) ).append( ' ' )
+              .append( String.format( Locale.ROOT, "%.2f", getLastNanos( stage ) / 1e6 ) ).append( "ms  " ) ;
+        }
+        return sb.append( "coalesced " ).append( getCoalesced() )
+                 .append( "  dropped " ).append( getDropped() )
+                 .append( "  over budget " ).append( getOverBudget() ).toString() ;
+    }
+
+    private static final class Counter {
+        final LongAdder count = new LongAdder() ;
+        final LongAdder total = new LongAdder() ;
+        final AtomicLong max = new AtomicLong() ;
+        final AtomicLong last = new AtomicLong() ;
+        final Histogram histogram = new Histogram() ;
+
+        void record( long nanos ) {
+            count.increment() ;
+            total.add( nanos ) ;
+            last.set( nanos ) ;
+            histogram.record( nanos ) ;
+            long m ;
+            while( nanos > ( m = max.get() ) && !max.compareAndSet( m, nanos ) ) {
+            }
+        }
+
+        void reset() {
+            count.reset() ;
+            total.reset() ;
+            max.set( 0 ) ;
+            last.set( 0 ) ;
+            histogram.reset() ;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Map;
+
+/**
+ * The management view of {@link ExtractionStats}, keyed by lower case stage
+ * name where there is one value per stage.
+ *
+ * @author Tim Yates
+ */
+public interface ExtractionStatsMXBean {
+    Map<String,Long> getStageCounts() ;
+
+    Map<String,Double> getStageMeanMillis() ;
+
+    Map<String,Double> getStageP50Millis() ;
+
+    Map<String,Double> getStageP99Millis() ;
+
+    Map<String,Double> getStageMaxMillis() ;
+
+    /** Median bytes allocated by the worker thread per extraction, or 0 where the JVM cannot say */
+    long getAllocatedBytesP50() ;
+
+    long getAllocatedBytesP99() ;
+
+    long getCoalesced() ;
+
+    long getDropped() ;
+
+    long getOverBudget() ;
+
+    long getBudgetNanos() ;
+
+    void setBudgetNanos( long budgetNanos ) ;
+
+    void reset() ;
+}
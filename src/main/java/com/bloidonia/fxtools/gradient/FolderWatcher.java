@@ -0,0 +1,392 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+
+/**
+ * Extracts the saved lines of every image in a folder again whenever the
+ * image changes.
+ *
+ * Lines are saved with {@code Save Line} in the UI, into a
+ * {@link SavedLine} sidecar next to the image.  For each image with a
+ * sidecar, the CSS for its lines is written to {@code image.css} and the
+ * {@code Stop[]} code to {@code image.java}.
+ *
+ * <pre>
+ *   FolderWatcher [options] folder
+ * </pre>
+ *
+ * Change events are gathered until none have arrived for the debounce
+ * time, so an export that writes a file several times is only handled
+ * once.  An image whose size, modification time and sidecar are as they
+ * were is skipped on a stat, one whose contents hash the same on a digest,
+ * and the rest are decoded and extracted in parallel.  The outputs are only
+ * rewritten when the stops in them changed.  What was last seen of each
+ * image is kept in a {@code .gradient-state} file in the folder, so this
+ * holds across restarts too.
+ *
+ * @author Tim Yates
+ */
+public final class FolderWatcher {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 500 ;
+    public static final String CSS_SUFFIX = ".css" ;
+    public static final String CODE_SUFFIX = ".java" ;
+    // What was extracted, kept in the folder so a restart need not extract everything again
+    static final String STATE_FILE = ".gradient-state" ;
+
+    private static final String USAGE =
+        "Usage: FolderWatcher [options] folder\n" +
+        "Options:\n" +
+        "  --debounce ms   wait for this long without changes before extracting (default " + DEFAULT_DEBOUNCE_MILLIS + ")\n" +
+        "  --threads n     worker threads (default: available processors)\n" +
+        "  --once          extract anything out of date, then exit\n" ;
+
+    private static final Logger LOG = Logger.getLogger( FolderWatcher.class.getName() ) ;
+
+    private final Path dir ;
+    private final long debounceMillis ;
+    private final Set<String> imageSuffixes = new HashSet<>() ;
+    private final Map<Path,Seen> seen = new ConcurrentHashMap<>() ;
+
+    // What an image and its sidecar looked like when last extracted
+    private static final class Seen {
+        final long size ;
+        final long modified ;
+        final long linesModified ;
+        final String digest ;
+
+        Seen( long size, long modified, long linesModified, String digest ) {
+            this.size = size ;
+            this.modified = modified ;
+            this.linesModified = linesModified ;
+            this.digest = digest ;
+        }
+    }
+
+    /**
+     * What a pass over the changed images did
+     */
+    public static final class Report {
+        private final AtomicInteger checked = new AtomicInteger() ;
+        private final AtomicInteger extracted = new AtomicInteger() ;
+        private final AtomicInteger written = new AtomicInteger() ;
+        private final AtomicInteger failed = new AtomicInteger() ;
+
+        public int getChecked() { return checked.get() ; }
+        /** Images that were decoded and extracted */
+        public int getExtracted() { return extracted.get() ; }
+        /** Output files that were rewritten */
+        public int getWritten() { return written.get() ; }
+        public int getFailed() { return failed.get() ; }
+
+        @Override
+        public String toString() {
+            return checked + " checked  " + extracted + " extracted  " + written + " written  " + failed + " failed" ;
+        }
+    }
+
+    public FolderWatcher( Path dir, long debounceMillis ) throws IOException {
+        this.dir = dir ;
+        this.debounceMillis = debounceMillis ;
+        for( String suffix : ImageIO.getReaderFileSuffixes() ) {
+            imageSuffixes.add( suffix.toLowerCase( Locale.ROOT ) ) ;
+        }
+        readState() ;
+    }
+
+    // Each line is: digest size modified linesModified name
+    private void readState() throws IOException {
+        Path state = dir.resolve( STATE_FILE ) ;
+        if( !Files.isRegularFile( state ) ) {
+            return ;
+        }
+        for( String line : Files.readAllLines( state, StandardCharsets.UTF_8 ) ) {
+            String[] parts = line.split( " ", 5 ) ;
+            if( parts.length == 5 ) {
+                seen.put( dir.resolve( parts[ 4 ] ),
+                          new Seen( Long.parseLong( parts[ 1 ] ), Long.parseLong( parts[ 2 ] ), Long.parseLong( parts[ 3 ] ), parts[ 0 ] ) ) ;
+            }
+        }
+    }
+
+    private synchronized void writeState() throws IOException {
+        StringBuilder sb = new StringBuilder() ;
+        for( Map.Entry<Path,Seen> entry : seen.entrySet() ) {
+            Seen last = entry.getValue() ;
+            sb.append( last.digest ).append( ' ' ).append( last.size ).append( ' ' ).append( last.modified ).append( ' ' )
+              .append( last.linesModified ).append( ' ' ).append( entry.getKey().getFileName() ).append( '\n' ) ;
+        }
+        writeIfChanged( dir.resolve( STATE_FILE ), sb.toString() ) ;
+    }
+
+    /**
+     * @return every image in the folder that has saved lines
+     */
+    public List<Path> images() throws IOException {
+        List<Path> images = new ArrayList<>() ;
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream( dir, "*" + SavedLine.SUFFIX ) ) {
+            for( Path sidecar : stream ) {
+                Path image = imageFor( sidecar ) ;
+                if( image != null && Files.isRegularFile( image ) ) {
+                    images.add( image ) ;
+                }
+            }
+        }
+        return images ;
+    }
+
+    /**
+     * Brings the outputs of {@code images} up to date, in parallel on {@code pool}.
+     */
+    public Report refresh( Collection<Path> images, ForkJoinPool pool ) {
+        Report report = new Report() ;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>( images.size() ) ;
+        for( Path image : images ) {
+            tasks.add( ForkJoinTask.adapt( () -> {
+                try {
+                    refresh( image, report ) ;
+                }
+                catch( IOException | RuntimeException ex ) {
+                    report.failed.incrementAndGet() ;
+                    LOG.log( Level.WARNING, "Could not extract " + image, ex ) ;
+                }
+            } ) ) ;
+        }
+        pool.submit( () -> ForkJoinTask.invokeAll( tasks ) ).join() ;
+        try {
+            writeState() ;
+        }
+        catch( IOException ex ) {
+            LOG.log( Level.WARNING, "Could not save " + STATE_FILE, ex ) ;
+        }
+        return report ;
+    }
+
+    private void refresh( Path image, Report report ) throws IOException {
+        report.checked.incrementAndGet() ;
+        Path sidecar = SavedLine.sidecarFor( image ) ;
+        BasicFileAttributes attributes ;
+        long linesModified ;
+        try {
+            attributes = Files.readAttributes( image, BasicFileAttributes.class ) ;
+            linesModified = Files.getLastModifiedTime( sidecar ).toMillis() ;
+        }
+        catch( NoSuchFileException ex ) {
+            // Deleted, or its lines were; the outputs are left as they are
+            seen.remove( image ) ;
+            return ;
+        }
+        long modified = attributes.lastModifiedTime().toMillis() ;
+        Seen last = seen.get( image ) ;
+        if( last != null && last.size == attributes.size() && last.modified == modified && last.linesModified == linesModified ) {
+            return ;
+        }
+        byte[] data = Files.readAllBytes( image ) ;
+        String digest = PixelCache.digest( data ) ;
+        if( last != null && last.digest.equals( digest ) && last.linesModified == linesModified ) {
+            // Touched or saved again without changes
+            seen.put( image, new Seen( attributes.size(), modified, linesModified, digest ) ) ;
+            return ;
+        }
+
+        BufferedImage decoded = ImageIO.read( new ByteArrayInputStream( data ) ) ;
+        if( decoded == null ) {
+            throw new IOException( "Unsupported image format: " + image ) ;
+        }
+        ImageBuffer pixels = ImageBuffer.fromBufferedImage( decoded ) ;
+        List<SavedLine> lines = SavedLine.read( sidecar ) ;
+        report.extracted.incrementAndGet() ;
+
+        String name = image.getFileName().toString() ;
+        StringBuilder css = new StringBuilder() ;
+        StringBuilder code = new StringBuilder() ;
+        SampleBuffer samples = new SampleBuffer() ;
+        GradientStops stops = new GradientStops() ;
+        for( int i = 0 ; i < lines.size() ; i++ ) {
+            SavedLine line = lines.get( i ) ;
+            css.append( "/* " ).append( name ).append( ": " ).append( line ).append( " */\n" ) ;
+            code.append( "// " ).append( name ).append( ": " ).append( line ).append( '\n' ) ;
+            if( !line.getPath().isInside( pixels ) ) {
+                String error = "Line is outside the " + pixels.getWidth() + "x" + pixels.getHeight() + " image" ;
+                css.append( "/* " ).append( error ).append( " */\n\n" ) ;
+                code.append( "// " ).append( error ).append( "\n\n" ) ;
+                continue ;
+            }
+            line.getPath().sample( line.getSampler(), pixels, samples ) ;
+            int[] colors = samples.toArray() ;
+            stops.setPeaks( colors, colors.length, line.getFinder().find( colors, colors.length ) )
+                 .setRadial( line.getPath().getShape() == ExtractionPath.Shape.RADIAL ) ;
+            css.append( ".gradient-" ).append( i + 1 ).append( " {\n    " )
+               .append( GradientFormat.CSS.format( stops ).replace( "\n", "\n    " ) ).append( " ;\n}\n\n" ) ;
+            code.append( GradientFormat.JAVA.format( stops ) ).append( "\n\n" ) ;
+        }
+        if( writeIfChanged( image.resolveSibling( name + CSS_SUFFIX ), css.toString() ) ) {
+            report.written.incrementAndGet() ;
+        }
+        if( writeIfChanged( image.resolveSibling( name + CODE_SUFFIX ), code.toString() ) ) {
+            report.written.incrementAndGet() ;
+        }
+        seen.put( image, new Seen( attributes.size(), modified, linesModified, digest ) ) ;
+    }
+
+    // Replaces the file only if its text would change, so nothing downstream sees a spurious update
+    private static boolean writeIfChanged( Path file, String text ) throws IOException {
+        byte[] bytes = text.getBytes( StandardCharsets.UTF_8 ) ;
+        if( Files.isRegularFile( file ) && Arrays.equals( Files.readAllBytes( file ), bytes ) ) {
+            return false ;
+        }
+        Path temp = Files.createTempFile( file.getParent(), ".gradient", ".tmp" ) ;
+        try {
+            Files.write( temp, bytes ) ;
+            Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE ) ;
+        }
+        finally {
+            Files.deleteIfExists( temp ) ;
+        }
+        return true ;
+    }
+
+    /**
+     * Refreshes everything out of date, then again after each burst of changes, until interrupted.
+     */
+    public void watch( ForkJoinPool pool ) throws IOException, InterruptedException {
+        try( WatchService watcher = dir.getFileSystem().newWatchService() ) {
+            dir.register( watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY ) ;
+            log( images(), pool ) ;
+            while( true ) {
+                Set<Path> changed = new LinkedHashSet<>() ;
+                WatchKey key = watcher.take() ;
+                do {
+                    collect( key, changed ) ;
+                    key = watcher.poll( debounceMillis, TimeUnit.MILLISECONDS ) ;
+                }
+                while( key != null ) ;
+                if( !changed.isEmpty() ) {
+                    log( changed, pool ) ;
+                }
+            }
+        }
+    }
+
+    private void log( Collection<Path> images, ForkJoinPool pool ) {
+        long start = System.nanoTime() ;
+        Report report = refresh( images, pool ) ;
+        LOG.info( String.format( "%s in %.0fms", report, ( System.nanoTime() - start ) / 1e6 ) ) ;
+    }
+
+    private void collect( WatchKey key, Set<Path> changed ) throws IOException {
+        for( WatchEvent<?> event : key.pollEvents() ) {
+            if( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                changed.addAll( images() ) ;
+                continue ;
+            }
+            Path name = (Path)event.context() ;
+            Path image = name.toString().endsWith( SavedLine.SUFFIX ) ? imageFor( dir.resolve( name ) ) : dir.resolve( name ) ;
+            if( image != null && isImage( image ) ) {
+                changed.add( image ) ;
+            }
+        }
+        key.reset() ;
+    }
+
+    private static Path imageFor( Path sidecar ) {
+        String name = sidecar.getFileName().toString() ;
+        return name.length() > SavedLine.SUFFIX.length()
+               ? sidecar.resolveSibling( name.substring( 0, name.length() - SavedLine.SUFFIX.length() ) )
+               : null ;
+    }
+
+    private boolean isImage( Path file ) {
+        String name = file.getFileName().toString() ;
+        int dot = name.lastIndexOf( '.' ) ;
+        return dot > 0 && imageSuffixes.contains( name.substring( dot + 1 ).toLowerCase( Locale.ROOT ) ) ;
+    }
+
+    public static void main( String[] args ) throws IOException, InterruptedException {
+        long debounce = DEFAULT_DEBOUNCE_MILLIS ;
+        int threads = Runtime.getRuntime().availableProcessors() ;
+        boolean once = false ;
+        Path dir = null ;
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--debounce" : debounce = Long.parseLong( args[ ++i ] ) ; break ;
+                    case "--threads"  : threads = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--once"     : once = true ; break ;
+                    default :
+                        if( dir != null ) {
+                            throw new IllegalArgumentException( "Only one folder can be watched" ) ;
+                        }
+                        dir = Paths.get( args[ i ] ) ;
+                }
+            }
+            if( dir == null || !Files.isDirectory( dir ) ) {
+                throw new IllegalArgumentException( "Expected a folder" ) ;
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        FolderWatcher watcher = new FolderWatcher( dir, debounce ) ;
+        ForkJoinPool pool = new ForkJoinPool( threads ) ;
+        try {
+            if( once ) {
+                Report report = watcher.refresh( watcher.images(), pool ) ;
+                System.out.println( report ) ;
+                System.exit( report.getFailed() == 0 ? 0 : 1 ) ;
+            }
+            watcher.watch( pool ) ;
+        }
+        finally {
+            pool.shutdown() ;
+        }
+    }
+}
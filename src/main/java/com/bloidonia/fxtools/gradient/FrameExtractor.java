@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the same gradient from every frame of an animated image.
+ *
+ * Frames are decoded one at a time by a {@link FrameReader} and each is
+ * extracted on the pool while the next is being decoded.  At most
+ * {@code window} frames are in flight at once: when the window is full the
+ * oldest is waited for and handed on, so results come out in frame order
+ * and memory stays the same however long the animation is.
+ *
+ * <pre>
+ *   FrameExtractor [options] image x1 y1 x2 y2
+ * </pre>
+ *
+ * Writes a JSON record per frame, or with {@code --format css} a web CSS
+ * {@code @keyframes} animation stepping through the frames' gradients.
+ *
+ * @author Tim Yates
+ */
+public final class FrameExtractor {
+    public static final int DEFAULT_WINDOW = 4 ;
+
+    private static final String USAGE =
+        "Usage: FrameExtractor [options] image x1 y1 x2 y2\n" +
+        "Options:\n" +
+        "  --threshold t   peak threshold (default 10)\n" +
+        "  --mode m        pixel, nearest, bilinear or bicubic (default pixel)\n" +
+        "  --shape s       line or radial (default line)\n" +
+        "  --format f      json (a record per frame) or css (keyframes) (default json)\n" +
+        "  --window n      frames decoded and in flight at once (default " + DEFAULT_WINDOW + ")\n" +
+        "  --threads n     worker threads (default: available processors)\n" +
+        "  --output file   write to file instead of standard out\n" ;
+
+    private final LineSampler sampler ;
+    private final PeakFinder finder ;
+    private final int window ;
+
+    public FrameExtractor( LineSampler sampler, PeakFinder finder, int window ) {
+        if( window < 1 ) {
+            throw new IllegalArgumentException( "Window must be at least 1, got " + window ) ;
+        }
+        this.sampler = sampler ;
+        this.finder = finder ;
+        this.window = window ;
+    }
+
+    /**
+     * The gradient found in one frame
+     */
+    public static final class FrameResult {
+        private final int index ;
+        private final int delayMillis ;
+        private final ColorStrip strip ;
+        private final String error ;
+
+        FrameResult( int index, int delayMillis, ColorStrip strip, String error ) {
+            this.index = index ;
+            this.delayMillis = delayMillis ;
+            this.strip = strip ;
+            this.error = error ;
+        }
+
+        public int getIndex() { return index ; }
+        public int getDelayMillis() { return delayMillis ; }
+        /** The samples and peaks, or null if the frame failed */
+        public ColorStrip getStrip() { return strip ; }
+        public String getError() { return error ; }
+
+        public GradientStops toStops( boolean radial ) {
+            int[] colors = new int[ strip.size() ] ;
+            for( int i = 0 ; i < colors.length ; i++ ) {
+                colors[ i ] = strip.getArgb( i ) ;
+            }
+            int[] peaks = new int[ strip.peakCount() ] ;
+            for( int i = 0 ; i < peaks.length ; i++ ) {
+                peaks[ i ] = strip.getPeak( i ) ;
+            }
+            return GradientStops.fromPeaks( colors, colors.length, peaks ).setRadial( radial ) ;
+        }
+    }
+
+    /**
+     * Extracts {@code path} from each frame of {@code file} on {@code executor}, passing the
+     * results to {@code out} in frame order on the calling thread.
+     *
+     * @return the number of frames
+     */
+    public int extract( File file, ExtractionPath path, Executor executor, Consumer<FrameResult> out ) throws IOException {
+        ArrayDeque<CompletableFuture<FrameResult>> inFlight = new ArrayDeque<>( window ) ;
+        int frames = 0 ;
+        try( FrameReader reader = new FrameReader( file ) ) {
+            for( FrameReader.Frame frame = reader.next() ; frame != null ; frame = reader.next() ) {
+                final FrameReader.Frame f = frame ;
+                inFlight.add( CompletableFuture.supplyAsync( () -> extract( f, path ), executor ) ) ;
+                frames++ ;
+                if( inFlight.size() == window ) {
+                    out.accept( inFlight.remove().join() ) ;
+                }
+            }
+        }
+        while( !inFlight.isEmpty() ) {
+            out.accept( inFlight.remove().join() ) ;
+        }
+        return frames ;
+    }
+
+    private FrameResult extract( FrameReader.Frame frame, ExtractionPath path ) {
+        ImageBuffer image = frame.getImage() ;
+        if( !path.isInside( image ) ) {
+            return new FrameResult( frame.getIndex(), frame.getDelayMillis(), null,
+                                    "Line is outside the " + image.getWidth() + "x" + image.getHeight() + " frame" ) ;
+        }
+        SampleBuffer samples = new SampleBuffer() ;
+        path.sample( sampler, image, samples ) ;
+        int[] colors = samples.toArray() ;
+        return new FrameResult( frame.getIndex(), frame.getDelayMillis(),
+                                new ColorStrip( colors, finder.find( colors, colors.length ) ), null ) ;
+    }
+
+    static String toJson( FrameResult result, boolean radial ) {
+        StringBuilder sb = new StringBuilder( "{\"frame\":" ).append( result.getIndex() )
+                                                             .append( ",\"delay\":" ).append( result.getDelayMillis() ) ;
+        if( result.getStrip() == null ) {
+            sb.append( ",\"error\":" ) ;
+            return Json.quote( sb, result.getError() ).append( '}' ).toString() ;
+        }
+        ColorStrip strip = result.getStrip() ;
+        sb.append( ",\"samples\":" ).append( strip.size() ).append( ",\"peaks\":[" ) ;
+        for( int i = 0 ; i < strip.peakCount() ; i++ ) {
+            sb.append( i == 0 ? "" : "," ).append( strip.getPeak( i ) ) ;
+        }
+        sb.append( "],\"css\":" ) ;
+        return Json.quote( sb, GradientFormat.CSS.format( result.toStops( radial ) ) ).append( '}' ).toString() ;
+    }
+
+    /**
+     * Builds a web CSS animation that shows each frame's gradient for as long as the frame
+     * is shown.  Frames that failed keep the previous gradient.
+     */
+    public static String toKeyframes( List<FrameResult> results, boolean radial ) {
+        long total = 0 ;
+        for( FrameResult result : results ) {
+            total += result.getDelayMillis() ;
+        }
+        StringBuilder sb = new StringBuilder( "@keyframes gradient {\n" ) ;
+        long start = 0 ;
+        String last = null ;
+        for( FrameResult result : results ) {
+            if( result.getStrip() != null ) {
+                sb.append( "    " ) ;
+                GradientFormat.appendFixed( sb, total == 0 ? 0 : start * 100.0d / total, 2 ).append( "% { background: " ) ;
+                int from = sb.length() ;
+                GradientFormat.appendGradient( result.toStops( radial ), sb, true, " " ) ;
+                last = sb.substring( from ) ;
+                sb.append( " ; }\n" ) ;
+            }
+            start += result.getDelayMillis() ;
+        }
+        if( last != null ) {
+            // step-end holds each keyframe until the next, so the last needs a closing copy
+            sb.append( "    100% { background: " ).append( last ).append( " ; }\n" ) ;
+        }
+        sb.append( "}\n\n.gradient {\n    animation: gradient " ) ;
+        GradientFormat.appendFixed( sb, total / 1000.0d, 2 ).append( "s step-end infinite ;\n}\n" ) ;
+        return sb.toString() ;
+    }
+
+    public static void main( String[] args ) throws IOException {
+        float threshold = 10 ;
+        SampleMode mode = SampleMode.PIXEL ;
+        ExtractionPath.Shape shape = ExtractionPath.Shape.LINE ;
+        boolean css = false ;
+        int window = DEFAULT_WINDOW ;
+        int threads = Runtime.getRuntime().availableProcessors() ;
+        String output = null ;
+        List<String> positional = new ArrayList<>() ;
+        ExtractionPath path = null ;
+
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--threshold" : threshold = Float.parseFloat( args[ ++i ] ) ; break ;
+                    case "--mode"      : mode = SampleMode.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--shape"     : shape = ExtractionPath.Shape.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--format"    : css = "css".equalsIgnoreCase( args[ ++i ] ) ; break ;
+                    case "--window"    : window = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--threads"   : threads = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--output"    : output = args[ ++i ] ; break ;
+                    default            : positional.add( args[ i ] ) ;
+                }
+            }
+            if( positional.size() != 5 ) {
+                throw new IllegalArgumentException( "Expected an image and four coordinates" ) ;
+            }
+            double x1 = Double.parseDouble( positional.get( 1 ) ) ;
+            double y1 = Double.parseDouble( positional.get( 2 ) ) ;
+            double x2 = Double.parseDouble( positional.get( 3 ) ) ;
+            double y2 = Double.parseDouble( positional.get( 4 ) ) ;
+            switch( shape ) {
+                case LINE   : path = ExtractionPath.line( x1, y1, x2, y2 ) ; break ;
+                case RADIAL : path = ExtractionPath.radial( x1, y1, x2, y2 ) ; break ;
+                default     : throw new IllegalArgumentException( "Polylines are not supported for animations" ) ;
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        FrameExtractor extractor = new FrameExtractor( new LineSampler( mode ), new PeakFinder( threshold ), window ) ;
+        boolean radial = shape == ExtractionPath.Shape.RADIAL ;
+        List<FrameResult> results = new ArrayList<>() ;
+        int[] failures = new int[ 1 ] ;
+        ForkJoinPool pool = new ForkJoinPool( threads ) ;
+        try( Writer out = output == null ? new BufferedWriter( new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ) )
+                                         : Files.newBufferedWriter( Paths.get( output ), StandardCharsets.UTF_8 ) ) {
+            final boolean keyframes = css ;
+            extractor.extract( new File( positional.get( 0 ) ), path, pool, result -> {
+                if( result.getStrip() == null ) {
+                    failures[ 0 ]++ ;
+                }
+                if( keyframes ) {
+                    results.add( result ) ;
+                    return ;
+                }
+                try {
+                    out.write( toJson( result, radial ) ) ;
+                    out.write( '\n' ) ;
+                }
+                catch( IOException ex ) {
+                    throw new UncheckedIOException( ex ) ;
+                }
+            } ) ;
+            if( keyframes ) {
+                out.write( toKeyframes( results, radial ) ) ;
+            }
+        }
+        finally {
+            pool.shutdown() ;
+        }
+        System.exit( failures[ 0 ] == 0 ? 0 : 1 ) ;
+    }
+}
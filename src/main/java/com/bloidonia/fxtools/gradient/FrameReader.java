@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Reads the frames of an animated or multi-page image one at a time.
+ *
+ * The reader only ever seeks forward, so earlier frames are not kept, and
+ * each frame is handed out as a fresh {@link ImageBuffer} the size of the
+ * whole animation.  GIF frames are composited onto the previous ones as
+ * their metadata asks (offset, transparency and disposal), and carry their
+ * delay; frames in other formats are taken as they are.
+ *
+ * ImageIO has no reader for animated PNGs, so an APNG gives just its
+ * default image as a single frame.
+ *
+ * @author Tim Yates
+ */
+public final class FrameReader implements Closeable {
+    // Browsers show GIFs with no (or a tiny) delay at this speed
+    static final int DEFAULT_DELAY_MILLIS = 100 ;
+    private static final String GIF_IMAGE = "javax_imageio_gif_image_1.0" ;
+    private static final String GIF_STREAM = "javax_imageio_gif_stream_1.0" ;
+
+    private final ImageInputStream input ;
+    private final ImageReader reader ;
+    private int next ;
+    private int[] canvas ;
+    private int width ;
+    private int height ;
+
+    public FrameReader( File file ) throws IOException {
+        input = ImageIO.createImageInputStream( file ) ;
+        if( input == null ) {
+            throw new IOException( "Cannot read " + file ) ;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders( input ) ;
+        if( !readers.hasNext() ) {
+            input.close() ;
+            throw new IOException( "Unsupported image format: " + file ) ;
+        }
+        reader = readers.next() ;
+        reader.setInput( input, true, false ) ;
+    }
+
+    /**
+     * @return the next frame, or null after the last
+     */
+    public Frame next() throws IOException {
+        BufferedImage image ;
+        IIOMetadata metadata ;
+        try {
+            image = reader.read( next ) ;
+            metadata = reader.getImageMetadata( next ) ;
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            return null ;
+        }
+        int index = next++ ;
+        Node gif = metadata == null || !GIF_IMAGE.equals( metadata.getNativeMetadataFormatName() ) ? null : metadata.getAsTree( GIF_IMAGE ) ;
+        if( gif == null ) {
+            return new Frame( index, ImageBuffer.fromBufferedImage( image ), DEFAULT_DELAY_MILLIS ) ;
+        }
+        if( canvas == null ) {
+            startCanvas( image ) ;
+        }
+
+        Node descriptor = child( gif, "ImageDescriptor" ) ;
+        Node control = child( gif, "GraphicControlExtension" ) ;
+        int left = attribute( descriptor, "imageLeftPosition", 0 ) ;
+        int top = attribute( descriptor, "imageTopPosition", 0 ) ;
+        String disposal = control == null ? "none" : control.getAttributes().getNamedItem( "disposalMethod" ).getNodeValue() ;
+        int delay = attribute( control, "delayTime", 0 ) * 10 ;
+
+        int[] previous = "restoreToPrevious".equals( disposal ) ? canvas.clone() : null ;
+        int w = Math.min( image.getWidth(), width - left ) ;
+        int h = Math.min( image.getHeight(), height - top ) ;
+        int[] row = new int[ Math.max( w, 0 ) ] ;
+        for( int y = 0 ; y < h ; y++ ) {
+            image.getRGB( 0, y, w, 1, row, 0, w ) ;
+            int offset = ( top + y ) * width + left ;
+            for( int x = 0 ; x < w ; x++ ) {
+                // GIF transparency is all or nothing
+                if( ( row[ x ] >>> 24 ) != 0 ) {
+                    canvas[ offset + x ] = row[ x ] ;
+                }
+            }
+        }
+        Frame frame = new Frame( index, new ImageBuffer( width, height, canvas.clone() ), delay < 20 ? DEFAULT_DELAY_MILLIS : delay ) ;
+
+        // Get the canvas ready for the next frame
+        if( "restoreToBackgroundColor".equals( disposal ) ) {
+            for( int y = 0 ; y < h ; y++ ) {
+                Arrays.fill( canvas, ( top + y ) * width + left, ( top + y ) * width + left + w, 0 ) ;
+            }
+        }
+        else if( previous != null ) {
+            canvas = previous ;
+        }
+        return frame ;
+    }
+
+    private void startCanvas( BufferedImage first ) throws IOException {
+        width = first.getWidth() ;
+        height = first.getHeight() ;
+        IIOMetadata stream = reader.getStreamMetadata() ;
+        if( stream != null && GIF_STREAM.equals( stream.getNativeMetadataFormatName() ) ) {
+            Node screen = child( stream.getAsTree( GIF_STREAM ), "LogicalScreenDescriptor" ) ;
+            width = Math.max( 1, attribute( screen, "logicalScreenWidth", width ) ) ;
+            height = Math.max( 1, attribute( screen, "logicalScreenHeight", height ) ) ;
+        }
+        canvas = new int[ width * height ] ;
+    }
+
+    private static Node child( Node parent, String name ) {
+        for( Node node = parent.getFirstChild() ; node != null ; node = node.getNextSibling() ) {
+            if( name.equals( node.getNodeName() ) ) {
+                return node ;
+            }
+        }
+        return null ;
+    }
+
+    private static int attribute( Node node, String name, int otherwise ) {
+        if( node == null ) {
+            return otherwise ;
+        }
+        NamedNodeMap attributes = node.getAttributes() ;
+        Node value = attributes == null ? null : attributes.getNamedItem( name ) ;
+        return value == null ? otherwise : Integer.parseInt( value.getNodeValue() ) ;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose() ;
+        input.close() ;
+    }
+
+    public static final class Frame {
+        private final int index ;
+        private final ImageBuffer image ;
+        private final int delayMillis ;
+
+        Frame( int index, ImageBuffer image, int delayMillis ) {
+            this.index = index ;
+            this.image = image ;
+            this.delayMillis = delayMillis ;
+        }
+
+        public int getIndex() { return index ; }
+        public ImageBuffer getImage() { return image ; }
+        /** How long the frame is shown for */
+        public int getDelayMillis() { return delayMillis ; }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Writes {@link GradientStops} out as text.
+ *
+ * Everything is appended straight to the caller's {@link StringBuilder},
+ * and numbers and colors are formatted by hand rather than through
+ * {@link String#format}, as this runs on every drag.
+ *
+ * @author Tim Yates
+ */
+public enum GradientFormat {
+    CSS( "CSS" ) {
+        @Override
+        public void write( GradientStops stops, StringBuilder sb ) {
+            sb.append( "-fx-background-color:\n" ).append( FOUR_SPACES ) ;
+            appendGradient( stops, sb, false, STOP_BREAK ) ;
+        }
+    },
+    JAVA( "Java" ) {
+        @Override
+        public void write( GradientStops stops, StringBuilder sb ) {
+            sb.append( "Stop[] stops = new Stop[] {\n" ) ;
+            int last = stops.size() - 1 ;
+            for( int i = 0 ; i < last ; i++ ) {
+                sb.append( "    new Stop(" ) ;
+                appendFixed( sb, stops.offset( i ), 3 ).append( ", Color.web(\"#" ) ;
+                appendHex( sb, stops.color( i ) ).append( "\") ),\n" ) ;
+            }
+            sb.append( "    new Stop(1, Color.web(\"#" ) ;
+            appendHex( sb, stops.color( last ) ).append( "\") )\n" ) ;
+            sb.append( "} ;\n" ) ;
+            sb.append( stops.isRadial()
+                       ? "RadialGradient g = new RadialGradient( 0, 0, 0.5, 0.5, 0.5, true, CycleMethod.NO_CYCLE, stops ) ;"
+                       : "LinearGradient g = new LinearGradient( 0, 0, 1, 0, true, CycleMethod.NO_CYCLE, stops ) ;" ) ;
+        }
+    },
+    SVG( "SVG" ) {
+        @Override
+        public void write( GradientStops stops, StringBuilder sb ) {
+            sb.append( stops.isRadial()
+                       ? "<radialGradient id=\"gradient\" cx=\"0.5\" cy=\"0.5\" r=\"0.5\">\n"
+                       : "<linearGradient id=\"gradient\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"0\">\n" ) ;
+            for( int i = 0 ; i < stops.size() ; i++ ) {
+                sb.append( "  <stop offset=\"" ) ;
+                appendFixed( sb, stops.offset( i ), 4 ).append( "\" stop-color=\"#" ) ;
+                appendHex( sb, stops.color( i ) ).append( "\"/>\n" ) ;
+            }
+            sb.append( stops.isRadial() ? "</radialGradient>" : "</linearGradient>" ) ;
+        }
+    },
+    JSON( "JSON" ) {
+        @Override
+        public void write( GradientStops stops, StringBuilder sb ) {
+            sb.append( stops.isRadial() ? "{\"type\":\"radial\",\"stops\":[" : "{\"type\":\"linear\",\"stops\":[" ) ;
+            for( int i = 0 ; i < stops.size() ; i++ ) {
+                sb.append( i == 0 ? "{\"offset\":" : ",{\"offset\":" ) ;
+                appendFixed( sb, stops.offset( i ), 4 ).append( ",\"color\":\"#" ) ;
+                appendHex( sb, stops.color( i ) ).append( "\"}" ) ;
+            }
+            sb.append( "]}" ) ;
+        }
+    } ;
+
+    private static final String FOUR_SPACES = "    " ;
+    private static final String STOP_BREAK = "\n                     " ;
+    private static final char[] HEX = "0123456789abcdef".toCharArray() ;
+    private static final long[] POW10 = { 1, 10, 100, 1000, 10000, 100000, 1000000 } ;
+    // Below this, a scaled value is within a tiny fraction of a unit of the exact product
+    private static final double FAST_LIMIT = 1e6 ;
+
+    private final String label ;
+
+    GradientFormat( String label ) {
+        this.label = label ;
+    }
+
+    /**
+     * Appends the gradient to {@code sb}.
+     */
+    public abstract void write( GradientStops stops, StringBuilder sb ) ;
+
+    public String format( GradientStops stops ) {
+        StringBuilder sb = new StringBuilder( 64 + stops.size() * 48 ) ;
+        write( stops, sb ) ;
+        return sb.toString() ;
+    }
+
+    @Override
+    public String toString() {
+        return label ;
+    }
+
+    /**
+     * Appends a CSS {@code linear-gradient} or {@code radial-gradient} function.  The last peak
+     * before the final stop is left out (but there is always at least one).
+     *
+     * @param web   whether to write the radial form as browsers take it, rather than JavaFX
+     * @param gap   what goes before each stop
+     */
+    static StringBuilder appendGradient( GradientStops stops, StringBuilder sb, boolean web, String gap ) {
+        if( stops.isRadial() ) {
+            sb.append( web ? "radial-gradient( circle closest-side at 50% 50%," : "radial-gradient( center 50% 50%, radius 50%," ) ;
+        }
+        else {
+            sb.append( "linear-gradient( to right," ) ;
+        }
+        int last = stops.size() - 1 ;
+        int count = last > 1 ? last - 1 : last ;
+        for( int i = 0 ; i < count ; i++ ) {
+            sb.append( gap ).append( '#' ) ;
+            appendHex( sb, stops.color( i ) ).append( ' ' ) ;
+            appendFixed( sb, stops.offset( i ) * 100.0d, 2 ).append( "%," ) ;
+        }
+        sb.append( gap ).append( '#' ) ;
+        return appendHex( sb, stops.color( last ) ).append( " 100% )" ) ;
+    }
+
+    /**
+     * Appends the rgb part of a packed color as six lower case hex digits, as {@link RGB#toString()}
+     */
+    static StringBuilder appendHex( StringBuilder sb, int argb ) {
+        for( int shift = 20 ; shift >= 0 ; shift -= 4 ) {
+            sb.append( HEX[ ( argb >> shift ) & 0xF ] ) ;
+        }
+        return sb ;
+    }
+
+    /**
+     * Appends {@code value} to {@code decimals} places (at most 6), exactly as {@code String.format( "%.nf" )}
+     * does: rounding half up the shortest decimal that reads back as {@code value}, so 0.5025 gives 0.503
+     * even though the double is a little under it.
+     */
+    static StringBuilder appendFixed( StringBuilder sb, double value, int decimals ) {
+        if( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+            return sb.append( value ) ;
+        }
+        long scale = POW10[ decimals ] ;
+        double abs = Math.abs( value ) ;
+        double x = abs * scale ;
+        double part = x - Math.floor( x ) ;
+        long scaled ;
+        // Well away from a half, the product rounds the same way as the decimal would
+        if( x < FAST_LIMIT && Math.abs( part - 0.5 ) > 1e-6 ) {
+            scaled = Math.round( x ) ;
+        }
+        else {
+            scaled = new BigDecimal( Double.toString( abs ) ).setScale( decimals, RoundingMode.HALF_UP ).unscaledValue().longValue() ;
+        }
+        if( Double.doubleToRawLongBits( value ) < 0 ) {
+            sb.append( '-' ) ;
+        }
+        sb.append( scaled / scale ) ;
+        if( decimals > 0 ) {
+            sb.append( '.' ) ;
+            long fraction = scaled % scale ;
+            for( int d = decimals - 1 ; d >= 0 ; d-- ) {
+                sb.append( (char)( '0' + ( fraction / POW10[ d ] ) % 10 ) ) ;
+            }
+        }
+        return sb ;
+    }
+}
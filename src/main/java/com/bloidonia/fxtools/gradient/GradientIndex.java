@@ -0,0 +1,640 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.imageio.ImageIO;
+
+/**
+ * A searchable collection of extracted gradients, kept in a file.
+ *
+ * Each gradient is stored with a label (usually the image and line it came
+ * from), its stops, and a signature: the gradient's color at
+ * {@link #SIGNATURE_POINTS} evenly spaced offsets, in CIELAB, rounded to
+ * hundredths.  Two gradients are as far apart as the root mean square
+ * delta E between their signatures, so 0 is the same gradient and anything
+ * under about 2 looks the same.
+ *
+ * The file is only ever appended to.  In memory the gradients are searched
+ * through a vantage point tree, built in parallel when the index is opened;
+ * gradients added since are checked one by one until there are enough of
+ * them to be worth building the tree again.  Forty eight dimensions are too
+ * many for the tree to rule much out, so it is built over a coarse
+ * signature, the mean of each run of {@link #COARSE_RUN} points, at most
+ * half the full distance from any other; only gradients the coarse distance
+ * can't rule out are compared in full.
+ *
+ * <pre>
+ *   GradientIndex [--index file] query [options] image x1 y1 x2 y2
+ *   GradientIndex [--index file] duplicates [--max-distance d]
+ *   GradientIndex [--index file] stats
+ * </pre>
+ *
+ * @author Tim Yates
+ */
+public final class GradientIndex {
+    public static final int SIGNATURE_POINTS = 16 ;
+    static final int DIMENSIONS = SIGNATURE_POINTS * 3 ;
+    static final int COARSE_RUN = 4 ;
+    static final int COARSE_DIMENSIONS = DIMENSIONS / COARSE_RUN ;
+    // Full distances are at least this times the coarse distance, as sqrt( COARSE_RUN )
+    private static final float COARSE_BOUND = 2 ;
+    private static final int MAGIC = 0x47494458 ; // "GIDX"
+    private static final int VERSION = 1 ;
+    private static final float QUANTUM = 100f ;
+    // Ranges bigger than this are split across the pool when building the tree
+    private static final int PARALLEL_RANGE = 4096 ;
+    // Gradients added since the tree was built, over which it is built again
+    private static final int MAX_PENDING = 1024 ;
+    // Where the UI and the command line keep their gradients unless told otherwise
+    public static final Path DEFAULT_FILE = Paths.get( System.getProperty( "user.home" ), ".gradient-extractor", "gradients.idx" ) ;
+
+    private static final String USAGE =
+        "Usage: GradientIndex [--index file] (query [options] image x1 y1 x2 y2 | duplicates | stats)\n" +
+        "Options:\n" +
+        "  --index file        the index (default " + DEFAULT_FILE + ")\n" +
+        "  -k n                matches to show (default 10)\n" +
+        "  --threshold t       peak threshold (default 10)\n" +
+        "  --mode m            pixel, nearest, bilinear or bicubic (default pixel)\n" +
+        "  --shape s           line or radial (default line)\n" +
+        "  --max-distance d    largest distance between duplicates (default 1)\n" ;
+
+    private final Path file ;
+    private final List<String> labels = new ArrayList<>() ;
+    private final List<GradientStops> stops = new ArrayList<>() ;
+    private float[] signatures = new float[ DIMENSIONS * 64 ] ;
+    private float[] coarse = new float[ COARSE_DIMENSIONS * 64 ] ;
+    // The last gradient added with each label, so adding the same one again is skipped
+    private final Map<String,Integer> lastByLabel = new HashMap<>() ;
+    private int size ;
+    // The tree covers the first treeSize gradients: items in tree order, and the median distance at each vantage point
+    private int[] items = new int[ 0 ] ;
+    private float[] medians = new float[ 0 ] ;
+    private int treeSize ;
+    private long buildNanos ;
+
+    private GradientIndex( Path file ) {
+        this.file = file ;
+    }
+
+    /**
+     * A gradient found by a search
+     */
+    public static final class Match {
+        private final int index ;
+        private final String label ;
+        private final GradientStops stops ;
+        private final double distance ;
+        private final boolean reversed ;
+
+        Match( int index, String label, GradientStops stops, double distance, boolean reversed ) {
+            this.index = index ;
+            this.label = label ;
+            this.stops = stops ;
+            this.distance = distance ;
+            this.reversed = reversed ;
+        }
+
+        public int getIndex() { return index ; }
+        public String getLabel() { return label ; }
+        public GradientStops getStops() { return stops ; }
+        /** Root mean square delta E from the query */
+        public double getDistance() { return distance ; }
+        /** Whether it matched the query run the other way */
+        public boolean isReversed() { return reversed ; }
+    }
+
+    /**
+     * Reads the index in {@code file}, which is created when the first gradient is added
+     */
+    public static GradientIndex open( Path file ) throws IOException {
+        GradientIndex index = new GradientIndex( file ) ;
+        if( Files.isRegularFile( file ) ) {
+            index.read() ;
+        }
+        index.build( ForkJoinPool.commonPool() ) ;
+        return index ;
+    }
+
+    public synchronized int size() {
+        return size ;
+    }
+
+    public Path getFile() {
+        return file ;
+    }
+
+    /**
+     * @return one line on the index, for the status bar and {@code stats}
+     */
+    public synchronized String summary() {
+        return String.format( "%d gradients, tree of %d built in %.0fms", size, treeSize, buildNanos / 1e6 ) ;
+    }
+
+    /**
+     * @return the label the UI and batch extraction give a gradient from {@code path} across {@code image}
+     */
+    public static String label( String image, ExtractionPath path ) {
+        StringBuilder sb = new StringBuilder( image ).append( ' ' ).append( path.getShape().name().toLowerCase( Locale.ROOT ) ) ;
+        for( int i = 0 ; i < path.pointCount() ; i++ ) {
+            sb.append( ' ' ).append( (float)path.getX( i ) ).append( ' ' ).append( (float)path.getY( i ) ) ;
+        }
+        return sb.toString() ;
+    }
+
+    /**
+     * Adds a gradient, unless the same label already has the same signature.
+     *
+     * @return whether it was added
+     */
+    public synchronized boolean add( String label, GradientStops gradient ) throws IOException {
+        float[] signature = quantize( signature( gradient ) ) ;
+        Integer last = lastByLabel.get( label ) ;
+        if( last != null && distance( signature, 0, signatures, last * DIMENSIONS ) == 0 ) {
+            return false ;
+        }
+        boolean created = !Files.isRegularFile( file ) ;
+        if( created && file.getParent() != null ) {
+            Files.createDirectories( file.getParent() ) ;
+        }
+        try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                Files.newOutputStream( file, StandardOpenOption.CREATE, StandardOpenOption.APPEND ) ) ) ) {
+            if( created ) {
+                out.writeInt( MAGIC ) ;
+                out.writeInt( VERSION ) ;
+            }
+            write( out, label, gradient, signature ) ;
+        }
+        append( label, copy( gradient ), signature ) ;
+        if( size - treeSize > MAX_PENDING ) {
+            build( ForkJoinPool.commonPool() ) ;
+        }
+        return true ;
+    }
+
+    /**
+     * @return the matches as CSS, each headed by a comment with its distance and label
+     */
+    public static String toCss( List<Match> matches ) {
+        StringBuilder sb = new StringBuilder() ;
+        for( Match match : matches ) {
+            sb.append( "/* " ) ;
+            GradientFormat.appendFixed( sb, match.getDistance(), 2 ).append( "  " ).append( match.getLabel() ) ;
+            sb.append( match.isReversed() ? " (reversed) */\n" : " */\n" ).append( "-fx-background-color: " ) ;
+            GradientFormat.appendGradient( match.getStops(), sb, false, " " ).append( " ;\n\n" ) ;
+        }
+        return sb.toString() ;
+    }
+
+    /**
+     * @return the {@code k} gradients closest to {@code gradient}, either way round, nearest first
+     */
+    public synchronized List<Match> nearest( GradientStops gradient, int k ) {
+        return nearest( signature( gradient ), k ) ;
+    }
+
+    /**
+     * @return for each gradient, those after it within {@code maxDistance}, as pairs of indices
+     */
+    public synchronized List<int[]> duplicates( double maxDistance ) {
+        List<int[]> pairs = new ArrayList<>() ;
+        float[] query = new float[ DIMENSIONS ] ;
+        // The search works in the full signature distance, not its root mean square per point
+        float radius = (float)( maxDistance * Math.sqrt( SIGNATURE_POINTS ) ) ;
+        for( int i = 0 ; i < size ; i++ ) {
+            System.arraycopy( signatures, i * DIMENSIONS, query, 0, DIMENSIONS ) ;
+            Search search = new Search( query, Integer.MAX_VALUE, radius ) ;
+            search( search ) ;
+            for( int n = 0 ; n < search.count ; n++ ) {
+                if( search.found[ n ] > i ) {
+                    pairs.add( new int[] { i, search.found[ n ] } ) ;
+                }
+            }
+        }
+        return pairs ;
+    }
+
+    public synchronized String getLabel( int index ) {
+        return labels.get( index ) ;
+    }
+
+    public synchronized GradientStops getStops( int index ) {
+        return stops.get( index ) ;
+    }
+
+    private List<Match> nearest( float[] signature, int k ) {
+        Search forward = new Search( signature, k, Float.POSITIVE_INFINITY ) ;
+        search( forward ) ;
+        float[] reversed = new float[ DIMENSIONS ] ;
+        for( int p = 0 ; p < SIGNATURE_POINTS ; p++ ) {
+            System.arraycopy( signature, p * 3, reversed, ( SIGNATURE_POINTS - 1 - p ) * 3, 3 ) ;
+        }
+        Search backward = new Search( reversed, k, Float.POSITIVE_INFINITY ) ;
+        search( backward ) ;
+        // Merge the two, keeping each gradient's better way round
+        List<Match> matches = new ArrayList<>() ;
+        int f = 0, b = 0 ;
+        while( matches.size() < k && ( f < forward.count || b < backward.count ) ) {
+            boolean takeBackward = b < backward.count &&
+                                   ( f >= forward.count || backward.distances[ b ] < forward.distances[ f ] ) ;
+            int item = takeBackward ? backward.found[ b ] : forward.found[ f ] ;
+            float distance = takeBackward ? backward.distances[ b++ ] : forward.distances[ f++ ] ;
+            boolean seen = false ;
+            for( Match match : matches ) {
+                seen |= match.getIndex() == item ;
+            }
+            if( !seen ) {
+                matches.add( new Match( item, labels.get( item ), stops.get( item ), distance / Math.sqrt( SIGNATURE_POINTS ), takeBackward ) ) ;
+            }
+        }
+        return matches ;
+    }
+
+    /**
+     * @return the gradient's CIELAB color at each of {@link #SIGNATURE_POINTS} even offsets, three floats per point
+     */
+    static float[] signature( GradientStops gradient ) {
+        int[] argb = new int[ SIGNATURE_POINTS ] ;
+        int s = 0 ;
+        int last = gradient.size() - 1 ;
+        for( int i = 0 ; i < SIGNATURE_POINTS ; i++ ) {
+            double t = i / (double)( SIGNATURE_POINTS - 1 ) ;
+            while( s < last && gradient.offset( s + 1 ) < t ) {
+                s++ ;
+            }
+            if( s == last || t <= gradient.offset( s ) ) {
+                argb[ i ] = gradient.color( s ) ;
+                continue ;
+            }
+            double span = gradient.offset( s + 1 ) - gradient.offset( s ) ;
+            argb[ i ] = lerp( gradient.color( s ), gradient.color( s + 1 ), span <= 0 ? 1 : ( t - gradient.offset( s ) ) / span ) ;
+        }
+        return Arrays.copyOf( LabConverter.forThread( DetectionMode.CIELAB ).convert( argb, SIGNATURE_POINTS ), DIMENSIONS ) ;
+    }
+
+    private static int lerp( int c0, int c1, double f ) {
+        int argb = 0 ;
+        for( int shift = 0 ; shift < 32 ; shift += 8 ) {
+            int a = ( c0 >>> shift ) & 0xFF, b = ( c1 >>> shift ) & 0xFF ;
+            argb |= (int)Math.round( a + ( b - a ) * f ) << shift ;
+        }
+        return argb ;
+    }
+
+    // Rounded as it is stored, so a gradient read back is exactly as it was added
+    private static float[] quantize( float[] signature ) {
+        float[] rounded = new float[ signature.length ] ;
+        for( int i = 0 ; i < signature.length ; i++ ) {
+            rounded[ i ] = (short)Math.round( signature[ i ] * QUANTUM ) / QUANTUM ;
+        }
+        return rounded ;
+    }
+
+    // The mean of each run of COARSE_RUN points
+    static void coarsen( float[] signature, int from, float[] out, int to ) {
+        for( int c = 0 ; c < COARSE_DIMENSIONS ; c++ ) {
+            int point = ( c / 3 ) * COARSE_RUN, channel = c % 3 ;
+            float sum = 0 ;
+            for( int p = point ; p < point + COARSE_RUN ; p++ ) {
+                sum += signature[ from + p * 3 + channel ] ;
+            }
+            out[ to + c ] = sum / COARSE_RUN ;
+        }
+    }
+
+    private static GradientStops copy( GradientStops gradient ) {
+        GradientStops copy = new GradientStops().setRadial( gradient.isRadial() ) ;
+        for( int i = 0 ; i < gradient.size() ; i++ ) {
+            copy.add( gradient.offset( i ), gradient.color( i ) ) ;
+        }
+        return copy ;
+    }
+
+    private void append( String label, GradientStops gradient, float[] signature ) {
+        if( signatures.length < ( size + 1 ) * DIMENSIONS ) {
+            signatures = Arrays.copyOf( signatures, signatures.length * 2 ) ;
+        }
+        System.arraycopy( signature, 0, signatures, size * DIMENSIONS, DIMENSIONS ) ;
+        if( coarse.length < ( size + 1 ) * COARSE_DIMENSIONS ) {
+            coarse = Arrays.copyOf( coarse, coarse.length * 2 ) ;
+        }
+        coarsen( signature, 0, coarse, size * COARSE_DIMENSIONS ) ;
+        lastByLabel.put( label, size ) ;
+        labels.add( label ) ;
+        stops.add( gradient ) ;
+        size++ ;
+    }
+
+    // Each record is: label, radial, stop count, offset and color per stop, then the signature
+    private static void write( DataOutputStream out, String label, GradientStops gradient, float[] signature ) throws IOException {
+        out.writeUTF( label ) ;
+        out.writeBoolean( gradient.isRadial() ) ;
+        out.writeShort( gradient.size() ) ;
+        for( int i = 0 ; i < gradient.size() ; i++ ) {
+            out.writeFloat( (float)gradient.offset( i ) ) ;
+            out.writeInt( gradient.color( i ) ) ;
+        }
+        for( float value : signature ) {
+            out.writeShort( Math.round( value * QUANTUM ) ) ;
+        }
+    }
+
+    private void read() throws IOException {
+        try( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ), 1 << 16 ) ) ) {
+            if( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                throw new IOException( "Not a gradient index: " + file ) ;
+            }
+            float[] signature = new float[ DIMENSIONS ] ;
+            while( true ) {
+                String label ;
+                GradientStops gradient ;
+                try {
+                    label = in.readUTF() ;
+                    gradient = new GradientStops().setRadial( in.readBoolean() ) ;
+                    int count = in.readUnsignedShort() ;
+                    for( int i = 0 ; i < count ; i++ ) {
+                        gradient.add( in.readFloat(), in.readInt() ) ;
+                    }
+                    for( int i = 0 ; i < DIMENSIONS ; i++ ) {
+                        signature[ i ] = in.readShort() / QUANTUM ;
+                    }
+                }
+                catch( EOFException ex ) {
+                    // The end, or a record cut short by a crash while adding it
+                    break ;
+                }
+                append( label, gradient, signature ) ;
+            }
+        }
+    }
+
+    private void build( ForkJoinPool pool ) {
+        long start = System.nanoTime() ;
+        items = new int[ size ] ;
+        for( int i = 0 ; i < size ; i++ ) {
+            items[ i ] = i ;
+        }
+        medians = new float[ size ] ;
+        long[] keys = new long[ size ] ;
+        pool.invoke( new BuildTask( keys, 0, size ) ) ;
+        treeSize = size ;
+        buildNanos = System.nanoTime() - start ;
+    }
+
+    // Picks a vantage point for the range, and splits the rest about their median distance from it
+    private final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L ;
+
+        private final long[] keys ;
+        private final int lo, hi ;
+
+        BuildTask( long[] keys, int lo, int hi ) {
+            this.keys = keys ;
+            this.lo = lo ;
+            this.hi = hi ;
+        }
+
+        @Override
+        protected void compute() {
+            if( hi - lo < 2 ) {
+                return ;
+            }
+            int pick = ( lo + hi ) >>> 1 ;
+            int vantage = items[ pick ] ;
+            items[ pick ] = items[ lo ] ;
+            items[ lo ] = vantage ;
+            for( int i = lo + 1 ; i < hi ; i++ ) {
+                // Distances are never negative, so their bits sort as the floats do
+                keys[ i ] = (long)Float.floatToIntBits( coarseDistance( coarse, vantage * COARSE_DIMENSIONS, items[ i ] ) ) << 32 | items[ i ] ;
+            }
+            Arrays.sort( keys, lo + 1, hi ) ;
+            for( int i = lo + 1 ; i < hi ; i++ ) {
+                items[ i ] = (int)keys[ i ] ;
+            }
+            int mid = ( lo + 1 + hi ) >>> 1 ;
+            medians[ lo ] = Float.intBitsToFloat( (int)( keys[ mid ] >>> 32 ) ) ;
+            BuildTask inside = new BuildTask( keys, lo + 1, mid ) ;
+            BuildTask outside = new BuildTask( keys, mid, hi ) ;
+            if( hi - lo > PARALLEL_RANGE ) {
+                invokeAll( inside, outside ) ;
+            }
+            else {
+                inside.compute() ;
+                outside.compute() ;
+            }
+        }
+    }
+
+    // The k nearest so far, nearest first, within a radius that shrinks once k are found
+    private static final class Search {
+        final float[] query ;
+        final float[] coarseQuery = new float[ COARSE_DIMENSIONS ] ;
+        final int k ;
+        final float maxDistance ;
+        int[] found = new int[ 16 ] ;
+        float[] distances = new float[ 16 ] ;
+        int count ;
+
+        Search( float[] query, int k, float maxDistance ) {
+            this.query = query ;
+            coarsen( query, 0, coarseQuery, 0 ) ;
+            this.k = k ;
+            this.maxDistance = maxDistance ;
+        }
+
+        float radius() {
+            return count < k ? maxDistance : distances[ count - 1 ] ;
+        }
+
+        void offer( int item, float distance ) {
+            if( distance > radius() || ( count == k && distance == radius() ) ) {
+                return ;
+            }
+            if( count == found.length ) {
+                found = Arrays.copyOf( found, count * 2 ) ;
+                distances = Arrays.copyOf( distances, count * 2 ) ;
+            }
+            int i = count < k ? count++ : count - 1 ;
+            while( i > 0 && distances[ i - 1 ] > distance ) {
+                found[ i ] = found[ i - 1 ] ;
+                distances[ i ] = distances[ i - 1 ] ;
+                i-- ;
+            }
+            found[ i ] = item ;
+            distances[ i ] = distance ;
+        }
+    }
+
+    private void search( Search search ) {
+        search( search, 0, treeSize ) ;
+        for( int i = treeSize ; i < size ; i++ ) {
+            search.offer( i, distance( search.query, 0, signatures, i * DIMENSIONS ) ) ;
+        }
+    }
+
+    private void search( Search search, int lo, int hi ) {
+        while( hi > lo ) {
+            int vantage = items[ lo ] ;
+            float d = coarseDistance( search.coarseQuery, 0, vantage ) ;
+            if( d * COARSE_BOUND <= search.radius() ) {
+                search.offer( vantage, distance( search.query, 0, signatures, vantage * DIMENSIONS ) ) ;
+            }
+            int mid = ( lo + 1 + hi ) >>> 1 ;
+            float median = medians[ lo ] ;
+            // Nearer side first, as it is more likely to shrink the radius; the other side is the loop
+            if( d < median ) {
+                search( search, lo + 1, mid ) ;
+                if( d + search.radius() / COARSE_BOUND < median ) {
+                    return ;
+                }
+                lo = mid ;
+            }
+            else {
+                search( search, mid, hi ) ;
+                if( d - search.radius() / COARSE_BOUND > median ) {
+                    return ;
+                }
+                hi = mid ;
+                lo = lo + 1 ;
+            }
+        }
+    }
+
+    private float coarseDistance( float[] query, int from, int item ) {
+        float sum = 0 ;
+        for( int i = 0, o = item * COARSE_DIMENSIONS ; i < COARSE_DIMENSIONS ; i++ ) {
+            float d = query[ from + i ] - coarse[ o + i ] ;
+            sum += d * d ;
+        }
+        return (float)Math.sqrt( sum ) ;
+    }
+
+    static float distance( float[] a, int ao, float[] b, int bo ) {
+        float sum = 0 ;
+        for( int i = 0 ; i < DIMENSIONS ; i++ ) {
+            float d = a[ ao + i ] - b[ bo + i ] ;
+            sum += d * d ;
+        }
+        return (float)Math.sqrt( sum ) ;
+    }
+
+    public static void main( String[] args ) throws IOException {
+        Path file = DEFAULT_FILE ;
+        int k = 10 ;
+        float threshold = 10 ;
+        SampleMode mode = SampleMode.PIXEL ;
+        ExtractionPath.Shape shape = ExtractionPath.Shape.LINE ;
+        double maxDistance = 1 ;
+        List<String> positional = new ArrayList<>() ;
+        String command = null ;
+        ExtractionPath path = null ;
+
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--index"        : file = Paths.get( args[ ++i ] ) ; break ;
+                    case "-k"             : k = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--threshold"    : threshold = Float.parseFloat( args[ ++i ] ) ; break ;
+                    case "--mode"         : mode = SampleMode.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--shape"        : shape = ExtractionPath.Shape.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--max-distance" : maxDistance = Double.parseDouble( args[ ++i ] ) ; break ;
+                    default               : positional.add( args[ i ] ) ;
+                }
+            }
+            command = positional.isEmpty() ? "" : positional.remove( 0 ) ;
+            switch( command ) {
+                case "query" :
+                    if( positional.size() != 5 ) {
+                        throw new IllegalArgumentException( "Expected an image and four coordinates" ) ;
+                    }
+                    double x1 = Double.parseDouble( positional.get( 1 ) ) ;
+                    double y1 = Double.parseDouble( positional.get( 2 ) ) ;
+                    double x2 = Double.parseDouble( positional.get( 3 ) ) ;
+                    double y2 = Double.parseDouble( positional.get( 4 ) ) ;
+                    switch( shape ) {
+                        case LINE   : path = ExtractionPath.line( x1, y1, x2, y2 ) ; break ;
+                        case RADIAL : path = ExtractionPath.radial( x1, y1, x2, y2 ) ; break ;
+                        default     : throw new IllegalArgumentException( "Polylines are not supported for queries" ) ;
+                    }
+                    break ;
+                case "duplicates" :
+                case "stats" :
+                    break ;
+                default :
+                    throw new IllegalArgumentException( "Unknown command '" + command + "'" ) ;
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        long start = System.nanoTime() ;
+        GradientIndex index = open( file ) ;
+        System.err.printf( "%s: %s, read in %.0fms%n", file, index.summary(), ( System.nanoTime() - start ) / 1e6 ) ;
+        switch( command ) {
+            case "query" :
+                BufferedImage decoded = ImageIO.read( new File( positional.get( 0 ) ) ) ;
+                if( decoded == null ) {
+                    throw new IOException( "Unsupported image format: " + positional.get( 0 ) ) ;
+                }
+                ImageBuffer image = ImageBuffer.fromBufferedImage( decoded ) ;
+                if( !path.isInside( image ) ) {
+                    throw new IllegalArgumentException( "Line is outside the " + image.getWidth() + "x" + image.getHeight() + " image" ) ;
+                }
+                SampleBuffer samples = new SampleBuffer() ;
+                path.sample( new LineSampler( mode ), image, samples ) ;
+                int[] colors = samples.toArray() ;
+                GradientStops query = GradientStops.fromPeaks( colors, colors.length, PeakDetector.findPeaks( colors, colors.length, threshold ) )
+                                                   .setRadial( shape == ExtractionPath.Shape.RADIAL ) ;
+                start = System.nanoTime() ;
+                List<Match> matches = index.nearest( query, k ) ;
+                System.err.printf( "%d matches in %.2fms%n", matches.size(), ( System.nanoTime() - start ) / 1e6 ) ;
+                System.out.print( toCss( matches ) ) ;
+                break ;
+            case "duplicates" :
+                start = System.nanoTime() ;
+                List<int[]> pairs = index.duplicates( maxDistance ) ;
+                System.err.printf( "%d pairs in %.0fms%n", pairs.size(), ( System.nanoTime() - start ) / 1e6 ) ;
+                for( int[] pair : pairs ) {
+                    System.out.println( index.getLabel( pair[ 0 ] ) + "\t" + index.getLabel( pair[ 1 ] ) ) ;
+                }
+                break ;
+            default :
+                System.out.println( index.summary() + ( Files.isRegularFile( file ) ? ", " + Files.size( file ) + " bytes" : "" ) ) ;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Looks over a whole image for areas that are smooth gradients, and
+ * proposes a line and stops for each.
+ *
+ * The image is cut into square tiles, which are checked in parallel on a
+ * fork-join pool.  A tile is a gradient tile when its colors change by a
+ * noticeable amount, mostly in one direction, and none of its rows or
+ * columns has more than a few peaks by the same test as
+ * {@link PeakDetector}.  Neighbouring gradient tiles that run the same way
+ * are joined into regions, and each region is sampled along a line through
+ * its middle in that direction.
+ *
+ * Free of JavaFX types, so it can be used without the toolkit.
+ *
+ * @author Tim Yates
+ */
+public final class GradientScanner {
+    public static final int DEFAULT_TILE_SIZE = 32 ;
+
+    // Smallest change in any channel, in levels across a tile, for a tile to count as a gradient
+    private static final double MIN_CHANGE = 3 ;
+    // Share of the per pixel steps that must agree with the overall direction
+    private static final double MIN_MONOTONE = 0.6 ;
+    // Share of rows and columns allowed to have a peak
+    private static final double MAX_KINKS = 0.02 ;
+    private static final double MAX_ANGLE = Math.toRadians( 15 ) ;
+    private static final int MIN_TILES = 4 ;
+
+    private final int tileSize ;
+    private final LineSampler sampler ;
+    private final PeakFinder finder ;
+
+    public GradientScanner( int tileSize, LineSampler sampler, PeakFinder finder ) {
+        if( tileSize < 4 ) {
+            throw new IllegalArgumentException( "tileSize must be at least 4: " + tileSize ) ;
+        }
+        this.tileSize = tileSize ;
+        this.sampler = sampler ;
+        this.finder = finder ;
+    }
+
+    public List<Region> scan( PixelSource image ) {
+        return scan( image, ForkJoinPool.commonPool() ) ;
+    }
+
+    /**
+     * @return the regions found, largest first
+     */
+    public List<Region> scan( PixelSource image, ForkJoinPool pool ) {
+        int cols = ( image.getWidth() + tileSize - 1 ) / tileSize ;
+        int rows = ( image.getHeight() + tileSize - 1 ) / tileSize ;
+        // Direction of each tile, or NaN where it is not a gradient
+        float[] angles = new float[ cols * rows ] ;
+        float[] weights = new float[ cols * rows ] ;
+        pool.invoke( new TileTask( image, cols, angles, weights, 0, rows ) ) ;
+
+        int[] parent = new int[ angles.length ] ;
+        for( int i = 0 ; i < parent.length ; i++ ) {
+            parent[ i ] = i ;
+        }
+        for( int ty = 0 ; ty < rows ; ty++ ) {
+            for( int tx = 0 ; tx < cols ; tx++ ) {
+                int i = ty * cols + tx ;
+                if( Float.isNaN( angles[ i ] ) ) continue ;
+                if( tx + 1 < cols && similar( angles[ i ], angles[ i + 1 ] ) ) {
+                    union( parent, i, i + 1 ) ;
+                }
+                if( ty + 1 < rows && similar( angles[ i ], angles[ i + cols ] ) ) {
+                    union( parent, i, i + cols ) ;
+                }
+            }
+        }
+
+        // Per root: tile count, bounds in tiles, weighted centre and doubled angle sums
+        int[] count = new int[ angles.length ] ;
+        int[][] bounds = new int[ angles.length ][] ;
+        double[] sums = new double[ angles.length * 5 ] ;
+        for( int i = 0 ; i < angles.length ; i++ ) {
+            if( Float.isNaN( angles[ i ] ) ) continue ;
+            int root = find( parent, i ) ;
+            int tx = i % cols, ty = i / cols ;
+            if( count[ root ]++ == 0 ) {
+                bounds[ root ] = new int[] { tx, ty, tx, ty } ;
+            }
+            int[] b = bounds[ root ] ;
+            b[ 0 ] = Math.min( b[ 0 ], tx ) ;
+            b[ 1 ] = Math.min( b[ 1 ], ty ) ;
+            b[ 2 ] = Math.max( b[ 2 ], tx ) ;
+            b[ 3 ] = Math.max( b[ 3 ], ty ) ;
+            double w = weights[ i ] ;
+            sums[ root * 5     ] += w * ( tx + 0.5 ) ;
+            sums[ root * 5 + 1 ] += w * ( ty + 0.5 ) ;
+            sums[ root * 5 + 2 ] += w ;
+            sums[ root * 5 + 3 ] += w * Math.cos( 2 * angles[ i ] ) ;
+            sums[ root * 5 + 4 ] += w * Math.sin( 2 * angles[ i ] ) ;
+        }
+
+        List<Region> regions = new ArrayList<>() ;
+        SampleBuffer samples = new SampleBuffer() ;
+        for( int root = 0 ; root < angles.length ; root++ ) {
+            if( count[ root ] < MIN_TILES ) continue ;
+            int[] b = bounds[ root ] ;
+            int x0 = b[ 0 ] * tileSize, y0 = b[ 1 ] * tileSize ;
+            int x1 = Math.min( ( b[ 2 ] + 1 ) * tileSize, image.getWidth() ) ;
+            int y1 = Math.min( ( b[ 3 ] + 1 ) * tileSize, image.getHeight() ) ;
+            double cx = sums[ root * 5 ] / sums[ root * 5 + 2 ] * tileSize ;
+            double cy = sums[ root * 5 + 1 ] / sums[ root * 5 + 2 ] * tileSize ;
+            double angle = 0.5 * Math.atan2( sums[ root * 5 + 4 ], sums[ root * 5 + 3 ] ) ;
+            ExtractionPath path = clip( cx, cy, Math.cos( angle ), Math.sin( angle ), x0, y0, x1 - 1, y1 - 1 ) ;
+            path.sample( sampler, image, samples ) ;
+            int[] colors = samples.toArray() ;
+            regions.add( new Region( x0, y0, x1 - x0, y1 - y0, count[ root ], path,
+                                     new ColorStrip( colors, finder.find( colors, colors.length ) ) ) ) ;
+        }
+        regions.sort( ( a, c ) -> Integer.compare( c.getTiles(), a.getTiles() ) ) ;
+        return regions ;
+    }
+
+    // The line through (cx, cy) in direction (dx, dy), cut to the rectangle
+    private static ExtractionPath clip( double cx, double cy, double dx, double dy, double x0, double y0, double x1, double y1 ) {
+        // Point down rather than up when the line is close to vertical
+        if( Math.abs( dx ) < 1e-6 && dy < 0 ) {
+            dy = -dy ;
+        }
+        double tmin = Double.NEGATIVE_INFINITY, tmax = Double.POSITIVE_INFINITY ;
+        if( Math.abs( dx ) > 1e-9 ) {
+            double a = ( x0 - cx ) / dx, b = ( x1 - cx ) / dx ;
+            tmin = Math.max( tmin, Math.min( a, b ) ) ;
+            tmax = Math.min( tmax, Math.max( a, b ) ) ;
+        }
+        if( Math.abs( dy ) > 1e-9 ) {
+            double a = ( y0 - cy ) / dy, b = ( y1 - cy ) / dy ;
+            tmin = Math.max( tmin, Math.min( a, b ) ) ;
+            tmax = Math.min( tmax, Math.max( a, b ) ) ;
+        }
+        return ExtractionPath.line( cx + dx * tmin, cy + dy * tmin, cx + dx * tmax, cy + dy * tmax ) ;
+    }
+
+    private static boolean similar( float a, float b ) {
+        if( Float.isNaN( b ) ) {
+            return false ;
+        }
+        // Directions are the same either way round, so compare modulo pi
+        double d = Math.abs( a - b ) % Math.PI ;
+        return Math.min( d, Math.PI - d ) < MAX_ANGLE ;
+    }
+
+    private static int find( int[] parent, int i ) {
+        while( parent[ i ] != i ) {
+            parent[ i ] = parent[ parent[ i ] ] ;
+            i = parent[ i ] ;
+        }
+        return i ;
+    }
+
+    private static void union( int[] parent, int a, int b ) {
+        a = find( parent, a ) ;
+        b = find( parent, b ) ;
+        if( a != b ) {
+            parent[ Math.max( a, b ) ] = Math.min( a, b ) ;
+        }
+    }
+
+    /**
+     * Checks a range of tile rows, splitting the range in half until it is one row.
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L ;
+
+        private final PixelSource image ;
+        private final int cols ;
+        private final float[] angles, weights ;
+        private final int from, to ;
+
+        TileTask( PixelSource image, int cols, float[] angles, float[] weights, int from, int to ) {
+            this.image = image ;
+            this.cols = cols ;
+            this.angles = angles ;
+            this.weights = weights ;
+            this.from = from ;
+            this.to = to ;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from > 1 ) {
+                int mid = ( from + to ) >>> 1 ;
+                invokeAll( new TileTask( image, cols, angles, weights, from, mid ),
+                           new TileTask( image, cols, angles, weights, mid, to ) ) ;
+                return ;
+            }
+            int[] tile = new int[ tileSize * tileSize ] ;
+            for( int tx = 0 ; tx < cols ; tx++ ) {
+                int i = from * cols + tx ;
+                angles[ i ] = Float.NaN ;
+                int x0 = tx * tileSize, y0 = from * tileSize ;
+                int w = Math.min( tileSize, image.getWidth() - x0 ) ;
+                int h = Math.min( tileSize, image.getHeight() - y0 ) ;
+                if( w < 3 || h < 3 ) continue ;
+                for( int y = 0 ; y < h ; y++ ) {
+                    for( int x = 0 ; x < w ; x++ ) {
+                        tile[ y * w + x ] = image.getArgb( x0 + x, y0 + y ) ;
+                    }
+                }
+                analyse( tile, w, h, i ) ;
+            }
+        }
+
+        private void analyse( int[] tile, int w, int h, int i ) {
+            float threshold = finder.getThreshold() ;
+            int kinks = 0 ;
+            if( finder.getDetection() == DetectionMode.RGB ) {
+                for( int y = 0 ; y < h ; y++ ) {
+                    kinks += PeakDetector.countPeaks( tile, y * w, 1, w, threshold ) > 0 ? 1 : 0 ;
+                }
+                for( int x = 0 ; x < w ; x++ ) {
+                    kinks += PeakDetector.countPeaks( tile, x, w, h, threshold ) > 0 ? 1 : 0 ;
+                }
+            }
+            else {
+                // Converted once for the whole tile, then tested by rows and columns as above
+                float[] lab = LabConverter.forThread( finder.getDetection() ).convert( tile, w * h ) ;
+                for( int y = 0 ; y < h ; y++ ) {
+                    kinks += PeakDetector.countPeaks( lab, y * w, 1, w, threshold ) > 0 ? 1 : 0 ;
+                }
+                for( int x = 0 ; x < w ; x++ ) {
+                    kinks += PeakDetector.countPeaks( lab, x, w, h, threshold ) > 0 ? 1 : 0 ;
+                }
+            }
+            if( kinks > ( w + h ) * MAX_KINKS ) {
+                return ;
+            }
+
+            // Signed and absolute sums of the steps between neighbours, per channel and axis
+            long[] sx = new long[ 3 ], ax = new long[ 3 ], sy = new long[ 3 ], ay = new long[ 3 ] ;
+            for( int y = 0 ; y < h ; y++ ) {
+                for( int x = 0 ; x < w ; x++ ) {
+                    int p = tile[ y * w + x ] ;
+                    for( int c = 0, shift = 16 ; c < 3 ; c++, shift -= 8 ) {
+                        int v = ( p >> shift ) & 0xFF ;
+                        if( x + 1 < w ) {
+                            int d = ( ( tile[ y * w + x + 1 ] >> shift ) & 0xFF ) - v ;
+                            sx[ c ] += d ;
+                            ax[ c ] += Math.abs( d ) ;
+                        }
+                        if( y + 1 < h ) {
+                            int d = ( ( tile[ ( y + 1 ) * w + x ] >> shift ) & 0xFF ) - v ;
+                            sy[ c ] += d ;
+                            ay[ c ] += Math.abs( d ) ;
+                        }
+                    }
+                }
+            }
+            double jxx = 0, jyy = 0, jxy = 0, change = 0, signed = 0, total = 0 ;
+            for( int c = 0 ; c < 3 ; c++ ) {
+                // Mean step per pixel along each axis
+                double vx = (double)sx[ c ] / ( h * ( w - 1 ) ) ;
+                double vy = (double)sy[ c ] / ( w * ( h - 1 ) ) ;
+                jxx += vx * vx ;
+                jyy += vy * vy ;
+                jxy += vx * vy ;
+                change = Math.max( change, Math.hypot( vx, vy ) * Math.max( w, h ) ) ;
+                signed += Math.abs( sx[ c ] ) + Math.abs( sy[ c ] ) ;
+                total += ax[ c ] + ay[ c ] ;
+            }
+            if( change < MIN_CHANGE || signed < total * MIN_MONOTONE ) {
+                return ;
+            }
+            angles[ i ] = (float)( 0.5 * Math.atan2( 2 * jxy, jxx - jyy ) ) ;
+            weights[ i ] = (float)change ;
+        }
+    }
+
+    /**
+     * A gradient found in the image, with the line and stops proposed for it
+     */
+    public static final class Region {
+        private final int x, y, width, height, tiles ;
+        private final ExtractionPath path ;
+        private final ColorStrip strip ;
+
+        Region( int x, int y, int width, int height, int tiles, ExtractionPath path, ColorStrip strip ) {
+            this.x = x ;
+            this.y = y ;
+            this.width = width ;
+            this.height = height ;
+            this.tiles = tiles ;
+            this.path = path ;
+            this.strip = strip ;
+        }
+
+        public int getX() { return x ; }
+        public int getY() { return y ; }
+        public int getWidth() { return width ; }
+        public int getHeight() { return height ; }
+        /** How many tiles the region covers */
+        public int getTiles() { return tiles ; }
+        /** The proposed line, in image coordinates */
+        public ExtractionPath getPath() { return path ; }
+        /** The samples along the line and the stops found in them */
+        public ColorStrip getStrip() { return strip ; }
+
+        public boolean contains( double px, double py ) {
+            return px >= x && px < x + width && py >= y && py < y + height ;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * The stops of a gradient: colors at offsets between 0 and 1.
+ *
+ * The last stop is always the final sample's color at offset 1.  The model
+ * can be refilled in place, so one instance can serve every drag.  A radial
+ * gradient's offsets run from its centre (0) to its edge (1).
+ *
+ * @author Tim Yates
+ */
+public final class GradientStops {
+    private double[] offsets = new double[ 16 ] ;
+    private int[] colors = new int[ 16 ] ;
+    private int size ;
+    private boolean radial ;
+
+    /**
+     * @return stops for the given peaks, as the UI and command line tools show them
+     */
+    public static GradientStops fromPeaks( int[] samples, int length, int[] peaks ) {
+        return new GradientStops().setPeaks( samples, length, peaks ) ;
+    }
+
+    /**
+     * Replaces the stops with one per peak, at {@code peak / length}, then the final sample at 1.
+     */
+    public GradientStops setPeaks( int[] samples, int length, int[] peaks ) {
+        size = 0 ;
+        ensureCapacity( peaks.length + 1 ) ;
+        for( int peak : peaks ) {
+            add( (double)peak / length, samples[ peak ] ) ;
+        }
+        add( 1, samples[ length - 1 ] ) ;
+        return this ;
+    }
+
+    public void clear() {
+        size = 0 ;
+    }
+
+    public void add( double offset, int argb ) {
+        ensureCapacity( size + 1 ) ;
+        offsets[ size ] = offset ;
+        colors[ size ] = argb ;
+        size++ ;
+    }
+
+    public boolean isRadial() {
+        return radial ;
+    }
+
+    public GradientStops setRadial( boolean radial ) {
+        this.radial = radial ;
+        return this ;
+    }
+
+    public int size() {
+        return size ;
+    }
+
+    public double offset( int i ) {
+        return offsets[ i ] ;
+    }
+
+    public int color( int i ) {
+        return colors[ i ] ;
+    }
+
+    private void ensureCapacity( int capacity ) {
+        if( capacity > offsets.length ) {
+            int n = Math.max( capacity, offsets.length * 2 ) ;
+            offsets = Arrays.copyOf( offsets, n ) ;
+            colors = Arrays.copyOf( colors, n ) ;
+        }
+    }
+}
@@ -16,13 +16,10 @@
 
 package com.bloidonia.fxtools.gradient;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.effect.BlendMode;
@@ -30,94 +27,186 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 
 /**
+ * Plots the red, green and blue channels of the sampled line, with the
+ * peaks overlaid.
+ *
+ * Each channel is reduced to at most one min/max pair per horizontal pixel
+ * and cached, so drawing costs O(width) however long the line.  The peaks
+ * are drawn on their own canvas, so a change to just the peaks leaves the
+ * channels alone.  Both canvases are resized in place.
+ *
  * @author Tim Yates
  */
 public class GraphPane extends Pane {
-    private Canvas view = new Canvas( 200, 48 ) ;
-    private ListProperty<RGB> pixels ;
-    private ListProperty<Integer> peaks ;
-    
+    private final Canvas view = new Canvas( 200, 48 ) ;
+    private final Canvas overlay = new Canvas( 200, 48 ) ;
+    private ObjectProperty<ColorStrip> strip ;
+    private ExtractionStats stats ;
+
+    // Cached polygons for the three channels, sharing x coordinates
+    private double[] xs = new double[ 0 ] ;
+    private final double[][] ys = new double[ 3 ][ 0 ] ;
+    private int points ;
+
     public GraphPane() {
-        this.widthProperty().addListener( (ObservableValue<? extends Number> obs,Number oldW,Number newW) -> {
-            GraphPane.this.getChildren().clear() ;
-            GraphPane.this.getChildren().add( GraphPane.this.view = new Canvas( newW.intValue(), 48 ) ) ;
-            update() ;
-        } ) ;
+        overlay.setBlendMode( BlendMode.DIFFERENCE ) ;
+        this.getChildren().addAll( view, overlay ) ;
+        this.widthProperty().addListener( (ObservableValue<? extends Number> obs,Number oldW,Number newW) -> resize() ) ;
+        this.heightProperty().addListener( (ObservableValue<? extends Number> obs,Number oldH,Number newH) -> resize() ) ;
     }
 
     public List<RGB> getPixels() {
-        return pixels == null ? new ArrayList<>() : pixels.get() ;
+        return getStrip().getColors() ;
     }
 
-    public ListProperty pixelsProperty() {
-        if( pixels == null ) {
-            pixels = new SimpleListProperty() ;
-            pixels.addListener( this::updatePixels ) ;
-        }
-        return pixels ;
+    public List<Integer> getPeaks() {
+        return getStrip().getPeaks() ;
     }
 
-    public List<Integer> getPeaks() {
-        return peaks == null ? new ArrayList<>() : peaks.get() ;
+    public ColorStrip getStrip() {
+        return strip == null ? ColorStrip.EMPTY : strip.get() ;
     }
-    
-    public ListProperty peaksProperty() {
-        if( peaks == null ) {
-            peaks = new SimpleListProperty() ;
-            peaks.addListener( this::updatePeaks ) ;
+
+    public void setStrip( ColorStrip value ) {
+        stripProperty().set( value ) ;
+    }
+
+    /**
+     * @param stats where to record drawing times, or null
+     */
+    public void setStats( ExtractionStats stats ) {
+        this.stats = stats ;
+    }
+
+    public ObjectProperty<ColorStrip> stripProperty() {
+        if( strip == null ) {
+            strip = new SimpleObjectProperty<>( ColorStrip.EMPTY ) ;
+            strip.addListener( this::updateStrip ) ;
         }
-        return peaks ;
+        return strip ;
     }
 
-    void updatePixels( ObservableValue<? extends ObservableList<RGB>> a,
-                  ObservableList<RGB> b,
-                  ObservableList<RGB> pixels ) {
-        update() ;
+    void updateStrip( ObservableValue<? extends ColorStrip> a,
+                      ColorStrip old,
+                      ColorStrip strip ) {
+        long start = System.nanoTime() ;
+        if( strip != null && strip.sameColors( old ) ) {
+            renderPeaks() ;
+        }
+        else {
+            update() ;
+        }
+        if( stats != null ) {
+            stats.record( ExtractionStats.Stage.GRAPH, System.nanoTime() - start ) ;
+        }
     }
 
-    void updatePeaks( ObservableValue<? extends ObservableList<Integer>> a,
-              ObservableList<Integer> b,
-              ObservableList<Integer> peaks ) {
+    private void resize() {
+        double w = this.widthProperty().get() ;
+        double h = this.heightProperty().get() ;
+        if( w <= 0 || h <= 0 ) return ;
+        view.setWidth( w ) ;
+        view.setHeight( h ) ;
+        overlay.setWidth( w ) ;
+        overlay.setHeight( h ) ;
         update() ;
     }
 
-    private void render( GraphicsContext g, double h, double dw, double dh, List<RGB> pixels, Function<RGB,Integer> fn ) {
-        g.beginPath() ;
-        g.moveTo( 0, h );
-        for( int i = 0 ; i < pixels.size() ; i++ ) {
-            g.lineTo( dw * i, h - fn.apply( pixels.get( i ) ) * dh ) ;
+    // Rebuilds the channel polygons for the current pixels and size
+    private void buildPaths( int[] argb, double w, double h ) {
+        int n = argb.length ;
+        int columns = (int)Math.ceil( w ) ;
+        boolean bucketed = n > columns ;
+        int capacity = ( bucketed ? columns * 2 : n ) + 2 ;
+        if( xs.length < capacity ) {
+            xs = new double[ capacity ] ;
+            for( int c = 0 ; c < 3 ; c++ ) {
+                ys[ c ] = new double[ capacity ] ;
+            }
         }
-        g.lineTo( this.widthProperty().get(), h );
-        g.closePath() ;
-        g.stroke() ;
-        g.fill() ;
+        double dh = h / 255.0 ;
+        int p = 0 ;
+        xs[ p ] = 0 ;
+        ys[ 0 ][ p ] = ys[ 1 ][ p ] = ys[ 2 ][ p ] = h ;
+        p++ ;
+        if( bucketed ) {
+            // One min/max pair per column
+            double dx = w / Math.max( columns - 1, 1 ) ;
+            for( int col = 0 ; col < columns ; col++ ) {
+                int from = (int)( (long)col * n / columns ) ;
+                int to = (int)( (long)( col + 1 ) * n / columns ) ;
+                int minR = 255, minG = 255, minB = 255, maxR = 0, maxG = 0, maxB = 0 ;
+                for( int i = from ; i < to ; i++ ) {
+                    int c = argb[ i ] ;
+                    int r = ( c >> 16 ) & 0xFF, g = ( c >> 8 ) & 0xFF, b = c & 0xFF ;
+                    if( r < minR ) minR = r ;
+                    if( r > maxR ) maxR = r ;
+                    if( g < minG ) minG = g ;
+                    if( g > maxG ) maxG = g ;
+                    if( b < minB ) minB = b ;
+                    if( b > maxB ) maxB = b ;
+                }
+                xs[ p ] = xs[ p + 1 ] = dx * col ;
+                ys[ 0 ][ p ] = h - minR * dh ;
+                ys[ 1 ][ p ] = h - minG * dh ;
+                ys[ 2 ][ p ] = h - minB * dh ;
+                p++ ;
+                ys[ 0 ][ p ] = h - maxR * dh ;
+                ys[ 1 ][ p ] = h - maxG * dh ;
+                ys[ 2 ][ p ] = h - maxB * dh ;
+                p++ ;
+            }
+        }
+        else {
+            double dw = w / ( n - 1 ) ;
+            for( int i = 0 ; i < n ; i++ ) {
+                int c = argb[ i ] ;
+                xs[ p ] = dw * i ;
+                ys[ 0 ][ p ] = h - ( ( c >> 16 ) & 0xFF ) * dh ;
+                ys[ 1 ][ p ] = h - ( ( c >> 8  ) & 0xFF ) * dh ;
+                ys[ 2 ][ p ] = h - ( ( c       ) & 0xFF ) * dh ;
+                p++ ;
+            }
+        }
+        xs[ p ] = w ;
+        ys[ 0 ][ p ] = ys[ 1 ][ p ] = ys[ 2 ][ p ] = h ;
+        points = p + 1 ;
+    }
+
+    private void render( GraphicsContext g, double[] ys, Color stroke, Color fill ) {
+        g.setStroke( stroke ) ;
+        g.setFill( fill ) ;
+        g.strokePolygon( xs, ys, points ) ;
+        g.fillPolygon( xs, ys, points ) ;
     }
 
     protected final void update() {
-        if( pixels == null || peaks == null ) return ;
+        ColorStrip current = getStrip() ;
         GraphicsContext g = view.getGraphicsContext2D() ;
-        g.setLineWidth( 1 ) ;
         double h = this.heightProperty().get() ;
         double w = this.widthProperty().get() ;
         g.clearRect( 0, 0, w, h );
-        double dh = h / 255.0 ;
-        double dw = w / ( pixels.size() - 1 ) ;
-        g.setStroke( Color.RED ) ;
-        g.setFill( Color.rgb( 255, 0, 0, 0.2 ) ) ;
-        render( g, h, dw, dh, pixels, (rgb) -> rgb.getR() ) ;
-        g.setStroke( Color.GREEN ) ;
-        g.setFill( Color.rgb( 0, 255, 0, 0.2 ) ) ;
-        render( g, h, dw, dh, pixels, (rgb) -> rgb.getG() ) ;
-        g.setStroke( Color.BLUE ) ;
-        g.setFill( Color.rgb( 0, 0, 255, 0.2 ) ) ;
-        render( g, h, dw, dh, pixels, (rgb) -> rgb.getB() ) ;
-        g.setLineWidth( 2 ) ;
-        BlendMode mode = g.getGlobalBlendMode() ;
-        g.setGlobalBlendMode( BlendMode.DIFFERENCE );
+        if( current.size() > 1 ) {
+            buildPaths( current.argb(), w, h ) ;
+            g.setLineWidth( 1 ) ;
+            render( g, ys[ 0 ], Color.RED, Color.rgb( 255, 0, 0, 0.2 ) ) ;
+            render( g, ys[ 1 ], Color.GREEN, Color.rgb( 0, 255, 0, 0.2 ) ) ;
+            render( g, ys[ 2 ], Color.BLUE, Color.rgb( 0, 0, 255, 0.2 ) ) ;
+        }
+        renderPeaks() ;
+    }
+
+    private void renderPeaks() {
+        ColorStrip current = getStrip() ;
+        GraphicsContext g = overlay.getGraphicsContext2D() ;
+        double h = this.heightProperty().get() ;
+        double w = this.widthProperty().get() ;
+        g.clearRect( 0, 0, w, h );
+        if( current.size() < 2 ) return ;
+        double dw = w / ( current.size() - 1 ) ;
         g.setFill( Color.PINK ) ;
-        for( Integer peak : peaks ) {
-            g.fillRect( ( peak * dw ) - 1, 0, 3, h );
+        for( int i = 0 ; i < current.peakCount() ; i++ ) {
+            g.fillRect( ( current.getPeak( i ) * dw ) - 1, 0, 3, h );
         }
-        g.setGlobalBlendMode( mode );
     }    
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of non-negative values, such as latencies in
+ * nanoseconds or sizes in bytes.
+ *
+ * Values under 16 get a bucket each; above that, each power of two is split
+ * into eight buckets, so any value is reported to within 12.5%.  Recording
+ * takes no locks, and the whole range of a long fits in under 500 buckets.
+ *
+ * @author Tim Yates
+ */
+public final class Histogram {
+    private static final int LINEAR = 16 ;
+    private static final int SUB_BITS = 3 ;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS ;
+
+    private final AtomicLongArray counts = new AtomicLongArray( LINEAR + ( 64 - 4 ) * SUB_BUCKETS ) ;
+
+    public void record( long value ) {
+        counts.incrementAndGet( bucket( Math.max( value, 0 ) ) ) ;
+    }
+
+    public long getCount() {
+        long total = 0 ;
+        for( int i = 0 ; i < counts.length() ; i++ ) {
+            total += counts.get( i ) ;
+        }
+        return total ;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value in the bucket holding that percentile, or 0 when nothing has been recorded
+     */
+    public long getValueAtPercentile( double percentile ) {
+        long total = getCount() ;
+        if( total == 0 ) {
+            return 0 ;
+        }
+        long rank = Math.max( 1, (long)Math.ceil( total * percentile / 100.0 ) ) ;
+        long seen = 0 ;
+        for( int i = 0 ; i < counts.length() ; i++ ) {
+            seen += counts.get( i ) ;
+            if( seen >= rank ) {
+                return highest( i ) ;
+            }
+        }
+        return highest( counts.length() - 1 ) ;
+    }
+
+    public void reset() {
+        for( int i = 0 ; i < counts.length() ; i++ ) {
+            counts.set( i, 0 ) ;
+        }
+    }
+
+    static int bucket( long value ) {
+        if( value < LINEAR ) {
+            return (int)value ;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value ) ;
+        int sub = (int)( value >>> ( exponent - SUB_BITS ) ) & ( SUB_BUCKETS - 1 ) ;
+        return LINEAR + ( exponent - 4 ) * SUB_BUCKETS + sub ;
+    }
+
+    static long highest( int bucket ) {
+        if( bucket < LINEAR ) {
+            return bucket ;
+        }
+        int exponent = ( bucket - LINEAR ) / SUB_BUCKETS + 4 ;
+        int sub = ( bucket - LINEAR ) % SUB_BUCKETS ;
+        long lowest = (long)( SUB_BUCKETS + sub ) << ( exponent - SUB_BITS ) ;
+        long highest = lowest + ( 1L << ( exponent - SUB_BITS ) ) - 1 ;
+        // The top power of two overflows
+        return highest < 0 ? Long.MAX_VALUE : highest ;
+    }
+}
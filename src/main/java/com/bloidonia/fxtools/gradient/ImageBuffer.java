@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An image decoded once into a flat array of packed 0xAARRGGBB pixels.
+ *
+ * Deliberately free of JavaFX types so it can be used without the toolkit.
+ *
+ * @author Tim Yates
+ */
+public final class ImageBuffer implements PixelSource {
+    private final int width ;
+    private final int height ;
+    private final int[] pixels ;
+
+    public ImageBuffer( int width, int height, int[] pixels ) {
+        if( pixels.length < width * height ) {
+            throw new IllegalArgumentException( "Expected " + ( width * height ) + " pixels, got " + pixels.length ) ;
+        }
+        this.width = width ;
+        this.height = height ;
+        this.pixels = pixels ;
+    }
+
+    public static ImageBuffer fromBufferedImage( BufferedImage image ) {
+        int w = image.getWidth() ;
+        int h = image.getHeight() ;
+        int[] pixels = new int[ w * h ] ;
+        image.getRGB( 0, 0, w, h, pixels, 0, w ) ;
+        return new ImageBuffer( w, h, pixels ) ;
+    }
+
+    @Override
+    public int getWidth() {
+        return width ;
+    }
+
+    @Override
+    public int getHeight() {
+        return height ;
+    }
+
+    public int[] getPixels() {
+        return pixels ;
+    }
+
+    @Override
+    public int getArgb( int x, int y ) {
+        return pixels[ y * width + x ] ;
+    }
+}
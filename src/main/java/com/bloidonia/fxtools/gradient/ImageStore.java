@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Decoded images shared between concurrent requests.
+ *
+ * Images are held in memory, least recently used first out once they come
+ * to more than {@code maxBytes} of pixels.  A file is keyed by its path,
+ * size and modification time, and an upload by the SHA-256 of its bytes,
+ * so the same upload sent twice is only decoded once.  Requests for an
+ * image that is still being decoded wait for that decode rather than
+ * starting their own.
+ *
+ * Files go through the {@link PixelCache}, when there is one, so images
+ * the UI has opened are mapped rather than decoded.  Every image is a
+ * {@link MappedImage} with the digest of its file, so the
+ * {@link ResultCache} never holds on to pixels the store has let go.
+ *
+ * @author Tim Yates
+ */
+public final class ImageStore {
+    private final PixelCache disk ;
+    private final long maxBytes ;
+    private final LinkedHashMap<String,CompletableFuture<PixelSource>> images = new LinkedHashMap<>( 16, 0.75f, true ) ;
+    private long bytes ;
+    private final LongAdder hits = new LongAdder() ;
+    private final LongAdder misses = new LongAdder() ;
+
+    /**
+     * @param disk the on-disk cache to decode files through, or null
+     */
+    public ImageStore( PixelCache disk, long maxBytes ) {
+        this.disk = disk ;
+        this.maxBytes = maxBytes ;
+    }
+
+    public PixelSource load( Path file ) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes( file, BasicFileAttributes.class ) ;
+        String key = file.toAbsolutePath().normalize() + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis() ;
+        return load( key, () -> {
+            if( disk != null ) {
+                return disk.load( file.toFile() ) ;
+            }
+            byte[] data = Files.readAllBytes( file ) ;
+            return decode( data, PixelCache.digest( data ) ) ;
+        } ) ;
+    }
+
+    public PixelSource load( byte[] data ) throws IOException {
+        String digest = PixelCache.digest( data ) ;
+        return load( digest, () -> decode( data, digest ) ) ;
+    }
+
+    // Digested as the PixelCache does, so results are shared however the image arrived
+    private static MappedImage decode( byte[] data, String digest ) throws IOException {
+        BufferedImage decoded = ImageIO.read( new ByteArrayInputStream( data ) ) ;
+        if( decoded == null ) {
+            throw new IOException( "Unsupported image format" ) ;
+        }
+        ImageBuffer pixels = ImageBuffer.fromBufferedImage( decoded ) ;
+        return new MappedImage( pixels.getWidth(), pixels.getHeight(), IntBuffer.wrap( pixels.getPixels() ), digest ) ;
+    }
+
+    private interface Loader {
+        PixelSource load() throws IOException ;
+    }
+
+    private PixelSource load( String key, Loader loader ) throws IOException {
+        CompletableFuture<PixelSource> future ;
+        boolean owner = false ;
+        synchronized( this ) {
+            future = images.get( key ) ;
+            if( future == null ) {
+                future = new CompletableFuture<>() ;
+                images.put( key, future ) ;
+                owner = true ;
+            }
+        }
+        if( !owner ) {
+            hits.increment() ;
+            try {
+                return future.join() ;
+            }
+            catch( CompletionException ex ) {
+                throw ex.getCause() instanceof IOException ? (IOException)ex.getCause() : new IOException( ex.getCause() ) ;
+            }
+        }
+        misses.increment() ;
+        PixelSource image ;
+        try {
+            image = loader.load() ;
+        }
+        catch( IOException | RuntimeException ex ) {
+            synchronized( this ) {
+                images.remove( key, future ) ;
+            }
+            future.completeExceptionally( ex ) ;
+            throw ex ;
+        }
+        future.complete( image ) ;
+        synchronized( this ) {
+            if( images.get( key ) == future ) {
+                bytes += weight( image ) ;
+                evict( future ) ;
+            }
+        }
+        return image ;
+    }
+
+    // Drops the least recently used decoded images, other than keep, until the store fits
+    private void evict( CompletableFuture<PixelSource> keep ) {
+        Iterator<CompletableFuture<PixelSource>> it = images.values().iterator() ;
+        while( bytes > maxBytes && it.hasNext() ) {
+            CompletableFuture<PixelSource> next = it.next() ;
+            // Images still being decoded have no weight yet
+            if( next != keep && next.isDone() && !next.isCompletedExceptionally() ) {
+                bytes -= weight( next.join() ) ;
+                it.remove() ;
+            }
+        }
+    }
+
+    private static long weight( PixelSource image ) {
+        return 4L * image.getWidth() * image.getHeight() ;
+    }
+
+    public synchronized int size() {
+        return images.size() ;
+    }
+
+    public long getHits() {
+        return hits.sum() ;
+    }
+
+    public long getMisses() {
+        return misses.sum() ;
+    }
+
+    public synchronized String summary() {
+        return String.format( "images %d hits  %d misses  %d held  %.1f/%.0fMB",
+                              getHits(), getMisses(), images.size(), bytes / 1048576.0, maxBytes / 1048576.0 ) ;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * Just enough JSON writing for the command line tools' output records.
+ *
+ * @author Tim Yates
+ */
+final class Json {
+    private Json() {
+    }
+
+    static StringBuilder quote( StringBuilder sb, String value ) {
+        sb.append( '"' ) ;
+        for( int i = 0 ; i < value.length() ; i++ ) {
+            char c = value.charAt( i ) ;
+            switch( c ) {
+                case '"'  : sb.append( "\\\"" ) ; break ;
+                case '\\' : sb.append( "\\\\" ) ; break ;
+                case '\n' : sb.append( "\\n" ) ; break ;
+                case '\r' : sb.append( "\\r" ) ; break ;
+                case '\t' : sb.append( "\\t" ) ; break ;
+                default :
+                    if( c < 0x20 ) {
+                        sb.append( "\\u" ) ;
+                        String h = Integer.toHexString( c ) ;
+                        for( int p = h.length() ; p < 4 ; p++ ) {
+                            sb.append( '0' ) ;
+                        }
+                        sb.append( h ) ;
+                    }
+                    else {
+                        sb.append( c ) ;
+                    }
+            }
+        }
+        return sb.append( '"' ) ;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * Converts packed sRGB colors to CIELAB (D65) or OKLab.
+ *
+ * The sRGB transfer function is a 256 entry table, and every distinct color
+ * converted is remembered in a small open addressing cache, so a line with
+ * long runs of similar colors costs little more than the table lookups.
+ *
+ * Instances are not thread safe; use {@link #forThread(DetectionMode)}.
+ *
+ * @author Tim Yates
+ */
+public final class LabConverter {
+    private static final float[] LINEAR = new float[ 256 ] ;
+    static {
+        for( int i = 0 ; i < 256 ; i++ ) {
+            double c = i / 255.0 ;
+            LINEAR[ i ] = (float)( c <= 0.04045 ? c / 12.92 : Math.pow( ( c + 0.055 ) / 1.055, 2.4 ) ) ;
+        }
+    }
+
+    private static final ThreadLocal<LabConverter> CIELAB = ThreadLocal.withInitial( () -> new LabConverter( DetectionMode.CIELAB ) ) ;
+    private static final ThreadLocal<LabConverter> OKLAB = ThreadLocal.withInitial( () -> new LabConverter( DetectionMode.OKLAB ) ) ;
+
+    private static final int CACHE_BITS = 13 ;
+    private static final int CACHE_SIZE = 1 << CACHE_BITS ;
+
+    private final DetectionMode space ;
+    // Keys have the alpha byte forced on, so 0 marks an empty slot
+    private final int[] keys = new int[ CACHE_SIZE ] ;
+    private final float[] values = new float[ CACHE_SIZE * 3 ] ;
+    private int entries ;
+    private float[] lab = new float[ 0 ] ;
+
+    public LabConverter( DetectionMode space ) {
+        if( space == DetectionMode.RGB ) {
+            throw new IllegalArgumentException( "Not a Lab space: " + space ) ;
+        }
+        this.space = space ;
+    }
+
+    /**
+     * @return this thread's converter for {@code space}
+     */
+    public static LabConverter forThread( DetectionMode space ) {
+        return space == DetectionMode.OKLAB ? OKLAB.get() : CIELAB.get() ;
+    }
+
+    /**
+     * @return L, a, b for each of the first {@code length} colors, three floats per color, in a
+     *         buffer that is reused by the next call
+     */
+    public float[] convert( int[] argb, int length ) {
+        if( lab.length < length * 3 ) {
+            lab = new float[ Math.max( length * 3, lab.length * 2 ) ] ;
+        }
+        for( int i = 0 ; i < length ; i++ ) {
+            int slot = slot( argb[ i ] ) ;
+            lab[ i * 3     ] = values[ slot * 3     ] ;
+            lab[ i * 3 + 1 ] = values[ slot * 3 + 1 ] ;
+            lab[ i * 3 + 2 ] = values[ slot * 3 + 2 ] ;
+        }
+        return lab ;
+    }
+
+    private int slot( int argb ) {
+        int key = argb | 0xFF000000 ;
+        int slot = ( key * 0x9E3779B9 ) >>> ( 32 - CACHE_BITS ) ;
+        while( true ) {
+            int k = keys[ slot ] ;
+            if( k == key ) {
+                return slot ;
+            }
+            if( k == 0 ) {
+                break ;
+            }
+            slot = ( slot + 1 ) & ( CACHE_SIZE - 1 ) ;
+        }
+        if( entries >= CACHE_SIZE / 2 ) {
+            // Full enough that probing gets slow; start again
+            Arrays.fill( keys, 0 ) ;
+            entries = 0 ;
+            return slot( argb ) ;
+        }
+        keys[ slot ] = key ;
+        entries++ ;
+        compute( key, values, slot * 3 ) ;
+        return slot ;
+    }
+
+    private void compute( int argb, float[] out, int offset ) {
+        double r = LINEAR[ ( argb >> 16 ) & 0xFF ] ;
+        double g = LINEAR[ ( argb >> 8  ) & 0xFF ] ;
+        double b = LINEAR[ ( argb       ) & 0xFF ] ;
+        if( space == DetectionMode.OKLAB ) {
+            double l = Math.cbrt( 0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b ) ;
+            double m = Math.cbrt( 0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b ) ;
+            double s = Math.cbrt( 0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b ) ;
+            out[ offset     ] = (float)( 100 * ( 0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s ) ) ;
+            out[ offset + 1 ] = (float)( 100 * ( 1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s ) ) ;
+            out[ offset + 2 ] = (float)( 100 * ( 0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s ) ) ;
+        }
+        else {
+            // D65 reference white
+            double fx = f( ( 0.4124564 * r + 0.3575761 * g + 0.1804375 * b ) / 0.95047 ) ;
+            double fy = f(   0.2126729 * r + 0.7151522 * g + 0.0721750 * b ) ;
+            double fz = f( ( 0.0193339 * r + 0.1191920 * g + 0.9503041 * b ) / 1.08883 ) ;
+            out[ offset     ] = (float)( 116 * fy - 16 ) ;
+            out[ offset + 1 ] = (float)( 500 * ( fx - fy ) ) ;
+            out[ offset + 2 ] = (float)( 200 * ( fy - fz ) ) ;
+        }
+    }
+
+    private static double f( double t ) {
+        return t > 216.0 / 24389.0 ? Math.cbrt( t ) : ( 24389.0 / 27.0 * t + 16 ) / 116 ;
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bloidonia.fxtools.gradient;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads the colors along a line, a polyline, or the radii of a circle
+ * through a {@link PixelSource}.
+ *
+ * Apart from {@link SampleMode#PIXEL}, which walks whole pixels, the line is
+ * sampled at {@code samplesPerPixel} evenly spaced points per unit of length,
+ * with the end points included.  When {@code width} is more than one, each
+ * point is the average of {@code width} samples spaced one pixel apart along
+ * the perpendicular, centred on the line.  Wide bands on long lines are
+ * summed in parallel on the common fork-join pool.
+ *
+ * Instances are immutable, and apart from those wide bands and the rays
+ * of large circles, sampling allocates nothing beyond growing the output
+ * buffer.  Radial paths keep their angle tables for the next path with
+ * the same number of rays.
+ *
+ * @author Tim Yates
+ */
+public final class LineSampler {
+    // Bands with more samples than this are summed in parallel, a strip of rows per task
+    static final long PARALLEL_SAMPLES = 1 << 16 ;
+
+    // Ray directions for the last ray count used, shared by every sampler
+    private static volatile Angles angles = new Angles( 0 ) ;
+    // Sums for radial paths summed on the calling thread, reused from one drag to the next
+    private static final ThreadLocal<int[][]> RAY_SUMS = ThreadLocal.withInitial( () -> new int[][] { new int[ 0 ] } ) ;
+
+    private final SampleMode mode ;
+    private final double samplesPerPixel ;
+    private final int width ;
+
+    public LineSampler( SampleMode mode ) {
+        this( mode, 1.0, 1 ) ;
+    }
+
+    public LineSampler( SampleMode mode, double samplesPerPixel, int width ) {
+        if( samplesPerPixel <= 0 ) {
+            throw new IllegalArgumentException( "samplesPerPixel must be positive: " + samplesPerPixel ) ;
+        }
+        if( width < 1 ) {
+            throw new IllegalArgumentException( "width must be at least 1: " + width ) ;
+        }
+        this.mode = mode ;
+        this.samplesPerPixel = samplesPerPixel ;
+        this.width = width ;
+    }
+
+    public SampleMode getMode() {
+        return mode ;
+    }
+
+    public double getSamplesPerPixel() {
+        return samplesPerPixel ;
+    }
+
+    public int getWidth() {
+        return width ;
+    }
+
+    public LineSampler withMode( SampleMode mode ) {
+        return new LineSampler( mode, samplesPerPixel, width ) ;
+    }
+
+    public LineSampler withWidth( int width ) {
+        return new LineSampler( mode, samplesPerPixel, width ) ;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( !( obj instanceof LineSampler ) ) {
+            return false ;
+        }
+        LineSampler other = (LineSampler)obj ;
+        return mode == other.mode && samplesPerPixel == other.samplesPerPixel && width == other.width ;
+    }
+
+    @Override
+    public int hashCode() {
+        return ( mode.hashCode() * 31 + Double.hashCode( samplesPerPixel ) ) * 31 + width ;
+    }
+
+    /**
+     * Clears {@code out} and fills it with the colors from (x1, y1) to (x2, y2).
+     */
+    public void sample( PixelSource image, double x1, double y1, double x2, double y2, SampleBuffer out ) {
+        out.clear() ;
+        append( image, x1, y1, x2, y2, out ) ;
+    }
+
+    /**
+     * Clears {@code out} and fills it with the colors along each segment of a polyline in turn.
+     * The point shared by two segments is only sampled once.
+     *
+     * @param points x, y pairs
+     */
+    public void samplePolyline( PixelSource image, double[] points, SampleBuffer out ) {
+        out.clear() ;
+        if( points.length == 2 ) {
+            append( image, points[ 0 ], points[ 1 ], points[ 0 ], points[ 1 ], out ) ;
+            return ;
+        }
+        for( int p = 0 ; p + 3 < points.length ; p += 2 ) {
+            if( out.size() > 0 ) {
+                out.removeLast() ;
+            }
+            append( image, points[ p ], points[ p + 1 ], points[ p + 2 ], points[ p + 3 ], out ) ;
+        }
+    }
+
+    /**
+     * Clears {@code out} and fills it with the colors from the centre of a circle out to its
+     * edge, each the average over {@code rays} evenly spaced radii.  Points outside the image
+     * are left out of the average; where every ray has left the image, the last color is
+     * repeated.  Many rays on a large radius are summed in parallel.
+     */
+    public void sampleRadial( PixelSource image, double cx, double cy, double radius, int rays, SampleBuffer out ) {
+        out.clear() ;
+        int count = Math.max( (int)Math.round( radius * samplesPerPixel ), 1 ) + 1 ;
+        out.ensureCapacity( count ) ;
+        Angles a = angles ;
+        if( a.cos.length != rays ) {
+            a = new Angles( rays ) ;
+            angles = a ;
+        }
+        int[] sums ;
+        if( (long)rays * count >= PARALLEL_SAMPLES ) {
+            sums = ForkJoinPool.commonPool().invoke( new RayTask( image, cx, cy, radius, a.cos, a.sin, count, 0, rays, null ) ) ;
+        }
+        else {
+            int[][] buffer = RAY_SUMS.get() ;
+            if( buffer[ 0 ].length < count * 5 ) {
+                buffer[ 0 ] = new int[ count * 5 ] ;
+            }
+            else {
+                Arrays.fill( buffer[ 0 ], 0, count * 5, 0 ) ;
+            }
+            sums = new RayTask( image, cx, cy, radius, a.cos, a.sin, count, 0, rays, buffer[ 0 ] ).compute() ;
+        }
+        int previous = mode.sample( image, cx, cy ) ;
+        for( int i = 0 ; i < count ; i++ ) {
+            int n = sums[ i * 5 + 4 ] ;
+            if( n > 0 ) {
+                previous = average( sums[ i * 5 ], sums[ i * 5 + 1 ], sums[ i * 5 + 2 ], sums[ i * 5 + 3 ], n ) ;
+            }
+            out.add( previous ) ;
+        }
+    }
+
+    // Appends the samples from (x1, y1) to (x2, y2) to out
+    private void append( PixelSource image, double x1, double y1, double x2, double y2, SampleBuffer out ) {
+        if( mode == SampleMode.PIXEL && width == 1 ) {
+            bresenham( image, (int)x1, (int)y1, (int)x2, (int)y2, out ) ;
+            return ;
+        }
+        double dx = x2 - x1 ;
+        double dy = y2 - y1 ;
+        double length = Math.sqrt( dx * dx + dy * dy ) ;
+        int count = Math.max( (int)Math.round( length * samplesPerPixel ), 1 ) + 1 ;
+        out.ensureCapacity( out.size() + count ) ;
+
+        // unit perpendicular, for the averaging band
+        double px = length == 0 ? 0 : -dy / length ;
+        double py = length == 0 ? 0 :  dx / length ;
+        double half = ( width - 1 ) * 0.5 ;
+
+        if( (long)width * count >= PARALLEL_SAMPLES && width > 1 ) {
+            int[] sums = ForkJoinPool.commonPool().invoke( new BandTask( image, x1, y1, dx, dy, px, py, count, 0, width ) ) ;
+            for( int i = 0 ; i < count ; i++ ) {
+                out.add( average( sums[ i * 4 ], sums[ i * 4 + 1 ], sums[ i * 4 + 2 ], sums[ i * 4 + 3 ], width ) ) ;
+            }
+            return ;
+        }
+
+        for( int i = 0 ; i < count ; i++ ) {
+            double t = (double)i / ( count - 1 ) ;
+            double x = x1 + dx * t ;
+            double y = y1 + dy * t ;
+            if( width == 1 ) {
+                out.add( mode.sample( image, x, y ) ) ;
+            }
+            else if( PackedKernels.ENABLED && width <= PackedKernels.MAX_SUM ) {
+                long sum = 0 ;
+                for( int k = 0 ; k < width ; k++ ) {
+                    double o = k - half ;
+                    sum += PackedKernels.spread( mode.sample( image, x + px * o, y + py * o ) ) ;
+                }
+                out.add( PackedKernels.average( sum, width ) ) ;
+            }
+            else {
+                int a = 0, r = 0, g = 0, b = 0 ;
+                for( int k = 0 ; k < width ; k++ ) {
+                    double o = k - half ;
+                    int c = mode.sample( image, x + px * o, y + py * o ) ;
+                    a += ( c >>> 24 ) ;
+                    r += ( c >> 16 ) & 0xFF ;
+                    g += ( c >> 8  ) & 0xFF ;
+                    b += ( c       ) & 0xFF ;
+                }
+                out.add( average( a, r, g, b, width ) ) ;
+            }
+        }
+    }
+
+    /**
+     * Sums the channels of a range of the band's rows (lines offset along the
+     * perpendicular), splitting the range in half until it is small enough.
+     * The result is four sums (a, r, g, b) per position along the line.
+     */
+    private final class BandTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L ;
+
+        private final PixelSource image ;
+        private final double x1, y1, dx, dy, px, py ;
+        private final int count, from, to ;
+
+        BandTask( PixelSource image, double x1, double y1, double dx, double dy, double px, double py, int count, int from, int to ) {
+            this.image = image ;
+            this.x1 = x1 ;
+            this.y1 = y1 ;
+            this.dx = dx ;
+            this.dy = dy ;
+            this.px = px ;
+            this.py = py ;
+            this.count = count ;
+            this.from = from ;
+            this.to = to ;
+        }
+
+        @Override
+        protected int[] compute() {
+            if( (long)( to - from ) * count > PARALLEL_SAMPLES / 2 && to - from > 1 ) {
+                int mid = ( from + to ) >>> 1 ;
+                BandTask left = new BandTask( image, x1, y1, dx, dy, px, py, count, from, mid ) ;
+                left.fork() ;
+                int[] right = new BandTask( image, x1, y1, dx, dy, px, py, count, mid, to ).compute() ;
+                int[] sums = left.join() ;
+                for( int i = 0 ; i < sums.length ; i++ ) {
+                    sums[ i ] += right[ i ] ;
+                }
+                return sums ;
+            }
+            int[] sums = new int[ count * 4 ] ;
+            double half = ( width - 1 ) * 0.5 ;
+            if( PackedKernels.ENABLED && to - from <= PackedKernels.MAX_SUM ) {
+                long[] packed = new long[ count ] ;
+                for( int k = from ; k < to ; k++ ) {
+                    double o = k - half ;
+                    for( int i = 0 ; i < count ; i++ ) {
+                        double t = (double)i / ( count - 1 ) ;
+                        packed[ i ] += PackedKernels.spread( mode.sample( image, x1 + dx * t + px * o, y1 + dy * t + py * o ) ) ;
+                    }
+                }
+                for( int i = 0 ; i < count ; i++ ) {
+                    sums[ i * 4     ] = (int)( packed[ i ] >>> 48 ) ;
+                    sums[ i * 4 + 1 ] = (int)( packed[ i ] >>> 32 ) & 0xFFFF ;
+                    sums[ i * 4 + 2 ] = (int)( packed[ i ] >>> 16 ) & 0xFFFF ;
+                    sums[ i * 4 + 3 ] = (int)( packed[ i ]        ) & 0xFFFF ;
+                }
+                return sums ;
+            }
+            for( int k = from ; k < to ; k++ ) {
+                double o = k - half ;
+                for( int i = 0 ; i < count ; i++ ) {
+                    double t = (double)i / ( count - 1 ) ;
+                    // Same arithmetic as the serial path, so results match exactly
+                    double x = x1 + dx * t ;
+                    double y = y1 + dy * t ;
+                    int c = mode.sample( image, x + px * o, y + py * o ) ;
+                    sums[ i * 4     ] += ( c >>> 24 ) ;
+                    sums[ i * 4 + 1 ] += ( c >> 16 ) & 0xFF ;
+                    sums[ i * 4 + 2 ] += ( c >> 8  ) & 0xFF ;
+                    sums[ i * 4 + 3 ] += ( c       ) & 0xFF ;
+                }
+            }
+            return sums ;
+        }
+    }
+
+    /**
+     * Sums the channels of a range of rays out from a centre, splitting the range in half
+     * until it is small enough.  The result is five ints (a, r, g, b, and how many points
+     * were inside the image) per position along the radius.
+     */
+    private final class RayTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L ;
+
+        private final PixelSource image ;
+        private final double cx, cy, radius ;
+        private final double[] cos, sin ;
+        private final int count, from, to ;
+        // Zeroed sums to add to, or null for a new array
+        private final int[] into ;
+
+        RayTask( PixelSource image, double cx, double cy, double radius, double[] cos, double[] sin, int count, int from, int to, int[] into ) {
+            this.image = image ;
+            this.cx = cx ;
+            this.cy = cy ;
+            this.radius = radius ;
+            this.cos = cos ;
+            this.sin = sin ;
+            this.count = count ;
+            this.from = from ;
+            this.to = to ;
+            this.into = into ;
+        }
+
+        @Override
+        protected int[] compute() {
+            if( (long)( to - from ) * count > PARALLEL_SAMPLES / 2 && to - from > 1 ) {
+                int mid = ( from + to ) >>> 1 ;
+                RayTask left = new RayTask( image, cx, cy, radius, cos, sin, count, from, mid, null ) ;
+                left.fork() ;
+                int[] right = new RayTask( image, cx, cy, radius, cos, sin, count, mid, to, null ).compute() ;
+                int[] sums = left.join() ;
+                for( int i = 0 ; i < sums.length ; i++ ) {
+                    sums[ i ] += right[ i ] ;
+                }
+                return sums ;
+            }
+            int[] sums = into != null ? into : new int[ count * 5 ] ;
+            for( int k = from ; k < to ; k++ ) {
+                for( int i = 0 ; i < count ; i++ ) {
+                    double t = radius * i / ( count - 1 ) ;
+                    double x = cx + cos[ k ] * t ;
+                    double y = cy + sin[ k ] * t ;
+                    // The image is convex, so once a ray leaves it, it stays out
+                    if( !image.contains( x, y ) ) {
+                        break ;
+                    }
+                    int c = mode.sample( image, x, y ) ;
+                    sums[ i * 5     ] += ( c >>> 24 ) ;
+                    sums[ i * 5 + 1 ] += ( c >> 16 ) & 0xFF ;
+                    sums[ i * 5 + 2 ] += ( c >> 8  ) & 0xFF ;
+                    sums[ i * 5 + 3 ] += ( c       ) & 0xFF ;
+                    sums[ i * 5 + 4 ]++ ;
+                }
+            }
+            return sums ;
+        }
+    }
+
+    // The direction of each of a number of evenly spaced rays
+    private static final class Angles {
+        final double[] cos ;
+        final double[] sin ;
+
+        Angles( int rays ) {
+            cos = new double[ rays ] ;
+            sin = new double[ rays ] ;
+            for( int k = 0 ; k < rays ; k++ ) {
+                double angle = 2 * Math.PI * k / rays ;
+                cos[ k ] = Math.cos( angle ) ;
+                sin[ k ] = Math.sin( angle ) ;
+            }
+        }
+    }
+
+    static int average( int a, int r, int g, int b, int n ) {
+        int round = n / 2 ;
+        return ( ( ( a + round ) / n ) << 24 ) |
+               ( ( ( r + round ) / n ) << 16 ) |
+               ( ( ( g + round ) / n ) << 8  ) |
+               ( ( ( b + round ) / n )       ) ;
+    }
+
+    // Breshenham integer line drawing to get the pixels between two points
+    static void bresenham( PixelSource image, int x1, int y1, int x2, int y2, SampleBuffer out ) {
+        int dx = Math.abs( x2 - x1 ) ;
+        int sx = x1 < x2 ? 1 : -1 ;
+        int dy = Math.abs( y2 - y1 ) ;
+        int sy = y1 < y2 ? 1 : -1 ;
+        int err = ( dx > dy ? dx : -dy ) / 2 ;
+        int e2 ;
+
+        // Index a decoded or mapped buffer directly, rather than through the interface
+        final int[] pixels = image instanceof ImageBuffer ? ( (ImageBuffer)image ).getPixels() : null ;
+        final IntBuffer mapped = image instanceof MappedImage ? ( (MappedImage)image ).buffer() : null ;
+        final int width = image.getWidth() ;
+
+        out.ensureCapacity( out.size() + Math.max( dx, dy ) + 1 ) ;
+        while( true ) {
+            out.add( pixels != null ? pixels[ y1 * width + x1 ] : mapped != null ? mapped.get( y1 * width + x1 ) : image.getArgb( x1, y1 ) ) ;
+            if( x1 == x2 && y1 == y2 ) break ;
+            e2 = err ;
+            if( e2 > -dx ) {
+                err -= dy ;
+                x1 += sx ;
+            }
+            if( e2 < dy ) {
+                err += dx ;
+                y1 += sy ;
+            }
+        }
+    }
+}
@@ -16,39 +16,57 @@
 
 package com.bloidonia.fxtools.gradient;
 
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
 import javafx.fxml.Initializable;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import javax.imageio.ImageIO;
 
 /**
@@ -66,30 +84,107 @@ public class MainAppController implements Initializable {
     @FXML private GraphPane graph ;
     @FXML private Slider threshold ;
     @FXML private Label thresholdValue ;
+    @FXML private ChoiceBox<StopMode> stopMode ;
+    @FXML private Spinner<Integer> maxStops ;
+    @FXML private ChoiceBox<ErrorMetric> errorMetric ;
+    @FXML private Label fitError ;
+    @FXML private ChoiceBox<SampleMode> sampleMode ;
+    @FXML private Spinner<Integer> bandWidth ;
+    @FXML private ChoiceBox<DetectionMode> detectionMode ;
+    @FXML private Label stats ;
+    @FXML private ChoiceBox<GradientFormat> codeFormat ;
+    @FXML private ChoiceBox<ExtractionPath.Shape> pathShape ;
+    @FXML private CheckBox showMetrics ;
+    @FXML private Label metricsOverlay ;
+    @FXML private ScrollPane imageScroll ;
 
     GraphicsContext gc = null ;
     private double startX;
     private double startY;
     private double endX;
     private double endY;
-    private static final String FOUR_SPACES = "    " ;
-    private static final String TWENTYONE_SPACES = "                     " ;
-    
-    private final ObservableList<RGB> pixelList = FXCollections.observableArrayList() ;
-    private final ObservableList<Integer> peakList = FXCollections.observableArrayList() ;
-    private ListProperty<RGB> pixelProperty ;
-    private ListProperty<Integer> peakProperty ;
+    // The polyline's fixed points, in view coordinates
+    private double[] vertices = new double[ 0 ] ;
+    private boolean dragging ;
+    private boolean moved ;
+    private boolean radial ;
+    // Gradients found by a scan, shown over the image until the next drag
+    private List<GradientScanner.Region> regions = Collections.emptyList() ;
+    private GradientScanner.Region selected ;
+
+    private final ObjectProperty<ColorStrip> strip = new SimpleObjectProperty<>( ColorStrip.EMPTY ) ;
+
+    // Past this many pixels, images are read a tile at a time behind a subsampled preview
+    private static final long TILED_PIXELS = Long.getLong( "gradient.tiledPixels", 4096L * 4096L ) ;
+    private static final long TILE_CACHE_BYTES = Long.getLong( "gradient.tileCacheBytes", 64L << 20 ) ;
+    private static final long PREVIEW_PIXELS = 2048L * 2048L ;
+    // Decoded images are kept on disk here, when a directory is given, up to this many bytes
+    private static final String PIXEL_CACHE_DIR = System.getProperty( "gradient.cacheDir" ) ;
+    private static final long PIXEL_CACHE_BYTES = Long.getLong( "gradient.cacheBytes", 512L << 20 ) ;
+    private static final int RESULT_CACHE_ENTRIES = Integer.getInteger( "gradient.resultCacheEntries", 256 ) ;
+    // Each gradient drawn is added to this index when the mouse is released (empty turns it off)
+    private static final String GRADIENT_INDEX = System.getProperty( "gradient.index", GradientIndex.DEFAULT_FILE.toString() ) ;
+    private static final int SIMILAR_MATCHES = 10 ;
+
+    private PixelSource image ;
+    private File imageFile ;
+    // Image pixels per pixel of imageView
+    private double viewScale = 1 ;
+    // The image as first shown, the preview for tiled images, with baseScale image pixels to each of its own
+    private Image baseImage ;
+    private double baseScale = 1 ;
+    // Pixels of imageView per pixel of baseImage, changed with ctrl+scroll
+    private double zoom = 1 ;
+    private MipmapPyramid pyramid ;
+    private Image[] levelImages ;
+    private boolean panning ;
+    private double panX ;
+    private double panY ;
+    private static final double ZOOM_STEP = 1.25 ;
+    private static final double MIN_ZOOM = 1 / 64.0 ;
+    // Most view pixels per image pixel
+    private static final double MAX_ZOOM = 32 ;
+    private final GradientStops stops = new GradientStops() ;
+    private final StringBuilder text = new StringBuilder() ;
+    private String shownCss = "" ;
+    private String shownCode = "" ;
+    private final PixelCache pixelCache = PIXEL_CACHE_DIR != null && PIXEL_CACHE_BYTES > 0 ? new PixelCache( Paths.get( PIXEL_CACHE_DIR ), PIXEL_CACHE_BYTES ) : null ;
+    private final ResultCache results = new ResultCache( RESULT_CACHE_ENTRIES ) ;
+    // Read in the background, as a big index takes a moment to load
+    private final CompletableFuture<GradientIndex> gradientIndex = GRADIENT_INDEX.isEmpty() ? null : CompletableFuture.supplyAsync( () -> {
+        try {
+            return GradientIndex.open( Paths.get( GRADIENT_INDEX ) ) ;
+        }
+        catch( IOException ex ) {
+            throw new UncheckedIOException( ex ) ;
+        }
+    } ) ;
+    // Set on release, so the result of the finished drag goes into the index
+    private boolean indexNext ;
+    private ExtractionPipeline.Result shownResult ;
+    private final ExtractionPipeline pipeline = new ExtractionPipeline( Platform::runLater, this::showResult, new ExtractionStats(), results ) ;
+    // Set with -Dgradient.recordDrags=file, for ReplayTool
+    private final DragRecording recording = DragRecording.fromProperty() ;
+    private final Timeline metricsRefresh = new Timeline( new KeyFrame( Duration.millis( 500 ), e -> showMetrics() ) ) ;
+    private LineSampler sampler = new LineSampler( SampleMode.PIXEL ) ;
 
     @FXML
     private void handleButtonAction( ActionEvent event ) {
         final FileChooser fileChooser = new FileChooser();
         FileChooser.ExtensionFilter extFilterPNG = new FileChooser.ExtensionFilter("PNG files (*.png)", "*.PNG");
         FileChooser.ExtensionFilter extFilterJPG = new FileChooser.ExtensionFilter("JPG files (*.jpg)", "*.JPG");
-        fileChooser.getExtensionFilters().addAll(extFilterPNG, extFilterJPG);
+        FileChooser.ExtensionFilter extFilterGIF = new FileChooser.ExtensionFilter("GIF files (*.gif)", "*.GIF");
+        fileChooser.getExtensionFilters().addAll(extFilterPNG, extFilterJPG, extFilterGIF);
         final File file = fileChooser.showOpenDialog( rootPane.getScene().getWindow() ) ;
-             
+        // Cancelled, so keep the image there is
+        if( file == null ) {
+            return ;
+        }
         try {
-            imageView.setImage( loadFXImage( file ) ) ;
+            loadImage( file ) ;
+            if( recording != null ) {
+                recording.image( file.toPath() ) ;
+            }
             canvas.setWidth( imageView.getImage().getWidth() ) ;
             canvas.setHeight( imageView.getImage().getHeight() ) ;
             clearCanvas() ;
@@ -101,32 +196,366 @@ public class MainAppController implements Initializable {
         }
     }
 
-    public ObservableList<RGB> getPixels() {
-        return pixelList ;
+    /**
+     * @return a view of the colors along the current line
+     */
+    public List<RGB> getPixels() {
+        return getStrip().getColors() ;
+    }
+
+    /**
+     * @return a view of the peaks in the current line
+     */
+    public List<Integer> getPeaks() {
+        return getStrip().getPeaks() ;
+    }
+
+    public ColorStrip getStrip() {
+        return strip.get() ;
+    }
+
+    public ObjectProperty<ColorStrip> stripProperty() {
+        return strip ;
+    }
+
+    // The new image is opened before the current one is let go, so a file that can't be read leaves things as they were
+    private void loadImage( File file ) throws IOException {
+        PixelSource loaded ;
+        Image shown ;
+        double scale = 1 ;
+        PixelSource base ;
+        if( TiledImage.pixelCount( file ) > TILED_PIXELS ) {
+            TiledImage tiled = new TiledImage( file, TiledImage.DEFAULT_TILE_SIZE, TILE_CACHE_BYTES ) ;
+            try {
+                int factor = tiled.previewFactor( PREVIEW_PIXELS ) ;
+                BufferedImage preview = tiled.preview( factor ) ;
+                shown = SwingFXUtils.toFXImage( preview, null ) ;
+                scale = factor ;
+                base = ImageBuffer.fromBufferedImage( preview ) ;
+            }
+            catch( IOException | RuntimeException ex ) {
+                tiled.close() ;
+                throw ex ;
+            }
+            loaded = tiled ;
+        }
+        else if( pixelCache != null ) {
+            MappedImage mapped = pixelCache.load( file ) ;
+            shown = toFXImage( mapped ) ;
+            loaded = mapped ;
+            base = mapped ;
+            stats.setText( pixelCache.summary() ) ;
+        }
+        else {
+            shown = loadFXImage( file ) ;
+            loaded = toImageBuffer( shown ) ;
+            base = loaded ;
+        }
+
+        if( image instanceof Closeable ) {
+            ( (Closeable)image ).close() ;
+        }
+        // Results for cached images are found again by digest, others can go
+        if( image != null && !( image instanceof MappedImage ) ) {
+            results.remove( image ) ;
+        }
+        image = loaded ;
+        imageFile = file ;
+        viewScale = scale ;
+        regions = Collections.emptyList() ;
+        imageView.setImage( shown ) ;
+        baseImage = shown ;
+        baseScale = viewScale ;
+        zoom = 1 ;
+        showLevel() ;
+        buildPyramid( base ) ;
+    }
+
+    // Builds the zoomed out levels in the background; until then the view scales the base image
+    private void buildPyramid( PixelSource base ) {
+        pyramid = null ;
+        levelImages = null ;
+        final PixelSource source = image ;
+        CompletableFuture.supplyAsync( () -> MipmapPyramid.build( base, ForkJoinPool.commonPool() ) ).whenComplete( (built, ex) -> Platform.runLater( () -> {
+            if( ex != null ) {
+                Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Could not build the pyramid", ex ) ;
+            }
+            else if( source == image ) {
+                pyramid = built ;
+                levelImages = new Image[ built.levels() ] ;
+                levelImages[ 0 ] = baseImage ;
+                Logger.getLogger( MainAppController.class.getName() ).info( built.summary() + "\n" + built.report() ) ;
+                stats.setText( built.summary() ) ;
+                showLevel() ;
+            }
+        } ) ) ;
+    }
+
+    // Shows the pyramid level for the zoom, at the zoomed size
+    private void showLevel() {
+        int level = pyramid == null ? 0 : pyramid.levelFor( 1 / zoom ) ;
+        if( levelImages != null && levelImages[ level ] == null ) {
+            levelImages[ level ] = toFXImage( (ImageBuffer)pyramid.getLevel( level ) ) ;
+        }
+        imageView.setImage( levelImages == null ? baseImage : levelImages[ level ] ) ;
+        double w = baseImage.getWidth() * zoom ;
+        double h = baseImage.getHeight() * zoom ;
+        imageView.setFitWidth( w ) ;
+        imageView.setFitHeight( h ) ;
+        // Pixels stay sharp when zoomed in, so a drag can start on the one wanted
+        imageView.setSmooth( zoom < 1 ) ;
+        canvas.setWidth( w ) ;
+        canvas.setHeight( h ) ;
+    }
+
+    // Zooms about the point (x, y) of the view, keeping it where it is in the viewport
+    private void zoomBy( double factor, double x, double y ) {
+        double next = Math.max( MIN_ZOOM, Math.min( MAX_ZOOM * baseScale, zoom * factor ) ) ;
+        if( baseImage == null || next == zoom ) {
+            return ;
+        }
+        double k = next / zoom ;
+        Bounds viewport = imageScroll.getViewportBounds() ;
+        double left = x - imageScroll.getHvalue() * Math.max( 0, canvas.getWidth() - viewport.getWidth() ) ;
+        double top = y - imageScroll.getVvalue() * Math.max( 0, canvas.getHeight() - viewport.getHeight() ) ;
+
+        zoom = next ;
+        viewScale = baseScale / zoom ;
+        startX *= k ;
+        startY *= k ;
+        endX *= k ;
+        endY *= k ;
+        for( int i = 0 ; i < vertices.length ; i++ ) {
+            vertices[ i ] *= k ;
+        }
+        showLevel() ;
+        imageScroll.layout() ;
+        imageScroll.setHvalue( scrollValue( x * k - left, canvas.getWidth() - viewport.getWidth() ) ) ;
+        imageScroll.setVvalue( scrollValue( y * k - top, canvas.getHeight() - viewport.getHeight() ) ) ;
+
+        if( startX != 0.0 ) {
+            drawPath( currentPath() ) ;
+        }
+        else {
+            clearCanvas() ;
+        }
+        drawRegions() ;
+        stats.setText( String.format( "zoom %.0f%%  level %d", 100 / viewScale, pyramid == null ? 0 : pyramid.levelFor( 1 / zoom ) ) ) ;
+    }
+
+    private void pan( MouseEvent event ) {
+        Bounds viewport = imageScroll.getViewportBounds() ;
+        double extraWidth = canvas.getWidth() - viewport.getWidth() ;
+        double extraHeight = canvas.getHeight() - viewport.getHeight() ;
+        if( extraWidth > 0 ) {
+            imageScroll.setHvalue( scrollValue( imageScroll.getHvalue() * extraWidth - ( event.getSceneX() - panX ), extraWidth ) ) ;
+        }
+        if( extraHeight > 0 ) {
+            imageScroll.setVvalue( scrollValue( imageScroll.getVvalue() * extraHeight - ( event.getSceneY() - panY ), extraHeight ) ) ;
+        }
+        panX = event.getSceneX() ;
+        panY = event.getSceneY() ;
+    }
+
+    // The scroll position that puts offset at the left (or top) of the viewport
+    private static double scrollValue( double offset, double extra ) {
+        return extra <= 0 ? 0 : Math.max( 0, Math.min( 1, offset / extra ) ) ;
+    }
+
+    private static Image toFXImage( ImageBuffer buffer ) {
+        WritableImage fxImage = new WritableImage( buffer.getWidth(), buffer.getHeight() ) ;
+        fxImage.getPixelWriter().setPixels( 0, 0, buffer.getWidth(), buffer.getHeight(),
+                                            PixelFormat.getIntArgbInstance(), buffer.getPixels(), 0, buffer.getWidth() ) ;
+        return fxImage ;
     }
 
-    public ListProperty<RGB> pixelsProperty() {
-        if( pixelProperty == null ) {
-            pixelProperty = new SimpleListProperty( pixelList ) ;
+    private static Image toFXImage( MappedImage mapped ) {
+        WritableImage fxImage = new WritableImage( mapped.getWidth(), mapped.getHeight() ) ;
+        fxImage.getPixelWriter().setPixels( 0, 0, mapped.getWidth(), mapped.getHeight(),
+                                            PixelFormat.getIntArgbInstance(), mapped.getPixels(), mapped.getWidth() ) ;
+        return fxImage ;
+    }
+
+    @FXML
+    private void handleScanAction( ActionEvent event ) {
+        if( image == null ) {
+            return ;
         }
-        return pixelProperty ;
+        final PixelSource source = image ;
+        final GradientScanner scanner = new GradientScanner( GradientScanner.DEFAULT_TILE_SIZE, sampler, peakFinder() ) ;
+        final long start = System.nanoTime() ;
+        stats.setText( "Scanning..." ) ;
+        CompletableFuture.supplyAsync( () -> scanner.scan( source ) ).whenComplete( (found, ex) -> Platform.runLater( () -> {
+            if( ex != null ) {
+                Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Scan failed", ex ) ;
+                stats.setText( "Scan failed" ) ;
+            }
+            else if( source == image ) {
+                stats.setText( String.format( "%d gradients found in %.0fms", found.size(), ( System.nanoTime() - start ) / 1e6 ) ) ;
+                regions = found ;
+                selected = null ;
+                clearCanvas() ;
+                drawRegions() ;
+            }
+        } ) ) ;
     }
 
-    public ObservableList<Integer> getPeaks() {
-        return peakList ;
+    // Saves the current path and settings next to the image, for FolderWatcher
+    @FXML
+    private void handleSaveLineAction( ActionEvent event ) {
+        if( image == null || imageFile == null ) {
+            return ;
+        }
+        ExtractionPath path = currentPath().scaled( viewScale ) ;
+        if( !path.isInside( image ) ) {
+            return ;
+        }
+        Path sidecar = SavedLine.sidecarFor( imageFile.toPath() ) ;
+        try {
+            SavedLine.append( sidecar, new SavedLine( path, sampler, peakFinder() ) ) ;
+            stats.setText( "Saved to " + sidecar.getFileName() ) ;
+        }
+        catch( IOException ex ) {
+            Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Could not save line to " + sidecar, ex ) ;
+            stats.setText( "Could not save line" ) ;
+        }
     }
 
-    public ListProperty<Integer> peaksProperty() {
-        if( peakProperty == null ) {
-            peakProperty = new SimpleListProperty<>( peakList ) ;
+    // Runs the current path over every frame of an animated image, showing keyframes for the result
+    @FXML
+    private void handleFramesAction( ActionEvent event ) {
+        if( image == null ) {
+            return ;
         }
-        return peakProperty ;
+        final ExtractionPath path = currentPath().scaled( viewScale ) ;
+        if( !path.isInside( image ) ) {
+            return ;
+        }
+        final File file = imageFile ;
+        final FrameExtractor extractor = new FrameExtractor( sampler, peakFinder(), FrameExtractor.DEFAULT_WINDOW ) ;
+        final boolean radialPath = path.getShape() == ExtractionPath.Shape.RADIAL ;
+        final long start = System.nanoTime() ;
+        stats.setText( "Extracting frames..." ) ;
+        CompletableFuture.supplyAsync( () -> {
+            List<FrameExtractor.FrameResult> frames = new ArrayList<>() ;
+            try {
+                extractor.extract( file, path, ForkJoinPool.commonPool(), frames::add ) ;
+            }
+            catch( IOException ex ) {
+                throw new UncheckedIOException( ex ) ;
+            }
+            return frames ;
+        } ).whenComplete( (frames, ex) -> Platform.runLater( () -> {
+            if( ex != null ) {
+                Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Frame extraction failed", ex ) ;
+                stats.setText( "Frame extraction failed" ) ;
+            }
+            else if( file == imageFile ) {
+                stats.setText( String.format( "%d frames extracted in %.0fms", frames.size(), ( System.nanoTime() - start ) / 1e6 ) ) ;
+                shownCss = FrameExtractor.toKeyframes( frames, radialPath ) ;
+                cssOutput.setText( shownCss ) ;
+            }
+        } ) ) ;
+    }
+
+    // Shows the gradients in the index closest to the current one, either way round
+    @FXML
+    private void handleFindSimilarAction( ActionEvent event ) {
+        ColorStrip current = getStrip() ;
+        if( gradientIndex == null || current.peakCount() == 0 ) {
+            return ;
+        }
+        final GradientStops query = GradientStops.fromPeaks( current.argb(), current.size(), current.peaks() ).setRadial( radial ) ;
+        final long[] took = new long[ 1 ] ;
+        stats.setText( "Searching..." ) ;
+        gradientIndex.thenApplyAsync( index -> {
+            long start = System.nanoTime() ;
+            List<GradientIndex.Match> matches = index.nearest( query, SIMILAR_MATCHES ) ;
+            took[ 0 ] = System.nanoTime() - start ;
+            return matches ;
+        } ).whenComplete( (matches, ex) -> Platform.runLater( () -> {
+            if( ex != null ) {
+                Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Search failed", ex ) ;
+                stats.setText( "Search failed" ) ;
+            }
+            else {
+                stats.setText( String.format( "%d similar gradients found in %.1fms", matches.size(), took[ 0 ] / 1e6 ) ) ;
+                shownCss = GradientIndex.toCss( matches ) ;
+                cssOutput.setText( shownCss ) ;
+            }
+        } ) ) ;
+    }
+
+    private void addToIndex( ExtractionPath path ) {
+        ColorStrip current = getStrip() ;
+        if( current.peakCount() == 0 ) {
+            return ;
+        }
+        final GradientStops gradient = GradientStops.fromPeaks( current.argb(), current.size(), current.peaks() ).setRadial( radial ) ;
+        final String label = GradientIndex.label( imageFile == null ? "image" : imageFile.getPath(), path ) ;
+        gradientIndex.thenAcceptAsync( index -> {
+            try {
+                index.add( label, gradient ) ;
+            }
+            catch( IOException ex ) {
+                Logger.getLogger( MainAppController.class.getName() ).log( Level.WARNING, "Could not add to " + index.getFile(), ex ) ;
+            }
+        } ) ;
+    }
+
+    private void drawRegions() {
+        ensureGC() ;
+        gc.save() ;
+        gc.setLineWidth( 1 ) ;
+        for( GradientScanner.Region region : regions ) {
+            gc.setStroke( region == selected ? Color.RED : Color.YELLOW ) ;
+            gc.strokeRect( region.getX() / viewScale, region.getY() / viewScale,
+                           region.getWidth() / viewScale, region.getHeight() / viewScale ) ;
+            if( region != selected ) {
+                ExtractionPath path = region.getPath().scaled( 1 / viewScale ) ;
+                gc.setLineDashes( 4 ) ;
+                gc.strokeLine( path.getX( 0 ), path.getY( 0 ), path.getX( 1 ), path.getY( 1 ) ) ;
+                gc.setLineDashes( null ) ;
+            }
+        }
+        gc.restore() ;
+    }
+
+    // Picks the smallest region under the point, in view coordinates
+    private void selectRegion( double x, double y ) {
+        GradientScanner.Region hit = null ;
+        for( GradientScanner.Region region : regions ) {
+            if( region.contains( x * viewScale, y * viewScale ) && ( hit == null || region.getTiles() < hit.getTiles() ) ) {
+                hit = region ;
+            }
+        }
+        if( hit == null ) {
+            return ;
+        }
+        selected = hit ;
+        ExtractionPath path = hit.getPath().scaled( 1 / viewScale ) ;
+        startX = path.getX( 0 ) ;
+        startY = path.getY( 0 ) ;
+        endX = path.getX( 1 ) ;
+        endY = path.getY( 1 ) ;
+        pathShape.setValue( ExtractionPath.Shape.LINE ) ;
+        drawPath( currentPath() ) ;
+        drawRegions() ;
+        generateCss( currentPath() ) ;
     }
 
     private Image loadFXImage( File file ) throws IOException {
         return SwingFXUtils.toFXImage( ImageIO.read( file ), null );
     }
 
+    private static ImageBuffer toImageBuffer( Image fxImage ) {
+        int w = (int)fxImage.getWidth() ;
+        int h = (int)fxImage.getHeight() ;
+        int[] argb = new int[ w * h ] ;
+        fxImage.getPixelReader().getPixels( 0, 0, w, h, WritablePixelFormat.getIntArgbInstance(), argb, 0, w ) ;
+        return new ImageBuffer( w, h, argb ) ;
+    }
+
     private void ensureGC() {
         if( gc == null ) {
             gc = canvas.getGraphicsContext2D() ;
@@ -142,140 +571,202 @@ public class MainAppController implements Initializable {
         ensureGC() ;
         gc.strokeLine( startX, startY, x, y ) ;
     } 
-    
-    // Breshenham integer line drawing to get the pixels between two points
-    // This needs improving to deal with sub-pixels    
-    private List<RGB> pixelsInLine( int x1, int y1, int x2, int y2 ) {
-        int dx = (int)Math.abs( x2 - x1 ) ;
-        int sx = x1 < x2 ? 1 : -1 ;
-        int dy = (int)Math.abs( y2 - y1 ) ;
-        int sy = y1 < y2 ? 1 : -1 ;
-        int err = ( dx > dy ? dx : -dy ) / 2 ;
-        int e2 ;
-
-        PixelReader pr = imageView.getImage().getPixelReader() ;
-        
-        List<RGB> colors = new ArrayList<>() ;
-        while( true ) {
-            Color color = pr.getColor( x1, y1 ) ;
-            RGB icolor = RGB.fromFX( color ) ;
-            colors.add( icolor ) ;
-            if( x1 == x2 && y1 == y2 ) break ;
-            e2 = err ;
-            if( e2 > -dx ) {
-                err -= dy ;
-                x1 += sx ;
-            }
-            if( e2 < dy ) {
-                err += dx ;
-                y1 += sy ;
-            }
+
+    private void drawPath( ExtractionPath path ) {
+        clearCanvas() ;
+        if( path.getShape() == ExtractionPath.Shape.RADIAL ) {
+            double r = path.getRadius() ;
+            gc.strokeOval( startX - r, startY - r, r * 2, r * 2 ) ;
+            lineTo( endX, endY ) ;
+            return ;
+        }
+        for( int i = 1 ; i < path.pointCount() ; i++ ) {
+            gc.strokeLine( path.getX( i - 1 ), path.getY( i - 1 ), path.getX( i ), path.getY( i ) ) ;
+        }
+    }
+
+    // The path being drawn, in view coordinates
+    private ExtractionPath currentPath() {
+        switch( pathShape.getValue() ) {
+            case RADIAL :
+                return ExtractionPath.radial( startX, startY, endX, endY ) ;
+            case POLYLINE :
+                if( !dragging ) {
+                    return ExtractionPath.polyline( vertices ) ;
+                }
+                double[] points = Arrays.copyOf( vertices, vertices.length + 2 ) ;
+                points[ vertices.length ] = endX ;
+                points[ vertices.length + 1 ] = endY ;
+                return ExtractionPath.polyline( points ) ;
+            default :
+                return ExtractionPath.line( startX, startY, endX, endY ) ;
         }
-        return colors ;
-    }
-
-    class Location {
-        private final Integer location ;
-        private final List<RGB> pixels ;
-        
-        public Location( Integer location, List<RGB> pixels ) {
-            this.location = location ;
-            this.pixels = pixels ;
-        }
-        
-        public Integer getLocation() { return location ; }
-        public List<RGB> getPixels() { return pixels ; }
-        @Override
-        public String toString() { return String.format( "[%d:%s]", location, pixels.toString() ) ; }
-    }
-
-    private List<Integer> findPeaks( List<RGB> colors ) {
-        final float THRESHOLD = threshold.valueProperty().floatValue() ;
-
-        return Stream.concat( Stream.of( 0 ),
-                                  Stream.iterate( 0, i -> i + 1 )
-                                        .limit( Math.max( colors.size() - 2, 0 ) )
-                                        .map( i -> new Location( i, colors.stream().skip( i ).limit( 3 ).collect( Collectors.toList() ) ) )
-                                        .filter( (Location l) -> {
-                                            float dr = l.getPixels().get( 0 ).getR() + ( ( l.getPixels().get( 2 ).getR() - l.getPixels().get( 0 ).getR() ) * 0.5f ) ;
-                                            float dg = l.getPixels().get( 0 ).getG() + ( ( l.getPixels().get( 2 ).getG() - l.getPixels().get( 0 ).getG() ) * 0.5f ) ;
-                                            float db = l.getPixels().get( 0 ).getB() + ( ( l.getPixels().get( 2 ).getB() - l.getPixels().get( 0 ).getB() ) * 0.5f ) ;
-                                            return Math.abs( l.getPixels().get( 1 ).getR() - dr ) > THRESHOLD ||
-                                                   Math.abs( l.getPixels().get( 1 ).getG() - dg ) > THRESHOLD ||
-                                                   Math.abs( l.getPixels().get( 1 ).getB() - db ) > THRESHOLD ;
-                                        } )
-                                        .map( l -> l.getLocation() ) ).collect( Collectors.toList() ) ;
-    }
-
-    private String buildCss( List<RGB> colors, List<Integer> peaks ) {
-        return peaks.stream()
-             .limit( Math.max( peaks.size() - 1, 1 ) )
-             .map( (pos) ->
-                 String.format( "%s#%s %.2f%%,\n",
-                                TWENTYONE_SPACES,
-                                colors.get( pos ).toString(),
-                                ( (double)pos / colors.size() ) * 100.0d ) )
-             .reduce( String.format( "-fx-background-color:\n%slinear-gradient( to right,\n",
-                                     FOUR_SPACES ),
-                      (a, b) -> a.concat( b ) )
-             .concat( String.format( "%s#%s 100%% )",
-                                     TWENTYONE_SPACES,
-                                     colors.get( colors.size() - 1 ).toString() ) ) ;
-    }
-
-    private String buildCode( List<RGB> colors, List<Integer> peaks ) {
-        return peaks.stream()
-             .map( (pos) ->
-                 String.format( "    new Stop(%.3f, Color.web(\"#%s\") ),\n",
-                                ( (double)pos / colors.size() ),
-                                colors.get( pos ).toString() ) )
-             .reduce( String.format( "Stop[] stops = new Stop[] {\n",
-                                     FOUR_SPACES ),
-                      (a, b) -> a.concat( b ) )
-             .concat( String.format( "    new Stop(1, Color.web(\"#%s\") )\n",
-                                     colors.get( colors.size() - 1 ).toString() ) )
-             .concat( "} ;\n" )
-             .concat( "LinearGradient g = new LinearGradient( 0, 0, 1, 0, true, CycleMethod.NO_CYCLE, stops ) ;" ) ;
-    }
-
-    private void generateCss( double x1, double y1, double x2, double y2 ) {
-        if( x2 < 0 || x2 >= imageView.getImage().getWidth() ||
-            y2 < 0 || y2 >= imageView.getImage().getHeight() ) {
+    }
+
+    private void generateCss( ExtractionPath path ) {
+        path = path.scaled( viewScale ) ;
+        if( image == null || !path.isInside( image ) ) {
             return ;
         }
-        pixelsProperty().setAll( pixelsInLine( (int)x1, (int)y1, (int)x2, (int)y2 ) ) ;
-        peakList.setAll( findPeaks( pixelList ) ) ;
+        pipeline.submit( new ExtractionPipeline.Request( image, sampler, path, peakFinder() ) ) ;
+    }
+
+    private PeakFinder peakFinder() {
+        return new PeakFinder( stopMode.getValue(),
+                               threshold.valueProperty().floatValue(),
+                               maxStops.getValue(),
+                               errorMetric.getValue(),
+                               detectionMode.getValue() ) ;
+    }
+
+    private void regenerate() {
+        if( startX != 0.0 ) {
+            generateCss( currentPath() ) ;
+        }
+    }
+
+    private void showResult( ExtractionPipeline.Result result ) {
+        radial = result.getRequest().getPath().getShape() == ExtractionPath.Shape.RADIAL ;
+        strip.set( result.getStrip() ) ;
+        if( indexNext && !dragging ) {
+            indexNext = false ;
+            addToIndex( result.getRequest().getPath() ) ;
+        }
+        shownResult = result ;
+        // Measuring the fit costs a pass over the samples, so wait for the slider to be let go
+        if( !threshold.isValueChanging() ) {
+            showFit( result ) ;
+        }
+        showThreshold( result ) ;
+        stats.setText( pipeline.getStats().summary() + "  " + results.summary() ) ;
     }
     
+    private void showFit( ExtractionPipeline.Result result ) {
+        fitError.setText( String.format( "%s: %.2f", result.getRequest().getFinder().getMetric(), result.getError() ) ) ;
+    }
+
+    // With a target stop count, the slider follows the threshold that count works out to,
+    // so switching back to the threshold mode keeps the same stops
+    private void showThreshold( ExtractionPipeline.Result result ) {
+        float effective = result.getThreshold() ;
+        if( result.getRequest().getFinder().getMode() != StopMode.TARGET_COUNT || Float.isNaN( effective ) ) {
+            return ;
+        }
+        if( effective < 0 ) {
+            thresholdValue.setText( "all" ) ;
+            return ;
+        }
+        threshold.setValue( effective ) ;
+        thresholdValue.setText( String.format( "%1.2f", effective ) ) ;
+    }
+
     @FXML private void handlePressedAction( MouseEvent event ) {
-        clearCanvas() ;
+        // Any other button pans
+        if( !event.isPrimaryButtonDown() ) {
+            panning = true ;
+            panX = event.getSceneX() ;
+            panY = event.getSceneY() ;
+            return ;
+        }
+        if( regions.isEmpty() ) {
+            clearCanvas() ;
+        }
         startX = event.getX() ;
         startY = event.getY() ;
+        // Shift carries a polyline on from its last point, otherwise it starts again here
+        if( pathShape.getValue() == ExtractionPath.Shape.POLYLINE ) {
+            if( event.isShiftDown() && vertices.length >= 2 ) {
+                startX = vertices[ vertices.length - 2 ] ;
+                startY = vertices[ vertices.length - 1 ] ;
+            }
+            else {
+                vertices = new double[] { startX, startY } ;
+            }
+        }
+        dragging = true ;
+        moved = false ;
+        record( "press", event ) ;
+    }
+
+    private void record( String type, MouseEvent event ) {
+        if( recording != null ) {
+            recording.event( type, event.getX() * viewScale, event.getY() * viewScale ) ;
+        }
+    }
+
+    private void showMetrics() {
+        metricsOverlay.setText( pyramid == null ? pipeline.getStats().report() : pipeline.getStats().report() + "\n" + pyramid.report() ) ;
     }
 
     @FXML private void handleDragAction( MouseEvent event ) {
-        clearCanvas() ;
+        if( panning ) {
+            pan( event ) ;
+            return ;
+        }
+        // Drawing a path by hand puts the scan results away
+        regions = Collections.emptyList() ;
+        moved = true ;
+        record( "drag", event ) ;
         endX = event.getX() ;
         endY = event.getY() ;
-        lineTo( endX, endY ) ;
-        generateCss( startX, startY, endX, endY ) ;
+        ExtractionPath path = currentPath() ;
+        drawPath( path ) ;
+        generateCss( path ) ;
     }
 
     @FXML private void handleReleasedAction( MouseEvent event ) {
-        generateCss( startX, startY, event.getX(), event.getY() ) ;
+        if( panning ) {
+            panning = false ;
+            return ;
+        }
+        record( "release", event ) ;
+        if( !moved && !regions.isEmpty() ) {
+            dragging = false ;
+            selectRegion( event.getX(), event.getY() ) ;
+            return ;
+        }
+        endX = event.getX() ;
+        endY = event.getY() ;
+        ExtractionPath path = currentPath() ;
+        dragging = false ;
+        if( path.getShape() == ExtractionPath.Shape.POLYLINE && ( endX != startX || endY != startY ) ) {
+            vertices = Arrays.copyOf( vertices, vertices.length + 2 ) ;
+            vertices[ vertices.length - 2 ] = endX ;
+            vertices[ vertices.length - 1 ] = endY ;
+        }
+        generateCss( path ) ;
+        indexNext = gradientIndex != null ;
     }
 
-    void updateText( ObservableValue<? extends ObservableList<Integer>> a,
-              ObservableList<Integer> b,
-              ObservableList<Integer> peaks ) {
-        if( peakList.size() > 0 ) {
-            String css = buildCss( pixelList, peakList ) ;
-            cssOutput.setText( css ) ;
-            codeOutput.setText( buildCode( pixelList, peakList ) ) ;
-            previewPane.setStyle( css ) ;
-            cssOutput.requestFocus() ;
+    void updateText( ObservableValue<? extends ColorStrip> a,
+              ColorStrip b,
+              ColorStrip c ) {
+        long start = System.nanoTime() ;
+        writeText() ;
+        pipeline.getStats().record( ExtractionStats.Stage.EMIT, System.nanoTime() - start ) ;
+    }
+
+    private void writeText() {
+        ColorStrip current = getStrip() ;
+        if( current.peakCount() > 0 ) {
+            stops.setPeaks( current.argb(), current.size(), current.peaks() ).setRadial( radial ) ;
+            text.setLength( 0 ) ;
+            GradientFormat.CSS.write( stops, text ) ;
+            if( !shownCss.contentEquals( text ) ) {
+                shownCss = text.toString() ;
+                cssOutput.setText( shownCss ) ;
+                previewPane.setStyle( shownCss ) ;
+                cssOutput.requestFocus() ;
+            }
+            text.setLength( 0 ) ;
+            codeFormat.getValue().write( stops, text ) ;
+            if( !shownCode.contentEquals( text ) ) {
+                shownCode = text.toString() ;
+                codeOutput.setText( shownCode ) ;
+            }
         }
-        else {
+        else if( !shownCss.isEmpty() ) {
+            shownCss = "" ;
             cssOutput.setText( "" ) ;
             previewPane.setStyle( "" );
         }
@@ -283,12 +774,76 @@ public class MainAppController implements Initializable {
 
     @Override
     public void initialize( URL url, ResourceBundle rb ) {
-        peaksProperty().addListener( this::updateText ) ;
+        strip.addListener( this::updateText ) ;
+        // Ctrl+scroll zooms about the mouse, plain scrolling still scrolls
+        imageScroll.addEventFilter( ScrollEvent.SCROLL, event -> {
+            if( event.isControlDown() && event.getDeltaY() != 0 ) {
+                Point2D point = imageView.sceneToLocal( event.getSceneX(), event.getSceneY() ) ;
+                zoomBy( event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, point.getX(), point.getY() ) ;
+                event.consume() ;
+            }
+        } ) ;
+        graph.setStats( pipeline.getStats() ) ;
+        pixels.setStats( pipeline.getStats() ) ;
+        pipeline.getStats().register() ;
+        metricsRefresh.setCycleCount( Animation.INDEFINITE ) ;
+        metricsOverlay.visibleProperty().bind( showMetrics.selectedProperty() ) ;
+        showMetrics.selectedProperty().addListener( (o, oldV, newV) -> {
+            if( newV ) {
+                showMetrics() ;
+                metricsRefresh.play() ;
+            }
+            else {
+                metricsRefresh.stop() ;
+            }
+        } );
         threshold.valueProperty().addListener( (o, oldV, newV) -> {
             thresholdValue.setText( String.format( "%1.2f", newV ) ) ;
+            // Only the threshold mode uses it; in the others the slider just reports the result
+            if( stopMode.getValue() == StopMode.THRESHOLD ) {
+                regenerate() ;
+            }
+        } );
+        threshold.valueChangingProperty().addListener( (o, oldV, newV) -> {
+            if( !newV && shownResult != null ) {
+                showFit( shownResult ) ;
+            }
+        } );
+        stopMode.getItems().setAll( StopMode.values() ) ;
+        stopMode.setValue( StopMode.THRESHOLD ) ;
+        stopMode.valueProperty().addListener( (o, oldV, newV) -> regenerate() ) ;
+        maxStops.valueProperty().addListener( (o, oldV, newV) -> regenerate() ) ;
+        errorMetric.getItems().setAll( ErrorMetric.values() ) ;
+        errorMetric.setValue( ErrorMetric.MAX ) ;
+        errorMetric.valueProperty().addListener( (o, oldV, newV) -> regenerate() ) ;
+        detectionMode.getItems().setAll( DetectionMode.values() ) ;
+        detectionMode.setValue( DetectionMode.RGB ) ;
+        detectionMode.valueProperty().addListener( (o, oldV, newV) -> regenerate() ) ;
+        codeFormat.getItems().setAll( GradientFormat.JAVA, GradientFormat.SVG, GradientFormat.JSON ) ;
+        codeFormat.setValue( GradientFormat.JAVA ) ;
+        codeFormat.valueProperty().addListener( (o, oldV, newV) -> {
+            shownCode = "" ;
+            updateText( null, null, null ) ;
+        } );
+        pathShape.getItems().setAll( ExtractionPath.Shape.values() ) ;
+        pathShape.setValue( ExtractionPath.Shape.LINE ) ;
+        pathShape.valueProperty().addListener( (o, oldV, newV) -> {
+            // Carry the last line over as the new shape
+            vertices = new double[] { startX, startY, endX, endY } ;
             if( startX != 0.0 ) {
-                generateCss( startX, startY, endX, endY ) ;
+                drawPath( currentPath() ) ;
             }
+            regenerate() ;
+        } );
+        sampleMode.getItems().setAll( SampleMode.values() ) ;
+        sampleMode.setValue( sampler.getMode() ) ;
+        sampleMode.valueProperty().addListener( (o, oldV, newV) -> {
+            sampler = sampler.withMode( newV ) ;
+            regenerate() ;
+        } );
+        bandWidth.valueProperty().addListener( (o, oldV, newV) -> {
+            sampler = sampler.withWidth( newV ) ;
+            regenerate() ;
         } );
     }
 }
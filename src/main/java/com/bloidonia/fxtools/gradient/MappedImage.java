@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.nio.IntBuffer;
+
+/**
+ * Packed 0xAARRGGBB pixels held in an {@link IntBuffer}, normally memory
+ * mapped from a {@link PixelCache} file so that nothing is decoded or copied
+ * onto the heap.
+ *
+ * The digest identifies the image by its file contents, so results for the
+ * same picture can be shared between loads.
+ *
+ * @author Tim Yates
+ */
+public final class MappedImage implements PixelSource {
+    private final int width ;
+    private final int height ;
+    private final IntBuffer pixels ;
+    private final String digest ;
+
+    public MappedImage( int width, int height, IntBuffer pixels, String digest ) {
+        if( pixels.capacity() < width * height ) {
+            throw new IllegalArgumentException( "Expected " + ( width * height ) + " pixels, got " + pixels.capacity() ) ;
+        }
+        this.width = width ;
+        this.height = height ;
+        this.pixels = pixels ;
+        this.digest = digest ;
+    }
+
+    @Override
+    public int getWidth() {
+        return width ;
+    }
+
+    @Override
+    public int getHeight() {
+        return height ;
+    }
+
+    /**
+     * @return a read only view of the pixels, row by row from position 0
+     */
+    public IntBuffer getPixels() {
+        return pixels.asReadOnlyBuffer() ;
+    }
+
+    // The buffer itself, for callers that index it in a loop
+    IntBuffer buffer() {
+        return pixels ;
+    }
+
+    /**
+     * @return the hex SHA-256 of the file the pixels were decoded from
+     */
+    public String getDigest() {
+        return digest ;
+    }
+
+    @Override
+    public int getArgb( int x, int y ) {
+        return pixels.get( y * width + x ) ;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Successively halved copies of an image, for showing it zoomed out
+ * without handing the full resolution to the scene graph.
+ *
+ * Level 0 is the image itself, and each level after it is half the size
+ * of the one before, every pixel the average of the 2x2 block under it,
+ * down to {@link #MIN_SIZE} pixels along the longer side.  Levels are
+ * built in turn, each one tile at a time in parallel on a fork-join pool,
+ * and the time and memory taken by each are kept for reporting.
+ *
+ * Free of JavaFX types, so it can be used without the toolkit.
+ *
+ * @author Tim Yates
+ */
+public final class MipmapPyramid {
+    public static final int TILE_SIZE = 256 ;
+    public static final int MIN_SIZE = 64 ;
+
+    private final List<PixelSource> levels ;
+    private final long[] buildNanos ;
+
+    private MipmapPyramid( List<PixelSource> levels, long[] buildNanos ) {
+        this.levels = levels ;
+        this.buildNanos = buildNanos ;
+    }
+
+    public static MipmapPyramid build( PixelSource base, ForkJoinPool pool ) {
+        List<PixelSource> levels = new ArrayList<>() ;
+        List<Long> nanos = new ArrayList<>() ;
+        levels.add( base ) ;
+        nanos.add( 0L ) ;
+        PixelSource source = base ;
+        while( Math.max( source.getWidth(), source.getHeight() ) > MIN_SIZE ) {
+            long start = System.nanoTime() ;
+            int w = ( source.getWidth() + 1 ) / 2 ;
+            int h = ( source.getHeight() + 1 ) / 2 ;
+            ImageBuffer level = new ImageBuffer( w, h, new int[ w * h ] ) ;
+            int cols = ( w + TILE_SIZE - 1 ) / TILE_SIZE ;
+            int rows = ( h + TILE_SIZE - 1 ) / TILE_SIZE ;
+            pool.invoke( new TileTask( source, level, cols, 0, cols * rows ) ) ;
+            nanos.add( System.nanoTime() - start ) ;
+            levels.add( level ) ;
+            source = level ;
+        }
+        long[] buildNanos = new long[ nanos.size() ] ;
+        for( int i = 0 ; i < buildNanos.length ; i++ ) {
+            buildNanos[ i ] = nanos.get( i ) ;
+        }
+        return new MipmapPyramid( levels, buildNanos ) ;
+    }
+
+    public int levels() {
+        return levels.size() ;
+    }
+
+    public PixelSource getLevel( int level ) {
+        return levels.get( level ) ;
+    }
+
+    /**
+     * @param scale base image pixels per pixel shown
+     * @return the smallest level that still has at least one pixel for every one shown
+     */
+    public int levelFor( double scale ) {
+        int level = 0 ;
+        while( level + 1 < levels.size() && ( 2L << level ) <= scale ) {
+            level++ ;
+        }
+        return level ;
+    }
+
+    /**
+     * @return how long the level took to build, 0 for the base image
+     */
+    public long getBuildNanos( int level ) {
+        return buildNanos[ level ] ;
+    }
+
+    public long getBytes( int level ) {
+        PixelSource source = levels.get( level ) ;
+        return 4L * source.getWidth() * source.getHeight() ;
+    }
+
+    /**
+     * @return the time and memory for the levels built over the base image
+     */
+    public String summary() {
+        long nanos = 0, bytes = 0 ;
+        for( int i = 1 ; i < levels.size() ; i++ ) {
+            nanos += buildNanos[ i ] ;
+            bytes += getBytes( i ) ;
+        }
+        return String.format( "pyramid %d levels  %.1fMB  in %.0fms", levels.size() - 1, bytes / 1048576.0, nanos / 1e6 ) ;
+    }
+
+    /**
+     * @return a line per level with its size, memory and build time
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder() ;
+        for( int i = 0 ; i < levels.size() ; i++ ) {
+            PixelSource level = levels.get( i ) ;
+            sb.append( String.format( "level %d  %dx%d  %.1fMB  %.1fms%n", i, level.getWidth(), level.getHeight(),
+                                      getBytes( i ) / 1048576.0, buildNanos[ i ] / 1e6 ) ) ;
+        }
+        return sb.toString() ;
+    }
+
+    // Fills a range of tiles of the next level down, splitting until there is one
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L ;
+
+        private final PixelSource source ;
+        private final ImageBuffer target ;
+        private final int cols ;
+        private final int from, to ;
+
+        TileTask( PixelSource source, ImageBuffer target, int cols, int from, int to ) {
+            this.source = source ;
+            this.target = target ;
+            this.cols = cols ;
+            this.from = from ;
+            this.to = to ;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from > 1 ) {
+                int mid = ( from + to ) >>> 1 ;
+                invokeAll( new TileTask( source, target, cols, from, mid ),
+                           new TileTask( source, target, cols, mid, to ) ) ;
+                return ;
+            }
+            int[] pixels = target.getPixels() ;
+            int width = target.getWidth() ;
+            int x0 = ( from % cols ) * TILE_SIZE, y0 = ( from / cols ) * TILE_SIZE ;
+            int x1 = Math.min( x0 + TILE_SIZE, width ), y1 = Math.min( y0 + TILE_SIZE, target.getHeight() ) ;
+            int maxX = source.getWidth() - 1, maxY = source.getHeight() - 1 ;
+            for( int y = y0 ; y < y1 ; y++ ) {
+                int sy0 = y * 2, sy1 = Math.min( sy0 + 1, maxY ) ;
+                for( int x = x0 ; x < x1 ; x++ ) {
+                    int sx0 = x * 2, sx1 = Math.min( sx0 + 1, maxX ) ;
+                    pixels[ y * width + x ] = average( source.getArgb( sx0, sy0 ), source.getArgb( sx1, sy0 ),
+                                                       source.getArgb( sx0, sy1 ), source.getArgb( sx1, sy1 ) ) ;
+                }
+            }
+        }
+
+        // Rounds each channel to nearest, so repeated halving does not darken
+        private static int average( int c0, int c1, int c2, int c3 ) {
+            int a = ( ( c0 >>> 24 ) + ( c1 >>> 24 ) + ( c2 >>> 24 ) + ( c3 >>> 24 ) + 2 ) >> 2 ;
+            int r = ( ( ( c0 >> 16 ) & 0xFF ) + ( ( c1 >> 16 ) & 0xFF ) + ( ( c2 >> 16 ) & 0xFF ) + ( ( c3 >> 16 ) & 0xFF ) + 2 ) >> 2 ;
+            int g = ( ( ( c0 >> 8 ) & 0xFF ) + ( ( c1 >> 8 ) & 0xFF ) + ( ( c2 >> 8 ) & 0xFF ) + ( ( c3 >> 8 ) & 0xFF ) + 2 ) >> 2 ;
+            int b = ( ( c0 & 0xFF ) + ( c1 & 0xFF ) + ( c2 & 0xFF ) + ( c3 & 0xFF ) + 2 ) >> 2 ;
+            return ( a << 24 ) | ( r << 16 ) | ( g << 8 ) | b ;
+        }
+    }
+}
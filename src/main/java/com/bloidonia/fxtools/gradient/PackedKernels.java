@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * Per-channel arithmetic on packed ARGB done for all the channels at once,
+ * by spreading a color's channels into the 16 bit lanes of a long.
+ *
+ * A lane has room for sums of up to {@link #MAX_SUM} channel values, and
+ * for the peak test, which in whole numbers is whether
+ * {@code |2 * c1 - c0 - c2|} is over {@code floor( 2 * threshold )}: the
+ * same answer as {@link PeakDetector}'s float comparison for every
+ * threshold, as the midpoint of two channel values is exact in a float.
+ * Offset so no lane goes below zero, each side of that test sets the top
+ * bit of a lane, and one mask tells whether any channel deviates.
+ *
+ * {@code -Dgradient.kernels=scalar} turns them off, for comparison or in
+ * case of trouble, and the callers fall back to a channel at a time.
+ *
+ * @author Tim Yates
+ */
+final class PackedKernels {
+    static final boolean ENABLED = !"scalar".equalsIgnoreCase( System.getProperty( "gradient.kernels" ) ) ;
+    /** The most colors whose channels can be summed in one long */
+    static final int MAX_SUM = 0xFFFF / 0xFF ;
+
+    private static final long LANE = 0x0000000100010001L ;
+    private static final long TOP_BITS = LANE * 0x8000 ;
+    // 2 * c1 - c0 - c2 + MIDDLE is never negative
+    private static final int MIDDLE = 2 * 0xFF ;
+
+    private PackedKernels() {
+    }
+
+    /**
+     * @return the color's alpha, red, green and blue, from the high lane to the low
+     */
+    static long spread( int argb ) {
+        // Halves apart, then bytes apart
+        long c = argb & 0xFFFFFFFFL ;
+        c = ( c | c << 16 ) & 0x0000FFFF0000FFFFL ;
+        return ( c | c << 8 ) & 0x00FF00FF00FF00FFL ;
+    }
+
+    /**
+     * @return the rounded mean of {@code n} spread colors summed into {@code sum}, as {@link LineSampler#average}
+     */
+    static int average( long sum, int n ) {
+        int round = n / 2 ;
+        return ( ( ( lane( sum, 48 ) + round ) / n ) << 24 ) |
+               ( ( ( lane( sum, 32 ) + round ) / n ) << 16 ) |
+               ( ( ( lane( sum, 16 ) + round ) / n ) << 8  ) |
+               ( ( ( lane( sum, 0  ) + round ) / n )       ) ;
+    }
+
+    private static int lane( long sum, int shift ) {
+        return (int)( sum >>> shift ) & 0xFFFF ;
+    }
+
+    /**
+     * As {@link PeakDetector#findPeaks(int[], int, float)}
+     */
+    static int[] findPeaks( int[] argb, int length, float threshold ) {
+        int limit = limit( threshold ) ;
+        long above = LANE * ( 0x7FFF - MIDDLE - limit ) ;
+        long below = LANE * ( 0x8000 + MIDDLE - 1 - limit ) ;
+        int[] peaks = new int[ 16 ] ;
+        int count = 1 ;
+        if( length < 3 ) {
+            return Arrays.copyOf( peaks, count ) ;
+        }
+        long s0 = rgb( argb[ 0 ] ), s1 = rgb( argb[ 1 ] ) ;
+        for( int i = 0 ; i < length - 2 ; i++ ) {
+            long s2 = rgb( argb[ i + 2 ] ) ;
+            long v = ( s1 << 1 ) + LANE * MIDDLE - s0 - s2 ;
+            if( ( ( ( v + above ) | ( below - v ) ) & TOP_BITS ) != 0 ) {
+                if( count == peaks.length ) {
+                    peaks = Arrays.copyOf( peaks, count * 2 ) ;
+                }
+                peaks[ count++ ] = i ;
+            }
+            s0 = s1 ;
+            s1 = s2 ;
+        }
+        return Arrays.copyOf( peaks, count ) ;
+    }
+
+    /**
+     * As {@link PeakDetector#countPeaks(int[], int, int, int, float)}
+     */
+    static int countPeaks( int[] argb, int offset, int stride, int length, float threshold ) {
+        if( length < 3 ) {
+            return 0 ;
+        }
+        int limit = limit( threshold ) ;
+        long above = LANE * ( 0x7FFF - MIDDLE - limit ) ;
+        long below = LANE * ( 0x8000 + MIDDLE - 1 - limit ) ;
+        int count = 0 ;
+        long s0 = rgb( argb[ offset ] ), s1 = rgb( argb[ offset + stride ] ) ;
+        for( int i = 0, p = offset + stride * 2 ; i < length - 2 ; i++, p += stride ) {
+            long s2 = rgb( argb[ p ] ) ;
+            long v = ( s1 << 1 ) + LANE * MIDDLE - s0 - s2 ;
+            long deviates = ( ( v + above ) | ( below - v ) ) & TOP_BITS ;
+            // One when any lane's top bit is set, without a branch
+            count += (int)( ( deviates | -deviates ) >>> 63 ) ;
+            s0 = s1 ;
+            s1 = s2 ;
+        }
+        return count ;
+    }
+
+    private static long rgb( int argb ) {
+        return spread( argb & 0xFFFFFF ) ;
+    }
+
+    // floor( 2 * threshold ), clamped to the deviations there can be, where -1 makes every window a peak and 2 * 255 none
+    private static int limit( float threshold ) {
+        if( threshold != threshold ) {
+            return MIDDLE ;
+        }
+        return (int)Math.max( -1, Math.min( MIDDLE, Math.floor( 2.0 * threshold ) ) ) ;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * Finds the color steps in a line of samples.
+ *
+ * For every window of three samples, the middle one is compared with the
+ * midpoint of its neighbours, and if any channel deviates by more than the
+ * threshold the start of the window is reported as a peak.  Index 0 is
+ * always the first peak.
+ *
+ * Works over primitive arrays only, so it has no dependency on JavaFX.
+ * The RGB tests run all three channels at once through
+ * {@link PackedKernels}, unless {@code -Dgradient.kernels=scalar} asks for
+ * the channel at a time loops, which give the same peaks.
+ *
+ * @author Tim Yates
+ */
+public final class PeakDetector {
+    private PeakDetector() {
+    }
+
+    /**
+     * @param argb      packed 0xAARRGGBB samples
+     * @param length    number of valid samples in {@code argb}
+     * @param threshold maximum allowed deviation of a channel from the midpoint
+     * @return the peak indices, in ascending order
+     */
+    public static int[] findPeaks( int[] argb, int length, float threshold ) {
+        return PackedKernels.ENABLED ? PackedKernels.findPeaks( argb, length, threshold ) : findPeaksScalar( argb, length, threshold ) ;
+    }
+
+    static int[] findPeaksScalar( int[] argb, int length, float threshold ) {
+        int[] peaks = new int[ 16 ] ;
+        int count = 1 ;
+        for( int i = 0 ; i < length - 2 ; i++ ) {
+            int c0 = argb[ i ], c1 = argb[ i + 1 ], c2 = argb[ i + 2 ] ;
+            if( deviates( ( c0 >> 16 ) & 0xFF, ( c1 >> 16 ) & 0xFF, ( c2 >> 16 ) & 0xFF, threshold ) ||
+                deviates( ( c0 >> 8  ) & 0xFF, ( c1 >> 8  ) & 0xFF, ( c2 >> 8  ) & 0xFF, threshold ) ||
+                deviates( ( c0       ) & 0xFF, ( c1       ) & 0xFF, ( c2       ) & 0xFF, threshold ) ) {
+                if( count == peaks.length ) {
+                    peaks = Arrays.copyOf( peaks, count * 2 ) ;
+                }
+                peaks[ count++ ] = i ;
+            }
+        }
+        return Arrays.copyOf( peaks, count ) ;
+    }
+
+    /**
+     * Counts the peaks after index 0 in a strided run of samples, such as a column of an
+     * image, without allocating.
+     *
+     * @param offset index of the first sample
+     * @param stride distance between consecutive samples
+     */
+    public static int countPeaks( int[] argb, int offset, int stride, int length, float threshold ) {
+        return PackedKernels.ENABLED ? PackedKernels.countPeaks( argb, offset, stride, length, threshold ) : countPeaksScalar( argb, offset, stride, length, threshold ) ;
+    }
+
+    static int countPeaksScalar( int[] argb, int offset, int stride, int length, float threshold ) {
+        int count = 0 ;
+        for( int i = 0, p = offset ; i < length - 2 ; i++, p += stride ) {
+            int c0 = argb[ p ], c1 = argb[ p + stride ], c2 = argb[ p + stride * 2 ] ;
+            if( deviates( ( c0 >> 16 ) & 0xFF, ( c1 >> 16 ) & 0xFF, ( c2 >> 16 ) & 0xFF, threshold ) ||
+                deviates( ( c0 >> 8  ) & 0xFF, ( c1 >> 8  ) & 0xFF, ( c2 >> 8  ) & 0xFF, threshold ) ||
+                deviates( ( c0       ) & 0xFF, ( c1       ) & 0xFF, ( c2       ) & 0xFF, threshold ) ) {
+                count++ ;
+            }
+        }
+        return count ;
+    }
+
+    /**
+     * As {@link #findPeaks(int[], int, float)}, but over separate channel arrays.
+     */
+    public static int[] findPeaks( short[] r, short[] g, short[] b, int length, float threshold ) {
+        int[] peaks = new int[ 16 ] ;
+        int count = 1 ;
+        for( int i = 0 ; i < length - 2 ; i++ ) {
+            if( deviates( r[ i ], r[ i + 1 ], r[ i + 2 ], threshold ) ||
+                deviates( g[ i ], g[ i + 1 ], g[ i + 2 ], threshold ) ||
+                deviates( b[ i ], b[ i + 1 ], b[ i + 2 ], threshold ) ) {
+                if( count == peaks.length ) {
+                    peaks = Arrays.copyOf( peaks, count * 2 ) ;
+                }
+                peaks[ count++ ] = i ;
+            }
+        }
+        return Arrays.copyOf( peaks, count ) ;
+    }
+
+    /**
+     * As {@link #findPeaks(int[], int, float)}, comparing in the given color space.  For the Lab
+     * spaces a peak is where the color difference between a sample and its neighbours' midpoint
+     * is over the threshold.
+     */
+    public static int[] findPeaks( int[] argb, int length, float threshold, DetectionMode mode ) {
+        if( mode == DetectionMode.RGB ) {
+            return findPeaks( argb, length, threshold ) ;
+        }
+        return findPeaks( LabConverter.forThread( mode ).convert( argb, length ), length, threshold ) ;
+    }
+
+    /**
+     * @param lab three floats (L, a, b) per sample
+     */
+    public static int[] findPeaks( float[] lab, int length, float threshold ) {
+        float limit = threshold * threshold ;
+        int[] peaks = new int[ 16 ] ;
+        int count = 1 ;
+        for( int i = 0 ; i < length - 2 ; i++ ) {
+            int o = i * 3 ;
+            float dl = lab[ o + 3 ] - ( lab[ o     ] + lab[ o + 6 ] ) * 0.5f ;
+            float da = lab[ o + 4 ] - ( lab[ o + 1 ] + lab[ o + 7 ] ) * 0.5f ;
+            float db = lab[ o + 5 ] - ( lab[ o + 2 ] + lab[ o + 8 ] ) * 0.5f ;
+            if( threshold < 0 || dl * dl + da * da + db * db > limit ) {
+                if( count == peaks.length ) {
+                    peaks = Arrays.copyOf( peaks, count * 2 ) ;
+                }
+                peaks[ count++ ] = i ;
+            }
+        }
+        return Arrays.copyOf( peaks, count ) ;
+    }
+
+    /**
+     * As {@link #countPeaks(int[], int, int, int, float)}, over colors converted to a Lab space.
+     *
+     * @param lab three floats (L, a, b) per sample; {@code offset} and {@code stride} count samples
+     */
+    public static int countPeaks( float[] lab, int offset, int stride, int length, float threshold ) {
+        float limit = threshold * threshold ;
+        int count = 0 ;
+        for( int i = 0, o = offset * 3, step = stride * 3 ; i < length - 2 ; i++, o += step ) {
+            float dl = lab[ o + step     ] - ( lab[ o     ] + lab[ o + step * 2     ] ) * 0.5f ;
+            float da = lab[ o + step + 1 ] - ( lab[ o + 1 ] + lab[ o + step * 2 + 1 ] ) * 0.5f ;
+            float db = lab[ o + step + 2 ] - ( lab[ o + 2 ] + lab[ o + step * 2 + 2 ] ) * 0.5f ;
+            if( threshold < 0 || dl * dl + da * da + db * db > limit ) {
+                count++ ;
+            }
+        }
+        return count ;
+    }
+
+    // Kept in float so the comparison with the slider threshold is unchanged
+    private static boolean deviates( int c0, int c1, int c2, float threshold ) {
+        float mid = c0 + ( ( c2 - c0 ) * 0.5f ) ;
+        return Math.abs( c1 - mid ) > threshold ;
+    }
+}
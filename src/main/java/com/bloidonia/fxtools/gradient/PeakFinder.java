@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Objects;
+
+/**
+ * The settings used to pick stops from a line of samples, and the means to
+ * apply them.
+ *
+ * Instances are immutable, so a snapshot can be handed to a background
+ * extraction.
+ *
+ * @author Tim Yates
+ */
+public final class PeakFinder {
+    private final StopMode mode ;
+    private final float threshold ;
+    private final int maxStops ;
+    private final ErrorMetric metric ;
+    private final DetectionMode detection ;
+
+    public PeakFinder( float threshold ) {
+        this( StopMode.THRESHOLD, threshold, 12, ErrorMetric.MAX, DetectionMode.RGB ) ;
+    }
+
+    public PeakFinder( StopMode mode, float threshold, int maxStops, ErrorMetric metric, DetectionMode detection ) {
+        this.mode = mode ;
+        this.threshold = threshold ;
+        this.maxStops = maxStops ;
+        this.metric = metric ;
+        this.detection = detection ;
+    }
+
+    public StopMode getMode() { return mode ; }
+    public float getThreshold() { return threshold ; }
+    public int getMaxStops() { return maxStops ; }
+    public ErrorMetric getMetric() { return metric ; }
+    public DetectionMode getDetection() { return detection ; }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( !( obj instanceof PeakFinder ) ) {
+            return false ;
+        }
+        PeakFinder other = (PeakFinder)obj ;
+        return mode == other.mode && Float.compare( threshold, other.threshold ) == 0 && maxStops == other.maxStops &&
+               metric == other.metric && detection == other.detection ;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash( mode, threshold, maxStops, metric, detection ) ;
+    }
+
+    /**
+     * @return a finder for the same peaks with the settings this mode ignores reset, so that
+     *         finders differing only in those are equal
+     */
+    PeakFinder peakSettings() {
+        switch( mode ) {
+            case SIMPLIFY :
+                return new PeakFinder( mode, 0, maxStops, metric, DetectionMode.RGB ) ;
+            case TARGET_COUNT :
+                return new PeakFinder( mode, 0, maxStops, ErrorMetric.MAX, detection ) ;
+            default :
+                return new PeakFinder( mode, threshold, 0, ErrorMetric.MAX, detection ) ;
+        }
+    }
+
+    /**
+     * @return ascending sample indices of the stops, starting at 0
+     */
+    public int[] find( int[] samples, int length ) {
+        return find( samples, length, null ) ;
+    }
+
+    /**
+     * As {@link #find(int[], int)}, answering threshold and count queries from {@code index} when
+     * it was built from the same samples in this finder's detection mode.
+     *
+     * @param index a prebuilt index of the samples, or null
+     */
+    public int[] find( int[] samples, int length, DeviationIndex index ) {
+        if( index != null && index.getMode() != detection ) {
+            index = null ;
+        }
+        switch( mode ) {
+            case SIMPLIFY :
+                return StopReducer.reduce( samples, length, maxStops, metric ) ;
+            case TARGET_COUNT :
+                // One stop is always added at the end for the last sample
+                return ( index != null ? index : DeviationIndex.build( samples, length, detection ) ).peaksForCount( maxStops - 1 ) ;
+            default :
+                return index != null ? index.peaks( threshold ) : PeakDetector.findPeaks( samples, length, threshold, detection ) ;
+        }
+    }
+
+    /**
+     * @return how far the gradient through {@code stops} is from the samples, by this finder's metric
+     */
+    public double error( int[] samples, int length, int[] stops ) {
+        return metric.measure( samples, length, stops ) ;
+    }
+}
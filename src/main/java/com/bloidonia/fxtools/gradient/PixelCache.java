@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+
+/**
+ * An on-disk cache of decoded images, keyed by the SHA-256 of the file.
+ *
+ * Each entry is a small header followed by the raw packed pixels in native
+ * byte order, so opening an image that has been seen before is a hash of
+ * the file and a memory map rather than a decode.  When the entries come to
+ * more than {@code maxBytes}, the least recently used are deleted.
+ *
+ * @author Tim Yates
+ */
+public final class PixelCache {
+    private static final int MAGIC = 0x47524144 ; // "GRAD"
+    private static final int VERSION = 1 ;
+    private static final int HEADER_BYTES = 16 ;
+    private static final String SUFFIX = ".argb" ;
+    // Pixels are written through a buffer of at most this many bytes
+    private static final int CHUNK_BYTES = 1 << 20 ;
+
+    private final Path dir ;
+    private final long maxBytes ;
+    private final LongAdder hits = new LongAdder() ;
+    private final LongAdder misses = new LongAdder() ;
+
+    public PixelCache( Path dir, long maxBytes ) {
+        this.dir = dir ;
+        this.maxBytes = maxBytes ;
+    }
+
+    public Path getDirectory() {
+        return dir ;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes ;
+    }
+
+    public long getHits() {
+        return hits.sum() ;
+    }
+
+    public long getMisses() {
+        return misses.sum() ;
+    }
+
+    /**
+     * @return the pixels of {@code file}, mapped from the cache, decoding and storing them first if need be
+     */
+    public MappedImage load( File file ) throws IOException {
+        String digest = digest( file.toPath() ) ;
+        Path entry = dir.resolve( digest + SUFFIX ) ;
+        if( Files.isRegularFile( entry ) ) {
+            try {
+                MappedImage image = map( entry, digest ) ;
+                Files.setLastModifiedTime( entry, FileTime.fromMillis( System.currentTimeMillis() ) ) ;
+                hits.increment() ;
+                return image ;
+            }
+            catch( IOException ex ) {
+                Logger.getLogger( PixelCache.class.getName() ).log( Level.WARNING, "Ignoring bad cache entry " + entry, ex ) ;
+            }
+        }
+        misses.increment() ;
+        BufferedImage decoded = ImageIO.read( file ) ;
+        if( decoded == null ) {
+            throw new IOException( "Unsupported image format: " + file ) ;
+        }
+        ImageBuffer pixels = ImageBuffer.fromBufferedImage( decoded ) ;
+        if( HEADER_BYTES + 4L * pixels.getWidth() * pixels.getHeight() > Integer.MAX_VALUE ) {
+            // Too big to map as one buffer
+            return unmapped( pixels, digest ) ;
+        }
+        try {
+            write( entry, pixels ) ;
+            evict( entry ) ;
+            return map( entry, digest ) ;
+        }
+        catch( IOException ex ) {
+            // Still usable without the cache, just not mapped
+            Logger.getLogger( PixelCache.class.getName() ).log( Level.WARNING, "Could not cache " + file, ex ) ;
+            return unmapped( pixels, digest ) ;
+        }
+    }
+
+    private static MappedImage unmapped( ImageBuffer pixels, String digest ) {
+        return new MappedImage( pixels.getWidth(), pixels.getHeight(), IntBuffer.wrap( pixels.getPixels() ), digest ) ;
+    }
+
+    /**
+     * @return the number of bytes held in the cache directory
+     */
+    public long size() throws IOException {
+        long total = 0 ;
+        for( Path entry : entries() ) {
+            total += Files.size( entry ) ;
+        }
+        return total ;
+    }
+
+    public String summary() {
+        long bytes ;
+        try {
+            bytes = size() ;
+        }
+        catch( IOException ex ) {
+            bytes = -1 ;
+        }
+        return String.format( "image cache %s  %d hits  %d misses  %.1f/%.0fMB", dir, getHits(), getMisses(), bytes / 1048576.0, maxBytes / 1048576.0 ) ;
+    }
+
+    static String digest( Path file ) throws IOException {
+        MessageDigest sha = sha256() ;
+        byte[] buffer = new byte[ 1 << 16 ] ;
+        try( InputStream in = Files.newInputStream( file ) ) {
+            int n ;
+            while( ( n = in.read( buffer ) ) > 0 ) {
+                sha.update( buffer, 0, n ) ;
+            }
+        }
+        return hex( sha.digest() ) ;
+    }
+
+    static String digest( byte[] data ) {
+        return hex( sha256().digest( data ) ) ;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" ) ;
+        }
+        catch( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException( ex ) ;
+        }
+    }
+
+    private static String hex( byte[] hash ) {
+        StringBuilder hex = new StringBuilder( 64 ) ;
+        for( byte b : hash ) {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) ) ;
+        }
+        return hex.toString() ;
+    }
+
+    private static MappedImage map( Path entry, String digest ) throws IOException {
+        try( FileChannel channel = FileChannel.open( entry, StandardOpenOption.READ ) ) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) ;
+            buffer.order( ByteOrder.nativeOrder() ) ;
+            if( channel.size() < HEADER_BYTES || buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION ) {
+                throw new IOException( "Not a pixel cache entry" ) ;
+            }
+            int width = buffer.getInt( 8 ) ;
+            int height = buffer.getInt( 12 ) ;
+            if( channel.size() != HEADER_BYTES + 4L * width * height ) {
+                throw new IOException( "Truncated pixel cache entry" ) ;
+            }
+            buffer.position( HEADER_BYTES ) ;
+            return new MappedImage( width, height, buffer.slice().order( ByteOrder.nativeOrder() ).asIntBuffer(), digest ) ;
+        }
+    }
+
+    private void write( Path entry, ImageBuffer pixels ) throws IOException {
+        Files.createDirectories( dir ) ;
+        Path temp = Files.createTempFile( dir, "entry", ".tmp" ) ;
+        try {
+            try( FileChannel channel = FileChannel.open( temp, StandardOpenOption.WRITE ) ) {
+                ByteBuffer header = ByteBuffer.allocate( HEADER_BYTES ).order( ByteOrder.nativeOrder() ) ;
+                header.putInt( MAGIC ).putInt( VERSION ).putInt( pixels.getWidth() ).putInt( pixels.getHeight() ).flip() ;
+                channel.write( header ) ;
+                // A row or more at a time, rather than a third copy of the whole image
+                int[] data = pixels.getPixels() ;
+                int width = Math.max( pixels.getWidth(), 1 ) ;
+                int rows = Math.max( CHUNK_BYTES / 4 / width, 1 ) ;
+                ByteBuffer body = ByteBuffer.allocate( rows * width * 4 ).order( ByteOrder.nativeOrder() ) ;
+                int total = pixels.getWidth() * pixels.getHeight() ;
+                for( int from = 0 ; from < total ; from += rows * width ) {
+                    int n = Math.min( rows * width, total - from ) ;
+                    body.clear() ;
+                    body.asIntBuffer().put( data, from, n ) ;
+                    body.limit( n * 4 ) ;
+                    while( body.hasRemaining() ) {
+                        channel.write( body ) ;
+                    }
+                }
+            }
+            Files.move( temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE ) ;
+        }
+        finally {
+            Files.deleteIfExists( temp ) ;
+        }
+    }
+
+    // Deletes the least recently used entries, other than keep, until the cache fits
+    private void evict( Path keep ) throws IOException {
+        List<Path> entries = entries() ;
+        long total = 0 ;
+        for( Path entry : entries ) {
+            total += Files.size( entry ) ;
+        }
+        entries.sort( ( a, b ) -> {
+            try {
+                return Files.getLastModifiedTime( a ).compareTo( Files.getLastModifiedTime( b ) ) ;
+            }
+            catch( IOException ex ) {
+                return 0 ;
+            }
+        } ) ;
+        for( Path entry : entries ) {
+            if( total <= maxBytes ) {
+                break ;
+            }
+            if( entry.equals( keep ) ) continue ;
+            long bytes = Files.size( entry ) ;
+            try {
+                Files.delete( entry ) ;
+                total -= bytes ;
+            }
+            catch( IOException ex ) {
+                // Still mapped on platforms that lock mapped files; try again next time
+            }
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        List<Path> entries = new ArrayList<>() ;
+        if( Files.isDirectory( dir ) ) {
+            try( DirectoryStream<Path> stream = Files.newDirectoryStream( dir, "*" + SUFFIX ) ) {
+                for( Path entry : stream ) {
+                    entries.add( entry ) ;
+                }
+            }
+        }
+        return entries ;
+    }
+}
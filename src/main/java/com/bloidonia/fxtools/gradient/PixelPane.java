@@ -16,25 +16,33 @@
 
 package com.bloidonia.fxtools.gradient;
 
-import java.util.ArrayList;
 import java.util.List;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 
 /**
+ * Shows the sampled line as a strip of pixels.
+ *
+ * The backing image is reused between updates and only grows (doubling)
+ * when a longer line comes along; the view's viewport shows just the part
+ * in use, and each update is written in one {@code setPixels} call straight
+ * from the strip's colors.
+ *
  * @author Tim Yates
  */
 public class PixelPane extends Region {
     private final ImageView view = new ImageView() ;
-    private ListProperty<RGB> pixels ;
+    private ObjectProperty<ColorStrip> strip ;
+    private WritableImage back ;
+    private ExtractionStats stats ;
     
     public PixelPane() {
         view.setPreserveRatio( false ) ;
@@ -48,26 +56,47 @@ public class PixelPane extends Region {
     }
     
     public List<RGB> getPixels() {
-        return pixels == null ? new ArrayList<>() : pixels.get() ;
+        return getStrip().getColors() ;
     }
 
-    public ListProperty pixelsProperty() {
-        if( pixels == null ) {
-            pixels = new SimpleListProperty() ;
-            pixels.addListener( this::updatePixels ) ;
+    public ColorStrip getStrip() {
+        return strip == null ? ColorStrip.EMPTY : strip.get() ;
+    }
+
+    public void setStrip( ColorStrip value ) {
+        stripProperty().set( value ) ;
+    }
+
+    /**
+     * @param stats where to record drawing times, or null
+     */
+    public void setStats( ExtractionStats stats ) {
+        this.stats = stats ;
+    }
+
+    public ObjectProperty<ColorStrip> stripProperty() {
+        if( strip == null ) {
+            strip = new SimpleObjectProperty<>( ColorStrip.EMPTY ) ;
+            strip.addListener( this::updatePixels ) ;
         }
-        return pixels ;
+        return strip ;
     }
 
-     void updatePixels( ObservableValue<? extends ObservableList<RGB>> a,
-                       ObservableList<RGB> b,
-                       ObservableList<RGB> pixels ) {
-         if( pixels.size() < 1 ) return ;
-         WritableImage back = new WritableImage( pixels.size(), 1 ) ;
-         PixelWriter pw = back.getPixelWriter() ;
-         for( int i = 0 ; i < pixels.size() ; i++ ) {
-             pw.setArgb( i, 0, pixels.get( i ).getColor() );
+     void updatePixels( ObservableValue<? extends ColorStrip> a,
+                       ColorStrip old,
+                       ColorStrip strip ) {
+         int n = strip == null ? 0 : strip.size() ;
+         if( n < 1 || strip.sameColors( old ) ) return ;
+         long start = System.nanoTime() ;
+         if( back == null || back.getWidth() < n ) {
+             int capacity = Math.max( n, back == null ? 256 : (int)back.getWidth() * 2 ) ;
+             back = new WritableImage( capacity, 1 ) ;
+             view.setImage( back ) ;
+         }
+         back.getPixelWriter().setPixels( 0, 0, n, 1, PixelFormat.getIntArgbInstance(), strip.argb(), 0, n ) ;
+         view.setViewport( new Rectangle2D( 0, 0, n, 1 ) ) ;
+         if( stats != null ) {
+             stats.record( ExtractionStats.Stage.STRIP, System.nanoTime() - start ) ;
          }
-         view.setImage( back ) ;
     }
 }
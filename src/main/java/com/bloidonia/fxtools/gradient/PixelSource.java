@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * Full resolution pixels that lines can be sampled from.
+ *
+ * @author Tim Yates
+ */
+public interface PixelSource {
+    int getWidth() ;
+
+    int getHeight() ;
+
+    /**
+     * @return the packed 0xAARRGGBB color of the pixel at (x, y), which must be inside the image
+     */
+    int getArgb( int x, int y ) ;
+
+    default boolean contains( double x, double y ) {
+        return x >= 0 && x < getWidth() && y >= 0 && y < getHeight() ;
+    }
+}
@@ -50,6 +50,12 @@ public class RGB {
                         (int)( color.getBlue() * 255 ) & 0xFF ) ;
     }
 
+    public static RGB fromArgb( int argb ) {
+        return new RGB( ( argb >> 16 ) & 0xFF,
+                        ( argb >> 8 ) & 0xFF,
+                        argb & 0xFF ) ;
+    }
+
     @Override
     public String toString() {
         return String.format( "%02x%02x%02x", r, g, b ) ;
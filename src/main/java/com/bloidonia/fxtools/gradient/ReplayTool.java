@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Plays a {@link DragRecording} back through the extraction pipeline
+ * without the UI, and reports the latency of each stage.
+ *
+ * Each press starts a line and each drag or release extracts along it, as
+ * in the UI.  Results are published to a single thread standing in for the
+ * FX thread, which writes the CSS and code as the UI does.  Graph and strip
+ * drawing need the toolkit, so they are not replayed.
+ *
+ * <pre>
+ *   ReplayTool [options] recording [image]
+ * </pre>
+ *
+ * @author Tim Yates
+ */
+public final class ReplayTool {
+    private static final String USAGE =
+        "Usage: ReplayTool [options] recording [image]\n" +
+        "Options:\n" +
+        "  --threshold t   peak threshold (default 10)\n" +
+        "  --mode m        pixel, nearest, bilinear or bicubic (default pixel)\n" +
+        "  --speed s       playback speed, 0 for as fast as possible (default 1)\n" +
+        "  --warmup n      passes to run before measuring (default 1)\n" +
+        "  --repeat n      passes to measure (default 1)\n" +
+        "image overrides the images named in the recording\n" ;
+
+    private final LineSampler sampler ;
+    private final PeakFinder finder ;
+    private final double speed ;
+    private final Map<Path,PixelSource> images = new HashMap<>() ;
+
+    public ReplayTool( LineSampler sampler, PeakFinder finder, double speed ) {
+        this.sampler = sampler ;
+        this.finder = finder ;
+        this.speed = speed ;
+    }
+
+    /**
+     * Plays the events once, recording into {@code stats}.
+     *
+     * @param override the image to drag over, or null for the ones in the recording
+     */
+    public void replay( List<DragRecording.Event> events, PixelSource override, ExtractionStats stats ) throws IOException, InterruptedException {
+        ExecutorService ui = Executors.newSingleThreadExecutor( r -> new Thread( r, "replay-publish" ) ) ;
+        Object lock = new Object() ;
+        ExtractionPipeline.Request[] shown = new ExtractionPipeline.Request[ 1 ] ;
+        GradientStops stops = new GradientStops() ;
+        StringBuilder text = new StringBuilder() ;
+        ExtractionPipeline pipeline = new ExtractionPipeline( ui, result -> {
+            long start = System.nanoTime() ;
+            ColorStrip strip = result.getStrip() ;
+            if( strip.peakCount() > 0 ) {
+                stops.setPeaks( strip.argb(), strip.size(), strip.peaks() ) ;
+                text.setLength( 0 ) ;
+                GradientFormat.CSS.write( stops, text ) ;
+                text.setLength( 0 ) ;
+                GradientFormat.JAVA.write( stops, text ) ;
+            }
+            stats.record( ExtractionStats.Stage.EMIT, System.nanoTime() - start ) ;
+            synchronized( lock ) {
+                shown[ 0 ] = result.getRequest() ;
+                lock.notifyAll() ;
+            }
+        }, stats ) ;
+
+        try {
+            PixelSource image = override ;
+            ExtractionPipeline.Request last = null ;
+            double startX = 0, startY = 0 ;
+            long begin = System.nanoTime() ;
+            long first = events.isEmpty() ? 0 : events.get( 0 ).getMillis() ;
+            for( DragRecording.Event event : events ) {
+                if( "image".equals( event.getType() ) ) {
+                    image = override != null ? override : load( event.getImage() ) ;
+                    continue ;
+                }
+                if( speed > 0 ) {
+                    long due = begin + (long)( ( event.getMillis() - first ) * 1e6 / speed ) ;
+                    long wait = due - System.nanoTime() ;
+                    if( wait > 0 ) {
+                        TimeUnit.NANOSECONDS.sleep( wait ) ;
+                    }
+                }
+                if( "press".equals( event.getType() ) ) {
+                    startX = event.getX() ;
+                    startY = event.getY() ;
+                }
+                else if( image != null && image.contains( event.getX(), event.getY() ) ) {
+                    last = new ExtractionPipeline.Request( image, sampler, ExtractionPath.line( startX, startY, event.getX(), event.getY() ), finder ) ;
+                    pipeline.submit( last ) ;
+                }
+            }
+            // The newest result is always shown, so wait for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 30 ) ;
+            synchronized( lock ) {
+                while( last != null && shown[ 0 ] != last && System.nanoTime() < deadline ) {
+                    lock.wait( 100 ) ;
+                }
+            }
+        }
+        finally {
+            pipeline.shutdown() ;
+            ui.shutdown() ;
+        }
+    }
+
+    private PixelSource load( Path path ) throws IOException {
+        PixelSource image = images.get( path ) ;
+        if( image == null ) {
+            BufferedImage decoded = ImageIO.read( path.toFile() ) ;
+            if( decoded == null ) {
+                throw new IOException( "Unsupported image format: " + path ) ;
+            }
+            image = ImageBuffer.fromBufferedImage( decoded ) ;
+            images.put( path, image ) ;
+        }
+        return image ;
+    }
+
+    public static void main( String[] args ) throws Exception {
+        float threshold = 10 ;
+        SampleMode mode = SampleMode.PIXEL ;
+        double speed = 1 ;
+        int warmup = 1 ;
+        int repeat = 1 ;
+        List<String> positional = new ArrayList<>() ;
+        try {
+            for( int i = 0 ; i < args.length ; i++ ) {
+                switch( args[ i ] ) {
+                    case "--threshold" : threshold = Float.parseFloat( args[ ++i ] ) ; break ;
+                    case "--mode"      : mode = SampleMode.valueOf( args[ ++i ].toUpperCase( Locale.ROOT ) ) ; break ;
+                    case "--speed"     : speed = Double.parseDouble( args[ ++i ] ) ; break ;
+                    case "--warmup"    : warmup = Integer.parseInt( args[ ++i ] ) ; break ;
+                    case "--repeat"    : repeat = Integer.parseInt( args[ ++i ] ) ; break ;
+                    default            : positional.add( args[ i ] ) ;
+                }
+            }
+            if( positional.isEmpty() || positional.size() > 2 ) {
+                throw new IllegalArgumentException( "Expected a recording and at most one image" ) ;
+            }
+        }
+        catch( RuntimeException ex ) {
+            System.err.println( ex.getMessage() ) ;
+            System.err.print( USAGE ) ;
+            System.exit( 2 ) ;
+        }
+
+        List<DragRecording.Event> events = DragRecording.read( Paths.get( positional.get( 0 ) ) ) ;
+        ReplayTool tool = new ReplayTool( new LineSampler( mode ), new PeakFinder( threshold ), speed ) ;
+        PixelSource override = positional.size() > 1 ? tool.load( Paths.get( positional.get( 1 ) ) ) : null ;
+        ExtractionStats stats = new ExtractionStats() ;
+        for( int i = 0 ; i < warmup ; i++ ) {
+            tool.replay( events, override, stats ) ;
+        }
+        stats.reset() ;
+        long start = System.nanoTime() ;
+        for( int i = 0 ; i < repeat ; i++ ) {
+            tool.replay( events, override, stats ) ;
+        }
+        System.out.printf( Locale.ROOT, "%d events x %d in %.1fms%n", events.size(), repeat, ( System.nanoTime() - start ) / 1e6 ) ;
+        System.out.println( stats.report() ) ;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least recently used cache of extraction results, keyed by the image,
+ * the path, and the sampling and stop settings.  Only the stop settings
+ * that decide the peaks count, so a stop count reached with any threshold
+ * on the slider is the same result.
+ *
+ * Images loaded through the {@link PixelCache} are keyed by their digest,
+ * so the same picture loaded twice shares its results; any other image is
+ * keyed by identity.
+ *
+ * @author Tim Yates
+ */
+public final class ResultCache {
+    private final int maxEntries ;
+    private final LinkedHashMap<Key,CachedResult> results ;
+    private final LongAdder hits = new LongAdder() ;
+    private final LongAdder misses = new LongAdder() ;
+
+    public ResultCache( int maxEntries ) {
+        this.maxEntries = maxEntries ;
+        this.results = new LinkedHashMap<Key,CachedResult>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Key,CachedResult> eldest ) {
+                return size() > ResultCache.this.maxEntries ;
+            }
+        } ;
+    }
+
+    /**
+     * @return an earlier result for the same extraction, or null
+     */
+    public synchronized ExtractionPipeline.Result get( ExtractionPipeline.Request request ) {
+        CachedResult cached = results.get( new Key( request ) ) ;
+        if( cached == null ) {
+            misses.increment() ;
+            return null ;
+        }
+        hits.increment() ;
+        return new ExtractionPipeline.Result( request, cached.strip, cached.fit.with( request.getFinder() ), cached.threshold ) ;
+    }
+
+    public synchronized void put( ExtractionPipeline.Result result ) {
+        if( maxEntries > 0 ) {
+            results.put( new Key( result.getRequest() ), new CachedResult( result.getStrip(), result.getFit(), result.getThreshold() ) ) ;
+        }
+    }
+
+    /**
+     * Drops the results for an image that is no longer needed, so the cache does not keep it alive
+     */
+    public synchronized void remove( PixelSource image ) {
+        results.keySet().removeIf( key -> key.image == image ) ;
+    }
+
+    public synchronized int size() {
+        return results.size() ;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries ;
+    }
+
+    public long getHits() {
+        return hits.sum() ;
+    }
+
+    public long getMisses() {
+        return misses.sum() ;
+    }
+
+    public synchronized void clear() {
+        results.clear() ;
+    }
+
+    public String summary() {
+        return "results " + getHits() + " hits  " + getMisses() + " misses  " + size() + "/" + maxEntries ;
+    }
+
+    private static final class CachedResult {
+        final ColorStrip strip ;
+        final ExtractionPipeline.Fit fit ;
+        final float threshold ;
+
+        CachedResult( ColorStrip strip, ExtractionPipeline.Fit fit, float threshold ) {
+            this.strip = strip ;
+            this.fit = fit ;
+            this.threshold = threshold ;
+        }
+    }
+
+    private static final class Key {
+        private final Object image ;
+        private final ExtractionPath path ;
+        private final LineSampler sampler ;
+        private final PeakFinder finder ;
+
+        Key( ExtractionPipeline.Request request ) {
+            PixelSource source = request.getImage() ;
+            this.image = source instanceof MappedImage ? ( (MappedImage)source ).getDigest() : source ;
+            this.path = request.getPath() ;
+            this.sampler = request.getSampler() ;
+            this.finder = request.getFinder().peakSettings() ;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if( !( obj instanceof Key ) ) {
+                return false ;
+            }
+            Key other = (Key)obj ;
+            return image.equals( other.image ) && path.equals( other.path ) &&
+                   sampler.equals( other.sampler ) && finder.equals( other.finder ) ;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( image, path, sampler, finder ) ;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of packed ARGB samples, meant to be cleared and reused
+ * between extractions rather than reallocated.
+ *
+ * @author Tim Yates
+ */
+public final class SampleBuffer {
+    private int[] data ;
+    private int size ;
+
+    public SampleBuffer() {
+        this( 256 ) ;
+    }
+
+    public SampleBuffer( int capacity ) {
+        data = new int[ Math.max( capacity, 1 ) ] ;
+    }
+
+    public void clear() {
+        size = 0 ;
+    }
+
+    public void add( int argb ) {
+        if( size == data.length ) {
+            data = Arrays.copyOf( data, size * 2 ) ;
+        }
+        data[ size++ ] = argb ;
+    }
+
+    public void removeLast() {
+        if( size == 0 ) {
+            throw new IllegalStateException( "Buffer is empty" ) ;
+        }
+        size-- ;
+    }
+
+    public void ensureCapacity( int capacity ) {
+        if( capacity > data.length ) {
+            data = Arrays.copyOf( data, Math.max( capacity, data.length * 2 ) ) ;
+        }
+    }
+
+    public int size() {
+        return size ;
+    }
+
+    public int get( int i ) {
+        return data[ i ] ;
+    }
+
+    /**
+     * The backing array; only the first {@link #size()} entries are valid,
+     * and it may be replaced by the next call to {@link #add(int)}.
+     */
+    public int[] array() {
+        return data ;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf( data, size ) ;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * How a color is read from an image at a (possibly fractional) position.
+ *
+ * Coordinates are in image space, where pixel (i, j) covers the square
+ * [i, i+1) x [j, j+1), so its center is at (i + 0.5, j + 0.5).  Reads
+ * outside the image are clamped to the nearest edge pixel.
+ *
+ * @author Tim Yates
+ */
+public enum SampleMode {
+    /**
+     * Whole pixels along a Bresenham line between the truncated end points
+     */
+    PIXEL( "Pixel" ) {
+        @Override
+        public int sample( PixelSource image, double x, double y ) {
+            return NEAREST.sample( image, x, y ) ;
+        }
+    },
+    NEAREST( "Nearest" ) {
+        @Override
+        public int sample( PixelSource image, double x, double y ) {
+            return image.getArgb( clamp( (int)Math.floor( x ), image.getWidth() ),
+                                  clamp( (int)Math.floor( y ), image.getHeight() ) ) ;
+        }
+    },
+    BILINEAR( "Bilinear" ) {
+        @Override
+        public int sample( PixelSource image, double x, double y ) {
+            double fx = x - 0.5 ;
+            double fy = y - 0.5 ;
+            int x0 = (int)Math.floor( fx ) ;
+            int y0 = (int)Math.floor( fy ) ;
+            int wx = (int)( ( fx - x0 ) * 256 ) ;
+            int wy = (int)( ( fy - y0 ) * 256 ) ;
+            int w = image.getWidth() ;
+            int h = image.getHeight() ;
+            int xa = clamp( x0, w ), xb = clamp( x0 + 1, w ) ;
+            int ya = clamp( y0, h ), yb = clamp( y0 + 1, h ) ;
+            int c00 = image.getArgb( xa, ya ), c10 = image.getArgb( xb, ya ) ;
+            int c01 = image.getArgb( xa, yb ), c11 = image.getArgb( xb, yb ) ;
+            int w00 = ( 256 - wx ) * ( 256 - wy ) ;
+            int w10 = wx * ( 256 - wy ) ;
+            int w01 = ( 256 - wx ) * wy ;
+            int w11 = wx * wy ;
+            int result = 0 ;
+            for( int shift = 0 ; shift < 32 ; shift += 8 ) {
+                int c = ( ( ( c00 >>> shift ) & 0xFF ) * w00 +
+                          ( ( c10 >>> shift ) & 0xFF ) * w10 +
+                          ( ( c01 >>> shift ) & 0xFF ) * w01 +
+                          ( ( c11 >>> shift ) & 0xFF ) * w11 + 32768 ) >>> 16 ;
+                result |= c << shift ;
+            }
+            return result ;
+        }
+    },
+    BICUBIC( "Bicubic" ) {
+        @Override
+        public int sample( PixelSource image, double x, double y ) {
+            double fx = x - 0.5 ;
+            double fy = y - 0.5 ;
+            int x0 = (int)Math.floor( fx ) ;
+            int y0 = (int)Math.floor( fy ) ;
+            double tx = fx - x0 ;
+            double ty = fy - y0 ;
+            int w = image.getWidth() ;
+            int h = image.getHeight() ;
+            // Weights for the four taps in each direction
+            double wx0 = catmullRom( 1 + tx ), wx1 = catmullRom( tx ), wx2 = catmullRom( 1 - tx ), wx3 = catmullRom( 2 - tx ) ;
+            int xa = clamp( x0 - 1, w ), xb = clamp( x0, w ), xc = clamp( x0 + 1, w ), xd = clamp( x0 + 2, w ) ;
+            double a = 0, r = 0, g = 0, b = 0 ;
+            for( int j = -1 ; j <= 2 ; j++ ) {
+                double wy = catmullRom( j - ty ) ;
+                int yy = clamp( y0 + j, h ) ;
+                int c0 = image.getArgb( xa, yy ), c1 = image.getArgb( xb, yy ) ;
+                int c2 = image.getArgb( xc, yy ), c3 = image.getArgb( xd, yy ) ;
+                a += wy * ( ( c0 >>> 24 ) * wx0 + ( c1 >>> 24 ) * wx1 + ( c2 >>> 24 ) * wx2 + ( c3 >>> 24 ) * wx3 ) ;
+                r += wy * ( ( ( c0 >> 16 ) & 0xFF ) * wx0 + ( ( c1 >> 16 ) & 0xFF ) * wx1 + ( ( c2 >> 16 ) & 0xFF ) * wx2 + ( ( c3 >> 16 ) & 0xFF ) * wx3 ) ;
+                g += wy * ( ( ( c0 >> 8  ) & 0xFF ) * wx0 + ( ( c1 >> 8  ) & 0xFF ) * wx1 + ( ( c2 >> 8  ) & 0xFF ) * wx2 + ( ( c3 >> 8  ) & 0xFF ) * wx3 ) ;
+                b += wy * ( ( ( c0       ) & 0xFF ) * wx0 + ( ( c1       ) & 0xFF ) * wx1 + ( ( c2       ) & 0xFF ) * wx2 + ( ( c3       ) & 0xFF ) * wx3 ) ;
+            }
+            return ( channel( a ) << 24 ) | ( channel( r ) << 16 ) | ( channel( g ) << 8 ) | channel( b ) ;
+        }
+    } ;
+
+    private final String label ;
+
+    SampleMode( String label ) {
+        this.label = label ;
+    }
+
+    /**
+     * @return the packed ARGB color at the given position
+     */
+    public abstract int sample( PixelSource image, double x, double y ) ;
+
+    @Override
+    public String toString() {
+        return label ;
+    }
+
+    static int clamp( int v, int size ) {
+        return v < 0 ? 0 : v >= size ? size - 1 : v ;
+    }
+
+    static int channel( double v ) {
+        int c = (int)( v + 0.5 ) ;
+        return c < 0 ? 0 : c > 255 ? 255 : c ;
+    }
+
+    // Catmull-Rom spline (a = -0.5) weight for a tap at distance d
+    static double catmullRom( double d ) {
+        d = Math.abs( d ) ;
+        if( d < 1 ) {
+            return ( 1.5 * d - 2.5 ) * d * d + 1 ;
+        }
+        if( d < 2 ) {
+            return ( ( -0.5 * d + 2.5 ) * d - 4 ) * d + 2 ;
+        }
+        return 0 ;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A path and the settings to extract along it, saved next to an image so
+ * the gradient can be extracted again when the image changes.
+ *
+ * An image's lines are kept in a sidecar file named after it, such as
+ * {@code button.png.lines}, one per line:
+ *
+ * <pre>
+ *   line 0 10 300 10 threshold=10 mode=pixel width=1 stops=threshold maxStops=12 metric=max detection=rgb
+ * </pre>
+ *
+ * The shape and its points come first, in image pixels, then the settings;
+ * any that are left out take the UI's defaults.  Blank lines and lines
+ * starting with {@code #} are ignored.
+ *
+ * @author Tim Yates
+ */
+public final class SavedLine {
+    public static final String SUFFIX = ".lines" ;
+
+    private final ExtractionPath path ;
+    private final LineSampler sampler ;
+    private final PeakFinder finder ;
+
+    public SavedLine( ExtractionPath path, LineSampler sampler, PeakFinder finder ) {
+        this.path = path ;
+        this.sampler = sampler ;
+        this.finder = finder ;
+    }
+
+    public ExtractionPath getPath() { return path ; }
+    public LineSampler getSampler() { return sampler ; }
+    public PeakFinder getFinder() { return finder ; }
+
+    /**
+     * @return the file holding the saved lines for {@code image}
+     */
+    public static Path sidecarFor( Path image ) {
+        return image.resolveSibling( image.getFileName() + SUFFIX ) ;
+    }
+
+    public static List<SavedLine> read( Path sidecar ) throws IOException {
+        List<SavedLine> lines = new ArrayList<>() ;
+        int lineNo = 0 ;
+        for( String line : Files.readAllLines( sidecar, StandardCharsets.UTF_8 ) ) {
+            lineNo++ ;
+            line = line.trim() ;
+            if( line.isEmpty() || line.startsWith( "#" ) ) continue ;
+            try {
+                lines.add( parse( line ) ) ;
+            }
+            catch( RuntimeException ex ) {
+                throw new IOException( sidecar + ":" + lineNo + ": " + ex.getMessage(), ex ) ;
+            }
+        }
+        return lines ;
+    }
+
+    /**
+     * Adds {@code line} to the end of {@code sidecar}, creating it if need be
+     */
+    public static void append( Path sidecar, SavedLine line ) throws IOException {
+        try( Writer out = Files.newBufferedWriter( sidecar, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND ) ) {
+            out.write( line.toString() ) ;
+            out.write( '\n' ) ;
+        }
+    }
+
+    static SavedLine parse( String line ) {
+        String[] parts = line.split( "\\s+" ) ;
+        ExtractionPath.Shape shape = ExtractionPath.Shape.valueOf( parts[ 0 ].toUpperCase( Locale.ROOT ) ) ;
+        int settings = 1 ;
+        while( settings < parts.length && parts[ settings ].indexOf( '=' ) < 0 ) {
+            settings++ ;
+        }
+        double[] points = new double[ settings - 1 ] ;
+        for( int i = 0 ; i < points.length ; i++ ) {
+            points[ i ] = Double.parseDouble( parts[ i + 1 ] ) ;
+        }
+        ExtractionPath path ;
+        if( shape == ExtractionPath.Shape.POLYLINE ) {
+            if( points.length < 4 || points.length % 2 != 0 ) {
+                throw new IllegalArgumentException( "A polyline needs pairs of coordinates" ) ;
+            }
+            path = ExtractionPath.polyline( points ) ;
+        }
+        else if( points.length != 4 ) {
+            throw new IllegalArgumentException( "Expected '" + parts[ 0 ] + " x1 y1 x2 y2'" ) ;
+        }
+        else {
+            path = shape == ExtractionPath.Shape.RADIAL ? ExtractionPath.radial( points[ 0 ], points[ 1 ], points[ 2 ], points[ 3 ] )
+                                                        : ExtractionPath.line( points[ 0 ], points[ 1 ], points[ 2 ], points[ 3 ] ) ;
+        }
+
+        float threshold = 10 ;
+        SampleMode mode = SampleMode.PIXEL ;
+        int width = 1 ;
+        StopMode stops = StopMode.THRESHOLD ;
+        int maxStops = 12 ;
+        ErrorMetric metric = ErrorMetric.MAX ;
+        DetectionMode detection = DetectionMode.RGB ;
+        for( int i = settings ; i < parts.length ; i++ ) {
+            int eq = parts[ i ].indexOf( '=' ) ;
+            if( eq < 0 ) {
+                throw new IllegalArgumentException( "Expected a setting, got " + parts[ i ] ) ;
+            }
+            String value = parts[ i ].substring( eq + 1 ) ;
+            switch( parts[ i ].substring( 0, eq ) ) {
+                case "threshold" : threshold = Float.parseFloat( value ) ; break ;
+                case "mode"      : mode = SampleMode.valueOf( value.toUpperCase( Locale.ROOT ) ) ; break ;
+                case "width"     : width = Integer.parseInt( value ) ; break ;
+                case "stops"     : stops = StopMode.valueOf( value.toUpperCase( Locale.ROOT ) ) ; break ;
+                case "maxStops"  : maxStops = Integer.parseInt( value ) ; break ;
+                case "metric"    : metric = ErrorMetric.valueOf( value.toUpperCase( Locale.ROOT ) ) ; break ;
+                case "detection" : detection = DetectionMode.valueOf( value.toUpperCase( Locale.ROOT ) ) ; break ;
+                default          : throw new IllegalArgumentException( "Unknown setting " + parts[ i ] ) ;
+            }
+        }
+        return new SavedLine( path, new LineSampler( mode ).withWidth( width ), new PeakFinder( stops, threshold, maxStops, metric, detection ) ) ;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder( path.getShape().name().toLowerCase( Locale.ROOT ) ) ;
+        for( int i = 0 ; i < path.pointCount() ; i++ ) {
+            sb.append( ' ' ).append( path.getX( i ) ).append( ' ' ).append( path.getY( i ) ) ;
+        }
+        return sb.append( " threshold=" ).append( finder.getThreshold() )
+                 .append( " mode=" ).append( sampler.getMode().name().toLowerCase( Locale.ROOT ) )
+                 .append( " width=" ).append( sampler.getWidth() )
+                 .append( " stops=" ).append( finder.getMode().name().toLowerCase( Locale.ROOT ) )
+                 .append( " maxStops=" ).append( finder.getMaxStops() )
+                 .append( " metric=" ).append( finder.getMetric().name().toLowerCase( Locale.ROOT ) )
+                 .append( " detection=" ).append( finder.getDetection().name().toLowerCase( Locale.ROOT ) )
+                 .toString() ;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+/**
+ * How the stops of a gradient are chosen from the samples.
+ *
+ * @author Tim Yates
+ */
+public enum StopMode {
+    /** Every sample that deviates from its neighbours' midpoint by more than the threshold */
+    THRESHOLD( "Threshold" ),
+    /** At most a given number of stops, fitted to minimise the chosen error */
+    SIMPLIFY( "Max stops" ),
+    /** The threshold that gives as near to a given number of stops as possible, without going over */
+    TARGET_COUNT( "Stop count" ) ;
+
+    private final String label ;
+
+    StopMode( String label ) {
+        this.label = label ;
+    }
+
+    @Override
+    public String toString() {
+        return label ;
+    }
+}
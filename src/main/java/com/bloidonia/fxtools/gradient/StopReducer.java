@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Arrays;
+
+/**
+ * Chooses at most {@code k} stops that best reproduce a line of samples as
+ * a piecewise linear gradient.
+ *
+ * Starting from the two end samples, the segment with the largest error
+ * (largest single error for {@link ErrorMetric#MAX}, largest sum of squared
+ * errors for {@link ErrorMetric#RMS}) is repeatedly split at its worst
+ * sample, as in Ramer-Douglas-Peucker.  Each split only rescans the two new
+ * segments, so the cost is O(k * length), well under a millisecond for a
+ * few thousand samples.
+ *
+ * @author Tim Yates
+ */
+public final class StopReducer {
+    private StopReducer() {
+    }
+
+    /**
+     * @return ascending sample indices of at most {@code k - 1} stops, starting with the first sample; the
+     *         last sample is left out, as {@link GradientStops#setPeaks} always adds it as the final stop
+     */
+    public static int[] reduce( int[] samples, int length, int k, ErrorMetric metric ) {
+        if( length <= 1 ) {
+            return new int[] { 0 } ;
+        }
+        k = Math.max( 2, Math.min( k, length ) ) ;
+
+        // Segments are kept as parallel arrays: [ from, to ), worst sample and its score
+        int[] from = new int[ k ] ;
+        int[] to = new int[ k ] ;
+        int[] worst = new int[ k ] ;
+        double[] score = new double[ k ] ;
+        int segments = 1 ;
+        from[ 0 ] = 0 ;
+        to[ 0 ] = length - 1 ;
+        scan( samples, 0, metric, from, to, worst, score ) ;
+
+        for( int stops = 2 ; stops < k ; stops++ ) {
+            int best = -1 ;
+            for( int s = 0 ; s < segments ; s++ ) {
+                if( worst[ s ] >= 0 && ( best < 0 || score[ s ] > score[ best ] ) ) {
+                    best = s ;
+                }
+            }
+            if( best < 0 || score[ best ] == 0 ) {
+                break ;
+            }
+            int split = worst[ best ] ;
+            from[ segments ] = split ;
+            to[ segments ] = to[ best ] ;
+            to[ best ] = split ;
+            scan( samples, best, metric, from, to, worst, score ) ;
+            scan( samples, segments, metric, from, to, worst, score ) ;
+            segments++ ;
+        }
+
+        int[] result = Arrays.copyOf( from, segments ) ;
+        Arrays.sort( result ) ;
+        return result ;
+    }
+
+    private static void scan( int[] samples, int s, ErrorMetric metric, int[] from, int[] to, int[] worst, double[] score ) {
+        int a = from[ s ], b = to[ s ] ;
+        double max = 0, sum = 0 ;
+        int at = -1 ;
+        for( int i = a + 1 ; i < b ; i++ ) {
+            double e = squaredError( samples, a, b, i ) ;
+            sum += e ;
+            if( e > max || at < 0 ) {
+                max = e ;
+                at = i ;
+            }
+        }
+        worst[ s ] = at ;
+        score[ s ] = metric == ErrorMetric.MAX ? max : sum ;
+    }
+
+    /**
+     * @return the squared RGB distance between sample {@code i} and the line from sample {@code a} to sample {@code b}
+     */
+    static double squaredError( int[] samples, int a, int b, int i ) {
+        int ca = samples[ a ], cb = samples[ b ], c = samples[ i ] ;
+        double t = (double)( i - a ) / ( b - a ) ;
+        double dr = ( ( c >> 16 ) & 0xFF ) - lerp( ( ca >> 16 ) & 0xFF, ( cb >> 16 ) & 0xFF, t ) ;
+        double dg = ( ( c >> 8  ) & 0xFF ) - lerp( ( ca >> 8  ) & 0xFF, ( cb >> 8  ) & 0xFF, t ) ;
+        double db = ( ( c       ) & 0xFF ) - lerp( ( ca       ) & 0xFF, ( cb       ) & 0xFF, t ) ;
+        return dr * dr + dg * dg + db * db ;
+    }
+
+    private static double lerp( int a, int b, double t ) {
+        return a + ( b - a ) * t ;
+    }
+}
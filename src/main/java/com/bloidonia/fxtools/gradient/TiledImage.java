@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A {@link PixelSource} for images too big to decode in one go.
+ *
+ * Square tiles are decoded on demand and kept in a least recently used
+ * cache that holds at most {@code cacheBytes} of pixels.  A missing tile is
+ * decoded with the rest of its row of tiles, through
+ * {@link ImageReadParam#setSourceRegion(Rectangle)} on a full width strip,
+ * since formats such as PNG can only be read from the top: each strip costs
+ * a decode of the image down to it, however narrow the region.  A line
+ * across the image then reads it once, but one down it still reads it once
+ * per row of tiles.  A subsampled preview of the whole image can be decoded
+ * for display.
+ *
+ * Tile reads are serialised, as {@link ImageReader} is not thread safe; hits
+ * on the most recently used tile take no lock.
+ *
+ * @author Tim Yates
+ */
+public final class TiledImage implements PixelSource, Closeable {
+    public static final int DEFAULT_TILE_SIZE = 512 ;
+
+    private final ImageInputStream input ;
+    private final ImageReader reader ;
+    private final int width ;
+    private final int height ;
+    private final int tileSize ;
+    private final int tilesAcross ;
+    private final long cacheBytes ;
+
+    private final LinkedHashMap<Integer,int[]> tiles = new LinkedHashMap<>( 16, 0.75f, true ) ;
+    private long cachedBytes ;
+    private volatile Tile last = new Tile( -1, null ) ;
+
+    public TiledImage( File file, int tileSize, long cacheBytes ) throws IOException {
+        this.input = ImageIO.createImageInputStream( file ) ;
+        if( input == null ) {
+            throw new IOException( "Cannot open " + file ) ;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders( input ) ;
+        if( !readers.hasNext() ) {
+            input.close() ;
+            throw new IOException( "No image reader for " + file ) ;
+        }
+        this.reader = readers.next() ;
+        reader.setInput( input, false, true ) ;
+        this.width = reader.getWidth( 0 ) ;
+        this.height = reader.getHeight( 0 ) ;
+        this.tileSize = tileSize ;
+        this.tilesAcross = ( width + tileSize - 1 ) / tileSize ;
+        this.cacheBytes = cacheBytes ;
+    }
+
+    /**
+     * @return the number of pixels in the first image in {@code file}, found without decoding it
+     */
+    public static long pixelCount( File file ) throws IOException {
+        try( ImageInputStream in = ImageIO.createImageInputStream( file ) ) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders( in ) ;
+            if( readers == null || !readers.hasNext() ) {
+                throw new IOException( "No image reader for " + file ) ;
+            }
+            ImageReader r = readers.next() ;
+            try {
+                r.setInput( in, true, true ) ;
+                return (long)r.getWidth( 0 ) * r.getHeight( 0 ) ;
+            }
+            finally {
+                r.dispose() ;
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width ;
+    }
+
+    @Override
+    public int getHeight() {
+        return height ;
+    }
+
+    @Override
+    public int getArgb( int x, int y ) {
+        int tx = x / tileSize ;
+        int ty = y / tileSize ;
+        int index = ty * tilesAcross + tx ;
+        Tile t = last ;
+        if( t.index != index ) {
+            t = new Tile( index, tile( tx, ty, index ) ) ;
+            last = t ;
+        }
+        int tw = Math.min( tileSize, width - tx * tileSize ) ;
+        return t.pixels[ ( y - ty * tileSize ) * tw + ( x - tx * tileSize ) ] ;
+    }
+
+    /**
+     * Decodes the whole image, taking every {@code factor}th pixel in each direction.
+     */
+    public synchronized BufferedImage preview( int factor ) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam() ;
+        param.setSourceSubsampling( factor, factor, 0, 0 ) ;
+        return reader.read( 0, param ) ;
+    }
+
+    /**
+     * @return the smallest subsampling factor that brings the image down to at most {@code maxPixels}
+     */
+    public int previewFactor( long maxPixels ) {
+        return Math.max( 1, (int)Math.ceil( Math.sqrt( (double)width * height / maxPixels ) ) ) ;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes ;
+    }
+
+    public synchronized int getCachedTiles() {
+        return tiles.size() ;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        tiles.clear() ;
+        cachedBytes = 0 ;
+        last = new Tile( -1, null ) ;
+        reader.dispose() ;
+        input.close() ;
+    }
+
+    private synchronized int[] tile( int tx, int ty, int index ) {
+        int[] pixels = tiles.get( index ) ;
+        if( pixels != null ) {
+            return pixels ;
+        }
+        int y = ty * tileSize ;
+        int th = Math.min( tileSize, height - y ) ;
+        BufferedImage strip ;
+        try {
+            ImageReadParam param = reader.getDefaultReadParam() ;
+            param.setSourceRegion( new Rectangle( 0, y, width, th ) ) ;
+            strip = reader.read( 0, param ) ;
+        }
+        catch( IOException ex ) {
+            throw new UncheckedIOException( ex ) ;
+        }
+        // The rest of the row first, so the tile asked for is the last to be evicted, unless
+        // the row would not fit anyway
+        boolean keepRow = 4L * width * th <= cacheBytes ;
+        for( int i = 0 ; keepRow && i < tilesAcross ; i++ ) {
+            if( i != tx && !tiles.containsKey( ty * tilesAcross + i ) ) {
+                add( ty * tilesAcross + i, cut( strip, i, th ) ) ;
+            }
+        }
+        pixels = cut( strip, tx, th ) ;
+        add( index, pixels ) ;
+        return pixels ;
+    }
+
+    private int[] cut( BufferedImage strip, int tx, int th ) {
+        int x = tx * tileSize ;
+        int tw = Math.min( tileSize, width - x ) ;
+        return strip.getRGB( x, 0, tw, th, null, 0, tw ) ;
+    }
+
+    private void add( int index, int[] pixels ) {
+        tiles.put( index, pixels ) ;
+        cachedBytes += pixels.length * 4L ;
+        Iterator<Map.Entry<Integer,int[]>> eldest = tiles.entrySet().iterator() ;
+        // Always keep the tile we just read, even if it alone is over budget
+        while( cachedBytes > cacheBytes && tiles.size() > 1 ) {
+            cachedBytes -= eldest.next().getValue().length * 4L ;
+            eldest.remove() ;
+        }
+    }
+
+    private static final class Tile {
+        final int index ;
+        final int[] pixels ;
+
+        Tile( int index, int[] pixels ) {
+            this.index = index ;
+            this.pixels = pixels ;
+        }
+    }
+}
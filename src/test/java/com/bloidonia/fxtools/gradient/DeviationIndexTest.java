@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the threshold a stop count works out to gives back those stops.
+ *
+ * @author Tim Yates
+ */
+public class DeviationIndexTest {
+    private final Random random = new Random( 42 ) ;
+
+    @Test
+    public void thresholdForCountGivesTheSamePeaks() {
+        for( int run = 0 ; run < 500 ; run++ ) {
+            int[] samples = samples() ;
+            DeviationIndex index = DeviationIndex.build( samples, samples.length, DetectionMode.RGB ) ;
+            int count = 1 + random.nextInt( 24 ) ;
+            float threshold = index.thresholdForCount( count ) ;
+            if( threshold >= 0 ) {
+                assertArrayEquals( index.peaksForCount( count ), index.peaks( threshold ) ) ;
+            }
+        }
+    }
+
+    @Test
+    public void thresholdForCountKeepsToTheCount() {
+        for( DetectionMode mode : DetectionMode.values() ) {
+            for( int run = 0 ; run < 500 ; run++ ) {
+                int[] samples = samples() ;
+                DeviationIndex index = DeviationIndex.build( samples, samples.length, mode ) ;
+                int count = 1 + random.nextInt( 24 ) ;
+                float threshold = index.thresholdForCount( count ) ;
+                if( threshold >= 0 ) {
+                    int peaks = PeakDetector.findPeaks( samples, samples.length, threshold, mode ).length ;
+                    assertTrue( mode + ": " + peaks + " peaks for a count of " + count, peaks <= count ) ;
+                }
+            }
+        }
+    }
+
+    // Runs of one color with a little noise, so that most windows are not peaks
+    private int[] samples() {
+        int[] samples = new int[ 3 + random.nextInt( 500 ) ] ;
+        int color = random.nextInt() ;
+        for( int i = 0 ; i < samples.length ; i++ ) {
+            if( random.nextInt( 10 ) == 0 ) {
+                color = random.nextInt() ;
+            }
+            samples[ i ] = color + random.nextInt( 3 ) ;
+        }
+        return samples ;
+    }
+}
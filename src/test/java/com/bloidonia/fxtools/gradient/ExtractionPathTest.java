@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which points of each shape must be inside the image.
+ *
+ * @author Tim Yates
+ */
+public class ExtractionPathTest {
+    private final ImageBuffer image = new ImageBuffer( 100, 50, new int[ 100 * 50 ] ) ;
+
+    @Test
+    public void lineNeedsBothEnds() {
+        assertTrue( ExtractionPath.line( 0, 10, 99, 10 ).isInside( image ) ) ;
+        assertFalse( ExtractionPath.line( -50, 10, 90, 10 ).isInside( image ) ) ;
+        assertFalse( ExtractionPath.line( 10, 10, 10, 50 ).isInside( image ) ) ;
+    }
+
+    @Test
+    public void radialNeedsOnlyItsCentre() {
+        assertTrue( ExtractionPath.radial( 50, 25, 500, 25 ).isInside( image ) ) ;
+        assertFalse( ExtractionPath.radial( -1, 25, 10, 25 ).isInside( image ) ) ;
+    }
+}
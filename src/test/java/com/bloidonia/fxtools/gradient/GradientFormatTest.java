@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the hand formatted numbers read exactly as {@link String#format} wrote them.
+ *
+ * @author Tim Yates
+ */
+public class GradientFormatTest {
+    private static final long[] POW10 = { 1, 10, 100, 1000, 10000 } ;
+
+    // Every offset of a short line, and for longer ones those exactly half way between two printed values
+    @Test
+    public void offsetsMatchStringFormat() {
+        StringBuilder sb = new StringBuilder() ;
+        for( int size = 1 ; size <= 3000 ; size++ ) {
+            for( int pos = 0 ; pos <= size ; pos++ ) {
+                double offset = (double)pos / size ;
+                for( int decimals = 2 ; decimals <= 4 ; decimals++ ) {
+                    long scaled = 2L * pos * POW10[ decimals ] ;
+                    if( size <= 200 || scaled % ( 2L * size ) == size ) {
+                        check( sb, offset, decimals ) ;
+                    }
+                    if( size <= 200 || ( scaled * 100 ) % ( 2L * size ) == size ) {
+                        check( sb, offset * 100.0d, decimals ) ;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomValuesMatchStringFormat() {
+        Random random = new Random( 42 ) ;
+        StringBuilder sb = new StringBuilder() ;
+        double[] special = { 0, -0.0, 0.5, 1.5, 2.5, -0.0001, -0.5025, 0.0005, 0.00049999, 999999.9995, 1e7 + 0.5, 1e12 / 3,
+                             Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY } ;
+        for( double value : special ) {
+            for( int decimals = 0 ; decimals <= 6 ; decimals++ ) {
+                check( sb, value, decimals ) ;
+            }
+        }
+        for( int run = 0 ; run < 100000 ; run++ ) {
+            double value = random.nextBoolean() ? random.nextDouble() * 200 - 100 : random.nextInt( 200001 ) / 2000.0d - 50 ;
+            check( sb, value, random.nextInt( 7 ) ) ;
+        }
+    }
+
+    @Test
+    public void javaStopsRoundHalfUp() {
+        int[] samples = new int[ 401 ] ;
+        GradientStops stops = GradientStops.fromPeaks( samples, 400, new int[] { 0, 201 } ) ;
+        assertTrue( GradientFormat.JAVA.format( stops ).contains( "new Stop(0.503," ) ) ;
+    }
+
+    private static void check( StringBuilder sb, double value, int decimals ) {
+        sb.setLength( 0 ) ;
+        assertEquals( value + " to " + decimals,
+                      String.format( Locale.ROOT, "%." + decimals + "f", value ),
+                      GradientFormat.appendFixed( sb, value, decimals ).toString() ) ;
+    }
+}
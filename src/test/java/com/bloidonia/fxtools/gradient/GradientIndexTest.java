@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that duplicates are found by the same distance that nearest reports.
+ *
+ * @author Tim Yates
+ */
+public class GradientIndexTest {
+    @Rule public final TemporaryFolder temp = new TemporaryFolder() ;
+
+    @Test
+    public void duplicatesUseTheReportedDistance() throws Exception {
+        GradientIndex index = GradientIndex.open( temp.getRoot().toPath().resolve( "gradients.idx" ) ) ;
+        index.add( "a", gradient( 0xFF204080, 0xFFE0C020 ) ) ;
+        index.add( "b", gradient( 0xFF224284, 0xFFE0C020 ) ) ;
+
+        List<GradientIndex.Match> matches = index.nearest( gradient( 0xFF204080, 0xFFE0C020 ), 2 ) ;
+        double distance = matches.get( 1 ).getDistance() ;
+        assertTrue( distance > 0 ) ;
+
+        List<int[]> pairs = index.duplicates( distance * 1.01 ) ;
+        assertEquals( 1, pairs.size() ) ;
+        assertArrayEquals( new int[] { 0, 1 }, pairs.get( 0 ) ) ;
+        assertTrue( index.duplicates( distance * 0.99 ).isEmpty() ) ;
+    }
+
+    private static GradientStops gradient( int from, int to ) {
+        GradientStops stops = new GradientStops() ;
+        stops.add( 0, from ) ;
+        stops.add( 1, to ) ;
+        return stops ;
+    }
+}
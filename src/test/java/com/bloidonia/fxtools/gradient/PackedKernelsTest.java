@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the packed kernels give exactly what the channel at a time code
+ * does, over random lines, strides and thresholds.
+ *
+ * @author Tim Yates
+ */
+public class PackedKernelsTest {
+    private static final int RUNS = 50000 ;
+    // The edges of the threshold test, plus values that are never or always exceeded
+    private static final float[] THRESHOLDS = {
+        0f, -0f, 0.25f, 0.5f, 1f, 1.5f, 127.5f, 254.5f, 255f, 255.5f, 256f, 1e9f, -0.5f, -1f, -1e9f,
+        Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE
+    } ;
+
+    private final Random random = new Random( 42 ) ;
+
+    @Test
+    public void findPeaksMatchesScalar() {
+        for( int run = 0 ; run < RUNS ; run++ ) {
+            int[] samples = line( random.nextInt( 64 ) ) ;
+            int length = samples.length == 0 ? 0 : random.nextInt( samples.length + 1 ) ;
+            float threshold = threshold() ;
+            assertArrayEquals( "threshold " + threshold,
+                               PeakDetector.findPeaksScalar( samples, length, threshold ),
+                               PackedKernels.findPeaks( samples, length, threshold ) ) ;
+        }
+    }
+
+    @Test
+    public void countPeaksMatchesScalar() {
+        for( int run = 0 ; run < RUNS ; run++ ) {
+            int[] samples = line( 1 + random.nextInt( 64 ) ) ;
+            int stride = 1 + random.nextInt( 4 ) ;
+            int offset = random.nextInt( Math.min( stride, samples.length ) ) ;
+            int length = random.nextInt( ( samples.length - 1 - offset ) / stride + 2 ) ;
+            float threshold = threshold() ;
+            assertEquals( "threshold " + threshold + " stride " + stride,
+                          PeakDetector.countPeaksScalar( samples, offset, stride, length, threshold ),
+                          PackedKernels.countPeaks( samples, offset, stride, length, threshold ) ) ;
+        }
+    }
+
+    @Test
+    public void averageMatchesScalar() {
+        for( int run = 0 ; run < RUNS ; run++ ) {
+            int n = 1 + random.nextInt( PackedKernels.MAX_SUM ) ;
+            long sum = 0 ;
+            int a = 0, r = 0, g = 0, b = 0 ;
+            for( int k = 0 ; k < n ; k++ ) {
+                // Plenty of all-ones colors, to fill the lanes
+                int c = random.nextInt( 4 ) == 0 ? 0xFFFFFFFF : random.nextInt() ;
+                sum += PackedKernels.spread( c ) ;
+                a += ( c >>> 24 ) ;
+                r += ( c >> 16 ) & 0xFF ;
+                g += ( c >> 8  ) & 0xFF ;
+                b += ( c       ) & 0xFF ;
+            }
+            assertEquals( "width " + n, LineSampler.average( a, r, g, b, n ), PackedKernels.average( sum, n ) ) ;
+        }
+    }
+
+    // Random colors, small steps from a base color, or two colors flicking back and forth
+    private int[] line( int length ) {
+        int[] samples = new int[ length ] ;
+        int kind = random.nextInt( 3 ) ;
+        int base = random.nextInt() ;
+        for( int i = 0 ; i < length ; i++ ) {
+            switch( kind ) {
+                case 0  : samples[ i ] = random.nextInt() ; break ;
+                case 1  : samples[ i ] = base + ( random.nextInt( 7 ) - 3 ) * 0x010101 ; break ;
+                default : samples[ i ] = random.nextBoolean() ? 0xFFFFFFFF : 0x00000000 ;
+            }
+        }
+        return samples ;
+    }
+
+    private float threshold() {
+        switch( random.nextInt( 3 ) ) {
+            case 0  : return THRESHOLDS[ random.nextInt( THRESHOLDS.length ) ] ;
+            case 1  : return random.nextInt( 1100 ) / 2f - 20 ;
+            default : return random.nextFloat() * 300 - 20 ;
+        }
+    }
+}
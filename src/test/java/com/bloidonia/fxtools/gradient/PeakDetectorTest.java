@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the strided Lab peak count against finding the peaks of each row and column.
+ *
+ * @author Tim Yates
+ */
+public class PeakDetectorTest {
+    private static final float[] THRESHOLDS = { -1, 0, 2.5f, 10, 40 } ;
+
+    private final Random random = new Random( 42 ) ;
+
+    @Test
+    public void labCountPeaksMatchesFindPeaks() {
+        for( DetectionMode mode : new DetectionMode[] { DetectionMode.CIELAB, DetectionMode.OKLAB } ) {
+            for( int run = 0 ; run < 200 ; run++ ) {
+                int w = 1 + random.nextInt( 40 ), h = 1 + random.nextInt( 40 ) ;
+                int[] tile = new int[ w * h ] ;
+                for( int i = 0 ; i < tile.length ; i++ ) {
+                    tile[ i ] = random.nextInt( 4 ) == 0 ? random.nextInt() : i * 0x030201 ;
+                }
+                float threshold = THRESHOLDS[ random.nextInt( THRESHOLDS.length ) ] ;
+                float[] lab = LabConverter.forThread( mode ).convert( tile, tile.length ).clone() ;
+                for( int y = 0 ; y < h ; y++ ) {
+                    int[] row = new int[ w ] ;
+                    System.arraycopy( tile, y * w, row, 0, w ) ;
+                    assertEquals( expected( row, threshold, mode ), PeakDetector.countPeaks( lab, y * w, 1, w, threshold ) ) ;
+                }
+                for( int x = 0 ; x < w ; x++ ) {
+                    int[] column = new int[ h ] ;
+                    for( int y = 0 ; y < h ; y++ ) {
+                        column[ y ] = tile[ y * w + x ] ;
+                    }
+                    assertEquals( expected( column, threshold, mode ), PeakDetector.countPeaks( lab, x, w, h, threshold ) ) ;
+                }
+            }
+        }
+    }
+
+    // findPeaks always includes 0 as well
+    private static int expected( int[] samples, float threshold, DetectionMode mode ) {
+        return PeakDetector.findPeaks( samples, samples.length, threshold, mode ).length - 1 ;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that an image too big for one write buffer comes back from the cache unchanged.
+ *
+ * @author Tim Yates
+ */
+public class PixelCacheTest {
+    @Rule public final TemporaryFolder temp = new TemporaryFolder() ;
+
+    @Test
+    public void cachedPixelsMatchTheImage() throws Exception {
+        int width = 700, height = 900 ;
+        BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB ) ;
+        Random random = new Random( 42 ) ;
+        for( int y = 0 ; y < height ; y++ ) {
+            for( int x = 0 ; x < width ; x++ ) {
+                image.setRGB( x, y, random.nextInt() ) ;
+            }
+        }
+        File file = temp.newFile( "image.png" ) ;
+        ImageIO.write( image, "png", file ) ;
+
+        PixelCache cache = new PixelCache( temp.newFolder( "cache" ).toPath(), 64L << 20 ) ;
+        check( image, cache.load( file ) ) ;
+        check( image, cache.load( file ) ) ;
+        assertEquals( 1, cache.getMisses() ) ;
+        assertEquals( 1, cache.getHits() ) ;
+        assertEquals( 16 + 4L * width * height, cache.size() ) ;
+    }
+
+    private static void check( BufferedImage expected, MappedImage actual ) {
+        assertEquals( expected.getWidth(), actual.getWidth() ) ;
+        assertEquals( expected.getHeight(), actual.getHeight() ) ;
+        for( int y = 0 ; y < expected.getHeight() ; y++ ) {
+            for( int x = 0 ; x < expected.getWidth() ; x++ ) {
+                assertEquals( expected.getRGB( x, y ), actual.getArgb( x, y ) ) ;
+            }
+        }
+        // Lines read the mapped buffer directly
+        SampleBuffer line = new SampleBuffer() ;
+        LineSampler.bresenham( actual, 0, 0, expected.getWidth() - 1, expected.getHeight() - 1, line ) ;
+        SampleBuffer walked = new SampleBuffer() ;
+        LineSampler.bresenham( new ImageBuffer( expected.getWidth(), expected.getHeight(),
+                                                expected.getRGB( 0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth() ) ),
+                               0, 0, expected.getWidth() - 1, expected.getHeight() - 1, walked ) ;
+        assertArrayEquals( walked.toArray(), line.toArray() ) ;
+    }
+}
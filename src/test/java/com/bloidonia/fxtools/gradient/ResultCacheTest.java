@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that results are shared between requests differing only in settings their mode ignores.
+ *
+ * @author Tim Yates
+ */
+public class ResultCacheTest {
+    private final ImageBuffer image = new ImageBuffer( 10, 1, new int[] { 0, 10, 20, 90, 40, 50, 60, 0, 80, 90 } ) ;
+    private final ExtractionPath path = ExtractionPath.line( 0, 0, 9, 0 ) ;
+    private final LineSampler sampler = new LineSampler( SampleMode.PIXEL ) ;
+
+    @Test
+    public void stopCountIgnoresTheThreshold() {
+        ResultCache cache = cached( new PeakFinder( StopMode.TARGET_COUNT, 10, 4, ErrorMetric.MAX, DetectionMode.RGB ) ) ;
+        assertNotNull( cache.get( request( new PeakFinder( StopMode.TARGET_COUNT, 37.5f, 4, ErrorMetric.MAX, DetectionMode.RGB ) ) ) ) ;
+        assertNull( cache.get( request( new PeakFinder( StopMode.TARGET_COUNT, 10, 5, ErrorMetric.MAX, DetectionMode.RGB ) ) ) ) ;
+    }
+
+    @Test
+    public void thresholdIgnoresTheStopCountAndMetric() {
+        PeakFinder finder = new PeakFinder( StopMode.THRESHOLD, 10, 4, ErrorMetric.MAX, DetectionMode.RGB ) ;
+        ResultCache cache = cached( finder ) ;
+        assertNotNull( cache.get( request( new PeakFinder( StopMode.THRESHOLD, 10, 9, ErrorMetric.MAX, DetectionMode.RGB ) ) ) ) ;
+        assertNull( cache.get( request( new PeakFinder( StopMode.THRESHOLD, 11, 4, ErrorMetric.MAX, DetectionMode.RGB ) ) ) ) ;
+
+        // The peaks are shared, but the error is still measured by the metric asked for
+        for( ErrorMetric metric : ErrorMetric.values() ) {
+            PeakFinder other = new PeakFinder( StopMode.THRESHOLD, 10, 4, metric, DetectionMode.RGB ) ;
+            ExtractionPipeline.Result result = cache.get( request( other ) ) ;
+            int[] colors = image.getPixels() ;
+            assertEquals( other.error( colors, colors.length, other.find( colors, colors.length ) ), result.getError(), 0 ) ;
+        }
+    }
+
+    private ResultCache cached( PeakFinder finder ) {
+        ResultCache cache = new ResultCache( 16 ) ;
+        int[] colors = image.getPixels() ;
+        int[] peaks = finder.find( colors, colors.length ) ;
+        cache.put( new ExtractionPipeline.Result( request( finder ), new ColorStrip( colors, peaks ),
+                                                  new ExtractionPipeline.Fit( finder, colors, peaks ), Float.NaN ) ) ;
+        return cache ;
+    }
+
+    private ExtractionPipeline.Request request( PeakFinder finder ) {
+        return new ExtractionPipeline.Request( image, sampler, path, finder ) ;
+    }
+}
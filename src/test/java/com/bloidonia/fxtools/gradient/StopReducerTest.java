@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a stop limit of K gives at most K stops in every output format.
+ *
+ * @author Tim Yates
+ */
+public class StopReducerTest {
+    private static final int K = 12 ;
+
+    private final Random random = new Random( 42 ) ;
+
+    @Test
+    public void maxStopsKeepsToTheLimit() {
+        checkLimit( StopMode.SIMPLIFY ) ;
+    }
+
+    @Test
+    public void stopCountKeepsToTheLimit() {
+        checkLimit( StopMode.TARGET_COUNT ) ;
+    }
+
+    @Test
+    public void reduceLeavesOutTheLastSample() {
+        int[] samples = new int[ 400 ] ;
+        for( int i = 0 ; i < samples.length ; i++ ) {
+            samples[ i ] = random.nextInt() ;
+        }
+        int[] stops = StopReducer.reduce( samples, samples.length, K, ErrorMetric.MAX ) ;
+        assertEquals( K - 1, stops.length ) ;
+        assertEquals( 0, stops[ 0 ] ) ;
+        assertTrue( stops[ stops.length - 1 ] < samples.length - 1 ) ;
+    }
+
+    private void checkLimit( StopMode mode ) {
+        for( int run = 0 ; run < 500 ; run++ ) {
+            int[] samples = new int[ 2 + random.nextInt( 1000 ) ] ;
+            for( int i = 0 ; i < samples.length ; i++ ) {
+                samples[ i ] = random.nextBoolean() ? random.nextInt() : i * 0x010101 ;
+            }
+            for( ErrorMetric metric : ErrorMetric.values() ) {
+                PeakFinder finder = new PeakFinder( mode, 10, K, metric, DetectionMode.RGB ) ;
+                GradientStops stops = GradientStops.fromPeaks( samples, samples.length, finder.find( samples, samples.length ) ) ;
+                assertTrue( stops.size() <= K ) ;
+                assertTrue( count( GradientFormat.JAVA.format( stops ), "new Stop(" ) <= K ) ;
+                assertTrue( count( GradientFormat.CSS.format( stops ), "#" ) <= K ) ;
+                assertTrue( count( GradientFormat.SVG.format( stops ), "<stop " ) <= K ) ;
+                assertTrue( count( GradientFormat.JSON.format( stops ), "\"offset\"" ) <= K ) ;
+                // Only the final stop is at the end
+                assertTrue( stops.offset( stops.size() - 2 ) < 1 ) ;
+            }
+        }
+    }
+
+    private static int count( String text, String part ) {
+        int count = 0 ;
+        for( int at = text.indexOf( part ) ; at >= 0 ; at = text.indexOf( part, at + 1 ) ) {
+            count++ ;
+        }
+        return count ;
+    }
+}
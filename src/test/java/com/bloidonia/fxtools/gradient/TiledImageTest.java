@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bloidonia.fxtools.gradient;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that pixels read a strip at a time match the decoded image, whatever the cache holds.
+ *
+ * @author Tim Yates
+ */
+public class TiledImageTest {
+    @Rule public final TemporaryFolder temp = new TemporaryFolder() ;
+
+    private final Random random = new Random( 42 ) ;
+
+    @Test
+    public void tilesMatchTheImage() throws Exception {
+        BufferedImage image = new BufferedImage( 300, 200, BufferedImage.TYPE_INT_ARGB ) ;
+        for( int y = 0 ; y < image.getHeight() ; y++ ) {
+            for( int x = 0 ; x < image.getWidth() ; x++ ) {
+                image.setRGB( x, y, random.nextInt() ) ;
+            }
+        }
+        File file = temp.newFile( "image.png" ) ;
+        ImageIO.write( image, "png", file ) ;
+
+        // Room for a whole row of tiles, and for less than one row
+        for( long cacheBytes : new long[] { 1L << 20, 64 * 64 * 4 * 2 } ) {
+            try( TiledImage tiled = new TiledImage( file, 64, cacheBytes ) ) {
+                for( int i = 0 ; i < 20000 ; i++ ) {
+                    int x = random.nextInt( image.getWidth() ), y = random.nextInt( image.getHeight() ) ;
+                    assertEquals( image.getRGB( x, y ), tiled.getArgb( x, y ) ) ;
+                }
+                assertTrue( tiled.getCachedBytes() <= Math.max( cacheBytes, 64 * 64 * 4 ) ) ;
+            }
+        }
+    }
+}